@@ -0,0 +1,90 @@
+package com.adaptris.core.elastic;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairList;
+
+/**
+ * Extractions/sec for the {@link ActionExtractor} implementations against documents of varying width.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ActionExtractorBenchmark {
+
+  @Param({"10", "200"})
+  public int fields;
+
+  private AdaptrisMessage msg;
+  private DocumentWrapper document;
+  private JsonPathAction simplePath;
+  private JsonPathAction complexPath;
+  private MappedAction mapped;
+  private ConfiguredAction configured;
+
+  @Setup
+  public void setup() throws Exception {
+    msg = BenchmarkData.message("");
+    msg.addMetadata("action", "I");
+    XContentBuilder builder = jsonBuilder();
+    builder.startObject();
+    for (int i = 0; i < fields; i++) {
+      builder.field("field_" + i, "value_" + i);
+    }
+    // At the end, so the token scan has to read the whole document.
+    builder.field("action", DocumentAction.INDEX.name());
+    builder.startArray("actions").value(DocumentAction.INDEX.name()).endArray();
+    builder.endObject();
+    document = new DocumentWrapper("uid", builder);
+
+    simplePath = new JsonPathAction();
+    simplePath.setJsonPath("$.action");
+    complexPath = new JsonPathAction();
+    complexPath.setJsonPath("$.actions[0]");
+
+    MetadataAction metadata = new MetadataAction();
+    metadata.setMetadataKey("action");
+    mapped = new MappedAction();
+    mapped.setAction(metadata);
+    KeyValuePairList mappings = new KeyValuePairList();
+    for (DocumentAction a : DocumentAction.values()) {
+      mappings.add(new KeyValuePair(a.name().substring(0, 1), a.name()));
+    }
+    mapped.setMappings(mappings);
+    configured = new ConfiguredAction();
+  }
+
+  @Benchmark
+  public Object jsonPathAction_SimplePath() throws Exception {
+    return simplePath.extractAction(msg, document);
+  }
+
+  @Benchmark
+  public Object jsonPathAction_ComplexPath() throws Exception {
+    return complexPath.extractAction(msg, document);
+  }
+
+  @Benchmark
+  public Object mappedAction() throws Exception {
+    return mapped.extractAction(msg, document);
+  }
+
+  @Benchmark
+  public Object configuredAction() throws Exception {
+    return configured.extractAction(msg, document);
+  }
+}
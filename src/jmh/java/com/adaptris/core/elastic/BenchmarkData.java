@@ -0,0 +1,79 @@
+package com.adaptris.core.elastic;
+
+import java.util.Random;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+
+/**
+ * Synthetic input data for the benchmarks.
+ */
+final class BenchmarkData {
+
+  // Fixed seed so that each run (and each release) is measured against the same data.
+  private static final long SEED = 20160801L;
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * Create a CSV file with a header row; the first column is the unique-id, and the 2nd/3rd columns are latitude/longitude.
+   */
+  static String csv(int rows, int columns) {
+    Random random = new Random(SEED);
+    StringBuilder sb = new StringBuilder();
+    sb.append("id,latitude,longitude");
+    for (int c = 3; c < columns; c++) {
+      sb.append(",column_").append(c);
+    }
+    sb.append(System.lineSeparator());
+    for (int r = 0; r < rows; r++) {
+      sb.append("UID-").append(r);
+      sb.append(',').append(random.nextDouble() * 180 - 90);
+      sb.append(',').append(random.nextDouble() * 360 - 180);
+      for (int c = 3; c < columns; c++) {
+        sb.append(',');
+        if (c % 3 == 0) {
+          sb.append(random.nextInt(100000));
+        }
+        else {
+          sb.append("value-").append(Long.toHexString(random.nextLong()));
+        }
+      }
+      sb.append(System.lineSeparator());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Create newline delimited JSON, each object having {@code fields} fields.
+   */
+  static String ndjson(int rows, int fields) {
+    Random random = new Random(SEED);
+    StringBuilder sb = new StringBuilder();
+    for (int r = 0; r < rows; r++) {
+      sb.append("{\"id\":\"UID-").append(r).append("\",\"action\":\"INDEX\"");
+      for (int f = 2; f < fields; f++) {
+        sb.append(",\"field_").append(f).append("\":\"value-").append(Long.toHexString(random.nextLong())).append('"');
+      }
+      sb.append('}').append(System.lineSeparator());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Create a text payload of approximately the required size, containing characters that need escaping.
+   */
+  static String text(int size) {
+    Random random = new Random(SEED);
+    StringBuilder sb = new StringBuilder(size);
+    while (sb.length() < size) {
+      sb.append("Lorem ipsum \"dolor\" sit amet,\tconsectetur ").append(random.nextInt()).append(System.lineSeparator());
+    }
+    return sb.toString();
+  }
+
+  static AdaptrisMessage message(String payload) {
+    return AdaptrisMessageFactory.getDefaultInstance().newMessage(payload);
+  }
+}
@@ -0,0 +1,54 @@
+package com.adaptris.core.elastic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.adaptris.core.util.CloseableIterable;
+
+/**
+ * Documents/sec for assembling a bulk request from the output of a {@link CSVDocumentBuilder}, without sending it; this is the
+ * client-side cost of {@link BulkIndexDocuments} and needs no cluster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulkRequestBenchmark {
+
+  static final int ROWS = 1000;
+
+  @Param({"10", "200"})
+  public int columns;
+
+  private String csv;
+  private CSVDocumentBuilder builder;
+
+  @Setup
+  public void setup() {
+    csv = BenchmarkData.csv(ROWS, columns);
+    builder = new CSVDocumentBuilder();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public long bulkRequest() throws Exception {
+    // BulkRequestBuilder just delegates to the BulkRequest, and needs a client to construct.
+    BulkRequest bulkRequest = new BulkRequest();
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(builder.build(BenchmarkData.message(csv)))) {
+      for (DocumentWrapper doc : docs) {
+        bulkRequest.add(new IndexRequest("index", "type", doc.uniqueId()).source(doc.content()));
+      }
+    }
+    return bulkRequest.estimatedSizeInBytes();
+  }
+}
@@ -0,0 +1,62 @@
+package com.adaptris.core.elastic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.adaptris.core.util.CloseableIterable;
+
+/**
+ * Documents/sec for the CSV document builders; run with {@code -prof gc} (the default in build.gradle) for bytes allocated per
+ * document ({@code gc.alloc.rate.norm} divided by {@value #ROWS}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvDocumentBuilderBenchmark {
+
+  static final int ROWS = 1000;
+
+  @Param({"10", "50", "200"})
+  public int columns;
+
+  private String csv;
+  private CSVDocumentBuilder csvBuilder;
+  private CSVWithGeoPointBuilder geoBuilder;
+
+  @Setup
+  public void setup() {
+    csv = BenchmarkData.csv(ROWS, columns);
+    csvBuilder = new CSVDocumentBuilder();
+    geoBuilder = new CSVWithGeoPointBuilder();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void csvDocumentBuilder(Blackhole bh) throws Exception {
+    consume(csvBuilder, bh);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void csvWithGeoPointBuilder(Blackhole bh) throws Exception {
+    consume(geoBuilder, bh);
+  }
+
+  private void consume(ElasticDocumentBuilder builder, Blackhole bh) throws Exception {
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(builder.build(BenchmarkData.message(csv)))) {
+      for (DocumentWrapper doc : docs) {
+        bh.consume(doc.content().bytes());
+      }
+    }
+  }
+}
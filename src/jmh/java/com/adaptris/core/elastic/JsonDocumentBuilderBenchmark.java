@@ -0,0 +1,84 @@
+package com.adaptris.core.elastic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.adaptris.core.util.CloseableIterable;
+
+/**
+ * Documents/sec for {@link SimpleDocumentBuilder} (by payload size) and {@link StreamingJsonDocumentBuilder} (by object width).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonDocumentBuilderBenchmark {
+
+  static final int ROWS = 1000;
+
+  @State(Scope.Benchmark)
+  public static class Payload {
+    @Param({"1024", "1048576", "16777216"})
+    public int payloadSize;
+
+    String text;
+    SimpleDocumentBuilder simple;
+    SimpleDocumentBuilder streaming;
+
+    @Setup
+    public void setup() {
+      text = BenchmarkData.text(payloadSize);
+      simple = new SimpleDocumentBuilder();
+      streaming = new SimpleDocumentBuilder();
+      streaming.setStreamContent(true);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Objects {
+    @Param({"10", "100"})
+    public int fields;
+
+    String ndjson;
+    StreamingJsonDocumentBuilder builder;
+
+    @Setup
+    public void setup() {
+      ndjson = BenchmarkData.ndjson(ROWS, fields);
+      builder = new StreamingJsonDocumentBuilder("/id");
+    }
+  }
+
+  @Benchmark
+  public void simpleDocumentBuilder(Payload state, Blackhole bh) throws Exception {
+    consume(state.simple, state.text, bh);
+  }
+
+  @Benchmark
+  public void simpleDocumentBuilder_Streaming(Payload state, Blackhole bh) throws Exception {
+    consume(state.streaming, state.text, bh);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void streamingJsonDocumentBuilder(Objects state, Blackhole bh) throws Exception {
+    consume(state.builder, state.ndjson, bh);
+  }
+
+  private static void consume(ElasticDocumentBuilder builder, String payload, Blackhole bh) throws Exception {
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer
+        .ensureCloseable(builder.build(BenchmarkData.message(payload)))) {
+      for (DocumentWrapper doc : docs) {
+        bh.consume(doc.content().bytes());
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.adaptris.core.elastic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ConfiguredProduceDestination;
+import com.adaptris.core.StandaloneProducer;
+import com.adaptris.core.util.LifecycleHelper;
+
+/**
+ * End to end documents/sec into an {@link EmbeddedElasticSearch} node running in the benchmark JVM.
+ * <p>
+ * Each invocation produces a single message of {@value #ROWS} documents (or 1 document for {@code simple}); the {@code documents}
+ * counter is the throughput to compare, the primary score is messages/sec. The node shares the CPU with the producer, so the
+ * numbers are a relative baseline between configurations and releases, rather than what a real cluster would achieve.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LocalNodeThroughputBenchmark {
+
+  static final int ROWS = 1000;
+  private static final String INDEX = "benchmark";
+  private static final String TYPE = "myType";
+
+  @Param({"index-documents", "bulk-100", "bulk-1000"})
+  public String producer;
+
+  @Param({"simple", "csv", "streaming-json"})
+  public String builder;
+
+  private EmbeddedElasticSearch elastic;
+  private StandaloneProducer standalone;
+  private String payload;
+  private int documentsPerMessage;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    elastic = new EmbeddedElasticSearch();
+    elastic.resetIndex(INDEX);
+    IndexDocuments p = createProducer();
+    switch (builder) {
+    case "csv":
+      p.setDocumentBuilder(new CSVDocumentBuilder());
+      payload = BenchmarkData.csv(ROWS, 10);
+      documentsPerMessage = ROWS;
+      break;
+    case "streaming-json":
+      p.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+      payload = BenchmarkData.ndjson(ROWS, 10);
+      documentsPerMessage = ROWS;
+      break;
+    default:
+      p.setDocumentBuilder(new SimpleDocumentBuilder());
+      payload = BenchmarkData.text(1024);
+      documentsPerMessage = 1;
+    }
+    p.setDestination(new ConfiguredProduceDestination(TYPE));
+    standalone = new StandaloneProducer(elastic.createConnection(INDEX), p);
+    LifecycleHelper.initAndStart(standalone);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws Exception {
+    LifecycleHelper.stopAndClose(standalone);
+    elastic.close();
+  }
+
+  @Benchmark
+  public void produce(Documents documents) throws Exception {
+    AdaptrisMessage msg = BenchmarkData.message(payload);
+    standalone.doService(msg);
+    documents.documents += documentsPerMessage;
+  }
+
+  private IndexDocuments createProducer() {
+    if (producer.startsWith("bulk-")) {
+      BulkIndexDocuments result = new BulkIndexDocuments();
+      result.setBatchWindow(Integer.valueOf(producer.substring("bulk-".length())));
+      return result;
+    }
+    return new IndexDocuments();
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Documents {
+    public long documents;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      documents = 0;
+    }
+  }
+}
@@ -5,4 +5,28 @@ import com.adaptris.core.ServiceException;
 
 public interface ActionExtractor {
   public String extract(AdaptrisMessage msg, DocumentWrapper document) throws ServiceException;
+
+  /**
+   * Extract the action as a {@link DocumentAction}.
+   * <p>
+   * The default implementation is {@code DocumentAction.valueOf(extract(msg, document))}; override it if the action is already
+   * available without the string round trip.
+   * </p>
+   */
+  public default DocumentAction extractAction(AdaptrisMessage msg, DocumentWrapper document) throws ServiceException {
+    return DocumentAction.valueOf(extract(msg, document));
+  }
+
+  /**
+   * Whether the action depends only on the message.
+   * <p>
+   * If true, then the action is only extracted once per message (from the first document), and used for all the documents in that
+   * message.
+   * </p>
+   * 
+   * @return false by default.
+   */
+  public default boolean isMessageScoped() {
+    return false;
+  }
 }
@@ -0,0 +1,216 @@
+package com.adaptris.core.elastic;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Adjusts the batch size of {@link BulkIndexDocuments} based on how the cluster is coping.
+ *
+ * <p>
+ * The batch size starts at {@link BulkIndexDocuments#setBatchWindow(Integer)} and is adjusted after each bulk request using
+ * additive-increase / multiplicative-decrease:
+ * <ul>
+ * <li>If any items were rejected because the cluster was busy, or the request failed outright, or either the client round trip
+ * time or the time reported by ElasticSearch ({@code took}) exceeded {@link #setTargetLatency(TimeInterval)}, then the batch size
+ * is multiplied by {@link #setDecreaseFactor(Double)}. This only happens once for the requests that were built with the same batch
+ * size, so that a burst of slow responses doesn't collapse it to the minimum.</li>
+ * <li>Otherwise, if the request was a full batch, then the batch size is increased by {@link #setIncreaseStep(Integer)}. Smaller
+ * requests (e.g. the end of a message) don't tell us anything, so they are ignored.</li>
+ * </ul>
+ * The batch size is always kept between {@link #setMinBatchSize(Integer)} and {@link #setMaxBatchSize(Integer)}. Changes are
+ * logged at DEBUG, and the current value is available as {@code BatchSize} in the producer's {@link ElasticSearchMetricsMXBean}.
+ * </p>
+ *
+ * @config elasticsearch-adaptive-batch-size
+ */
+@XStreamAlias("elasticsearch-adaptive-batch-size")
+public class AdaptiveBatchSize {
+
+  private static final int DEFAULT_MIN = 100;
+  private static final int DEFAULT_MAX = 10000;
+  private static final int DEFAULT_INCREASE_STEP = 100;
+  private static final double DEFAULT_DECREASE_FACTOR = 0.5;
+  private static final TimeInterval DEFAULT_TARGET_LATENCY = new TimeInterval(1L, TimeUnit.SECONDS);
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  @Min(1)
+  @InputFieldDefault(value = "100")
+  private Integer minBatchSize;
+
+  @Min(1)
+  @InputFieldDefault(value = "10000")
+  private Integer maxBatchSize;
+
+  @Min(1)
+  @InputFieldDefault(value = "100")
+  private Integer increaseStep;
+
+  @InputFieldDefault(value = "0.5")
+  private Double decreaseFactor;
+
+  @Valid
+  private TimeInterval targetLatency;
+
+  private transient AtomicInteger current = new AtomicInteger();
+
+  public AdaptiveBatchSize() {
+
+  }
+
+  /**
+   * Start (or restart) at the specified batch size.
+   */
+  void init(int initial) {
+    current.set(clamp(initial));
+  }
+
+  /**
+   * The batch size to use for the next bulk request.
+   */
+  int current() {
+    int result = current.get();
+    return result > 0 ? result : minBatchSize();
+  }
+
+  /**
+   * Adjust the batch size based on a completed request.
+   *
+   * @param sentWith the batch size in effect when the request was built.
+   * @param items the number of items in the request.
+   * @param clientMillis the round trip time, as observed by the client.
+   * @param tookMillis the time reported by ElasticSearch.
+   * @param rejected the number of items rejected because the cluster was busy.
+   */
+  void onResponse(int sentWith, int items, long clientMillis, long tookMillis, int rejected) {
+    if (rejected > 0 || Math.max(clientMillis, tookMillis) > targetLatency()) {
+      decrease(sentWith);
+    }
+    else if (items >= sentWith) {
+      increase(sentWith);
+    }
+  }
+
+  /**
+   * Adjust the batch size based on a request that failed outright.
+   */
+  void onFailure(int sentWith) {
+    decrease(sentWith);
+  }
+
+  private void decrease(int sentWith) {
+    int next = clamp((int) (sentWith * decreaseFactor()));
+    // If it's already been changed since this request was built, then let that decision stand.
+    if (next != sentWith && current.compareAndSet(sentWith, next)) {
+      log.debug("Decreased batch size from {} to {}", sentWith, next);
+    }
+  }
+
+  private void increase(int sentWith) {
+    int next = clamp(sentWith + increaseStep());
+    if (next != sentWith && current.compareAndSet(sentWith, next)) {
+      log.debug("Increased batch size from {} to {}", sentWith, next);
+    }
+  }
+
+  private int clamp(int size) {
+    return Math.max(minBatchSize(), Math.min(maxBatchSize(), size));
+  }
+
+  public Integer getMinBatchSize() {
+    return minBatchSize;
+  }
+
+  /**
+   * Set the smallest batch size.
+   *
+   * @param i the minimum, defaults to 100.
+   */
+  public void setMinBatchSize(Integer i) {
+    this.minBatchSize = i;
+  }
+
+  int minBatchSize() {
+    return getMinBatchSize() != null ? Math.max(1, getMinBatchSize().intValue()) : DEFAULT_MIN;
+  }
+
+  public Integer getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Set the largest batch size.
+   *
+   * @param i the maximum, defaults to 10000.
+   */
+  public void setMaxBatchSize(Integer i) {
+    this.maxBatchSize = i;
+  }
+
+  int maxBatchSize() {
+    int max = getMaxBatchSize() != null ? getMaxBatchSize().intValue() : DEFAULT_MAX;
+    return Math.max(minBatchSize(), max);
+  }
+
+  public Integer getIncreaseStep() {
+    return increaseStep;
+  }
+
+  /**
+   * Set how much the batch size grows after a full batch is handled within the target latency.
+   *
+   * @param i the increase, defaults to 100.
+   */
+  public void setIncreaseStep(Integer i) {
+    this.increaseStep = i;
+  }
+
+  int increaseStep() {
+    return getIncreaseStep() != null ? Math.max(1, getIncreaseStep().intValue()) : DEFAULT_INCREASE_STEP;
+  }
+
+  public Double getDecreaseFactor() {
+    return decreaseFactor;
+  }
+
+  /**
+   * Set how much the batch size shrinks when the cluster is struggling.
+   *
+   * @param d the multiplier, between 0 and 1; defaults to 0.5.
+   */
+  public void setDecreaseFactor(Double d) {
+    this.decreaseFactor = d;
+  }
+
+  double decreaseFactor() {
+    double d = getDecreaseFactor() != null ? getDecreaseFactor().doubleValue() : DEFAULT_DECREASE_FACTOR;
+    return d > 0 && d < 1 ? d : DEFAULT_DECREASE_FACTOR;
+  }
+
+  public TimeInterval getTargetLatency() {
+    return targetLatency;
+  }
+
+  /**
+   * Set the latency above which a bulk request is considered too large.
+   *
+   * @param t the latency, defaults to 1 second.
+   */
+  public void setTargetLatency(TimeInterval t) {
+    this.targetLatency = t;
+  }
+
+  long targetLatency() {
+    return getTargetLatency() != null ? getTargetLatency().toMilliseconds() : DEFAULT_TARGET_LATENCY.toMilliseconds();
+  }
+}
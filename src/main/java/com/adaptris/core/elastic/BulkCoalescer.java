@@ -0,0 +1,190 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adaptris.core.ProduceException;
+
+/**
+ * Collects the requests from many messages into shared bulk requests.
+ *
+ * <p>
+ * Each message gets a {@link Ticket}, adds its requests to it, and then waits for the bulk requests that contain them to be
+ * acknowledged. A bulk request is sent when it reaches {@code maxActions} (which may change over time) or {@code maxBytes}, or
+ * once {@code lingerMs} has passed since the first request was added to it; whichever comes first. If {@code lingerMs} is 0, then
+ * the bulk request is sent as soon as a message that has added requests to it starts waiting.
+ * </p>
+ */
+class BulkCoalescer {
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private final Supplier<BulkRequestBuilder> bulkFactory;
+  private final BulkIndexDocuments.BatchExecutor executor;
+  private final IntSupplier maxActions;
+  private final long maxBytes;
+  private final long lingerMs;
+  private final ScheduledExecutorService scheduler;
+
+  private Batch current;
+
+  BulkCoalescer(Supplier<BulkRequestBuilder> factory, BulkIndexDocuments.BatchExecutor executor, IntSupplier maxActions,
+      long maxBytes, long lingerMs, ScheduledExecutorService scheduler) {
+    this.bulkFactory = factory;
+    this.executor = executor;
+    this.maxActions = maxActions;
+    this.maxBytes = maxBytes;
+    this.lingerMs = lingerMs;
+    this.scheduler = scheduler;
+  }
+
+  Ticket newTicket() {
+    return new Ticket();
+  }
+
+  /**
+   * Send whatever is currently waiting.
+   */
+  void flush() {
+    Batch toSend = null;
+    synchronized (this) {
+      toSend = current;
+      current = null;
+    }
+    send(toSend);
+  }
+
+  private void flush(Batch batch) {
+    synchronized (this) {
+      if (current != batch) {
+        // Already sent because it was full.
+        return;
+      }
+      current = null;
+    }
+    send(batch);
+  }
+
+  // Must hold the lock.
+  private Batch current() {
+    if (current == null) {
+      Batch batch = new Batch(bulkFactory.get(), maxActions.getAsInt());
+      current = batch;
+      if (lingerMs > 0) {
+        scheduler.schedule(() -> flush(batch), lingerMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    return current;
+  }
+
+  private boolean isFull(Batch batch) {
+    if (batch.bulkRequest.numberOfActions() >= Math.max(1, maxActions.getAsInt())) {
+      return true;
+    }
+    return maxBytes > 0 && batch.bulkRequest.request().estimatedSizeInBytes() >= maxBytes;
+  }
+
+  private void send(Batch batch) {
+    if (batch == null) {
+      return;
+    }
+    log.trace("Sending shared batch of {} actions", batch.bulkRequest.numberOfActions());
+    try {
+      executor.execute(batch.bulkRequest, batch.sentWith, batch.result);
+    }
+    catch (Exception e) {
+      batch.result.onFailure(e);
+    }
+  }
+
+  private static class Batch {
+    private final BulkRequestBuilder bulkRequest;
+    // the batch size when this batch was started.
+    private final int sentWith;
+    private final PlainActionFuture<BulkResponse> result = PlainActionFuture.newFuture();
+
+    Batch(BulkRequestBuilder b, int sentWith) {
+      bulkRequest = b;
+      this.sentWith = sentWith;
+    }
+  }
+
+  // The items in a batch that belong to a single message.
+  private static class Segment {
+    private final Batch batch;
+    private final int from;
+    private int to;
+
+    Segment(Batch batch, int from) {
+      this.batch = batch;
+      this.from = from;
+      this.to = from;
+    }
+  }
+
+  /**
+   * The requests for a single message.
+   */
+  class Ticket {
+    private final List<Segment> segments = new ArrayList<>();
+
+    void add(ActionRequest<?> request) {
+      Batch full = null;
+      synchronized (BulkCoalescer.this) {
+        Batch batch = current();
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.batch != batch) {
+          segment = new Segment(batch, batch.bulkRequest.numberOfActions());
+          segments.add(segment);
+        }
+        batch.bulkRequest.request().add(request);
+        segment.to++;
+        if (isFull(batch)) {
+          full = batch;
+          current = null;
+        }
+      }
+      send(full);
+    }
+
+    /**
+     * Wait for all the requests to be acknowledged.
+     *
+     * @throws ProduceException if any of the requests failed.
+     */
+    void await(long timeoutMs) throws Exception {
+      if (lingerMs <= 0 && !segments.isEmpty()) {
+        // Nothing else will send it.
+        flush(segments.get(segments.size() - 1).batch);
+      }
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      List<String> failures = new ArrayList<>();
+      int item = 0;
+      for (Segment segment : segments) {
+        BulkResponse response = segment.batch.result.actionGet(Math.max(0, deadline - System.currentTimeMillis()));
+        BulkItemResponse[] items = response.getItems();
+        for (int i = segment.from; i < segment.to; i++, item++) {
+          if (items[i].isFailed()) {
+            failures.add(String.format("[%d]: index [%s], type [%s], id [%s], message [%s]", item, items[i].getIndex(),
+                items[i].getType(), items[i].getId(), items[i].getFailureMessage()));
+          }
+        }
+      }
+      if (failures.size() > 0) {
+        throw new ProduceException("failure in bulk execution:\n" + String.join("\n", failures));
+      }
+    }
+  }
+}
@@ -1,15 +1,28 @@
 package com.adaptris.core.elastic;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.XContentHelper;
 import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.ProduceDestination;
 import com.adaptris.core.ProduceException;
 import com.adaptris.core.util.CloseableIterable;
 import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.TimeInterval;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
 /**
@@ -17,7 +30,13 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * 
  * <p>
  * {@link ProduceDestination#getDestination(AdaptrisMessage)} should return the type of document that we are submitting to into
- * ElasticSearch; the {@code index} is taken from the underlying {@link ElasticSearchConnection}.
+ * ElasticSearch; the {@code index} is taken from the underlying {@link ElasticSearchConnection}, unless an
+ * {@link IndexResolver} is configured.
+ * </p>
+ * <p>
+ * Each batch is sent as soon as it is full, while the rest of the message is still being built. If building the message fails part
+ * way through, then the batch that hasn't been sent yet is discarded; but the batches that were already sent are not rolled back,
+ * so some of the documents from the failed message may have been indexed.
  * </p>
  * 
  * @author lchan
@@ -36,6 +55,35 @@ public class BulkIndexDocuments extends IndexDocuments {
   @Valid
   private ActionExtractor action;
 
+  @AdvancedConfig
+  @Min(0)
+  @InputFieldDefault(value = "0")
+  private Integer concurrentBulkRequests;
+
+  @AdvancedConfig
+  @Min(0)
+  private Long batchSizeBytes;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval flushInterval;
+
+  @AdvancedConfig
+  @Valid
+  private BulkItemRetry itemRetry;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean coalesceDuplicateIds;
+
+  @AdvancedConfig
+  @Valid
+  private AdaptiveBatchSize adaptiveBatchSize;
+
+  @AdvancedConfig
+  @Valid
+  private UpdateSettings updateSettings;
+
   public BulkIndexDocuments() {
     super();
     ConfiguredAction ca = new ConfiguredAction();
@@ -43,39 +91,38 @@ public class BulkIndexDocuments extends IndexDocuments {
     setAction(ca);
   }
 
+  @Override
+  public void init() throws CoreException {
+    super.init();
+    if (getAdaptiveBatchSize() != null) {
+      getAdaptiveBatchSize().init(configuredBatchWindow());
+      metrics.batchSize(getAdaptiveBatchSize().current());
+    }
+  }
+
   @Override
   protected AdaptrisMessage doRequest(AdaptrisMessage msg, ProduceDestination destination, long timeout) throws ProduceException {
     try {
       final String type = destination.getDestination(msg);
       final String index = retrieveConnection(ElasticSearchConnection.class).getIndex();
-      BulkRequestBuilder bulkRequest = transportClient.prepareBulk();
-      try (CloseableIterable<DocumentWrapper> docs = ensureCloseable(getDocumentBuilder().build(msg))) {
-        int count = 0;
-        for (DocumentWrapper doc : docs) {
-          count++;
-          DocumentAction action = DocumentAction.valueOf(getAction().extract(msg, doc));
-          switch(action) {
-          case INDEX:
-            bulkRequest.add(transportClient.prepareIndex(index, type, doc.uniqueId()).setSource(doc.content()));
-            break;
-          case UPDATE:
-            bulkRequest.add(transportClient.prepareUpdate(index, type, doc.uniqueId()).setDoc(doc.content()));
-            break;
-          case DELETE:
-            bulkRequest.add(transportClient.prepareDelete(index, type, doc.uniqueId()));
-            break;
-          default:
-            throw new ProduceException("Unrecognized action: " + action);
-          }
-          if (count >= batchWindow()) {
-            doSend(bulkRequest);
-            count = 0;
-            bulkRequest = transportClient.prepareBulk();
-          }
-        }
+      InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight = concurrentBulkRequests() > 0
+          ? InFlightRequests.bulk(concurrentBulkRequests(), this::execute)
+          : null;
+      Exception failure = null;
+      try {
+        MessageBatch batch = new MessageBatch(inFlight);
+        buildRequests(msg, index, type, batch::add);
+        // Only send the last batch if the whole message was built.
+        batch.flush();
       }
-      if (bulkRequest.numberOfActions() > 0) {
-        doSend(bulkRequest);
+      catch (Exception e) {
+        failure = e;
+        throw e;
+      }
+      finally {
+        if (inFlight != null) {
+          inFlight.await(timeout, failure);
+        }
       }
     }
     catch (Exception e) {
@@ -84,9 +131,92 @@ public class BulkIndexDocuments extends IndexDocuments {
     return msg;
   }
 
-  private void doSend(BulkRequestBuilder bulkRequest) throws Exception {
+  /**
+   * Build the requests for each document in the message.
+   */
+  protected void buildRequests(AdaptrisMessage msg, String index, String type, RequestHandler handler) throws Exception {
+    ActionExtractor extractor = getAction();
+    DocumentAction messageAction = null;
+    DuplicateIdCoalescer coalescer = coalesceDuplicateIds()
+        ? new DuplicateIdCoalescer(batchWindow(), (a, i, t, d) -> handler.handle(buildRequest(a, i, t, d)))
+        : null;
+    try (CloseableIterable<DocumentWrapper> docs = ensureCloseable(getDocumentBuilder().build(msg))) {
+      for (DocumentWrapper d : docs) {
+        DocumentWrapper doc = withRouting(msg, d);
+        DocumentAction action = messageAction;
+        if (action == null) {
+          action = extractor.extractAction(msg, doc);
+          if (extractor.isMessageScoped()) {
+            messageAction = action;
+          }
+        }
+        String docIndex = resolveIndex(msg, doc, index);
+        String docType = resolveType(msg, doc, type);
+        if (coalescer != null) {
+          coalescer.add(action, docIndex, docType, doc);
+        }
+        else {
+          handler.handle(buildRequest(action, docIndex, docType, doc));
+        }
+      }
+    }
+    if (coalescer != null) {
+      coalescer.flush();
+    }
+  }
+
+  protected ActionRequest<?> buildRequest(DocumentAction action, String index, String type, DocumentWrapper doc)
+      throws ProduceException {
+    switch (action) {
+    case INDEX:
+      return transportClient.prepareIndex(index, type, doc.uniqueId()).setSource(doc.content()).setRouting(doc.routing())
+          .setParent(doc.parent()).request();
+    case UPDATE:
+      return update(index, type, doc).setDoc(doc.content()).request();
+    case UPSERT:
+      return update(index, type, doc).setDoc(doc.content()).setDocAsUpsert(true).request();
+    case SCRIPTED_UPDATE:
+      return update(index, type, doc).setScript(updateSettings().script(asMap(doc))).setUpsert(doc.content()).request();
+    case DELETE:
+      return transportClient.prepareDelete(index, type, doc.uniqueId()).setRouting(doc.routing()).setParent(doc.parent())
+          .request();
+    default:
+      throw new ProduceException("Unrecognized action: " + action);
+    }
+  }
+
+  private UpdateRequestBuilder update(String index, String type, DocumentWrapper doc) {
+    return updateSettings().apply(transportClient.prepareUpdate(index, type, doc.uniqueId())).setRouting(doc.routing())
+        .setParent(doc.parent());
+  }
+
+  private static Map<String, Object> asMap(DocumentWrapper doc) {
+    return XContentHelper.convertToMap(doc.content().bytes(), true).v2();
+  }
+
+  private boolean flushRequired(BulkRequestBuilder bulkRequest, long batchStarted) {
+    if (bulkRequest.numberOfActions() >= batchWindow()) {
+      return true;
+    }
+    if (batchSizeBytes() > 0 && bulkRequest.request().estimatedSizeInBytes() >= batchSizeBytes()) {
+      return true;
+    }
+    if (flushInterval() > 0 && System.currentTimeMillis() - batchStarted >= flushInterval()) {
+      return true;
+    }
+    return false;
+  }
+
+  private void doSend(BulkRequestBuilder bulkRequest, int sentWith, InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight)
+      throws Exception {
+    if (inFlight != null) {
+      inFlight.submit(bulkRequest, (b, l) -> execute(b, sentWith, l));
+      return;
+    }
     int count = bulkRequest.numberOfActions();
-    BulkResponse response = bulkRequest.get();
+    PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+    execute(bulkRequest, sentWith, future);
+    BulkResponse response = future.actionGet();
     if (response.hasFailures()) {
       throw new ProduceException(response.buildFailureMessage());
     }
@@ -94,6 +224,112 @@ public class BulkIndexDocuments extends IndexDocuments {
     return;
   }
 
+  void execute(BulkRequestBuilder bulkRequest, ActionListener<BulkResponse> listener) {
+    execute(bulkRequest, batchWindow(), listener);
+  }
+
+  /**
+   * Send the bulk request.
+   *
+   * @param sentWith the batch size in effect when the request was started, for {@link AdaptiveBatchSize}.
+   */
+  void execute(BulkRequestBuilder bulkRequest, int sentWith, ActionListener<BulkResponse> listener) {
+    execute(transportClient, bulkRequest, sentWith, listener);
+  }
+
+  void execute(Client client, BulkRequestBuilder bulkRequest, int sentWith, ActionListener<BulkResponse> listener) {
+    ActionListener<BulkResponse> recorded = metrics.record(bulkRequest.request(), listener);
+    if (getItemRetry() != null) {
+      // Adapt to the first attempt, before the rejected items are retried (and without the backoff).
+      getItemRetry().execute(client, bulkRequest.request(), recorded, adapt(sentWith, bulkRequest.numberOfActions(), null));
+    }
+    else {
+      client.bulk(bulkRequest.request(), adapt(sentWith, bulkRequest.numberOfActions(), recorded));
+    }
+  }
+
+  // Wrap the listener (which may be null) so that the response adjusts the adaptive batch size.
+  private ActionListener<BulkResponse> adapt(final int sentWith, final int items, final ActionListener<BulkResponse> listener) {
+    final AdaptiveBatchSize adaptive = getAdaptiveBatchSize();
+    if (adaptive == null) {
+      return listener;
+    }
+    final long started = System.nanoTime();
+    return new ActionListener<BulkResponse>() {
+      @Override
+      public void onResponse(BulkResponse response) {
+        int rejected = 0;
+        for (BulkItemResponse item : response.getItems()) {
+          if (BulkItemRetry.isRetryable(item)) {
+            rejected++;
+          }
+        }
+        adaptive.onResponse(sentWith, items, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+            response.getTookInMillis(), rejected);
+        metrics.batchSize(adaptive.current());
+        if (listener != null) {
+          listener.onResponse(response);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable e) {
+        adaptive.onFailure(sentWith);
+        metrics.batchSize(adaptive.current());
+        if (listener != null) {
+          listener.onFailure(e);
+        }
+      }
+    };
+  }
+
+  @FunctionalInterface
+  interface RequestHandler {
+    void handle(ActionRequest<?> request) throws Exception;
+  }
+
+  /**
+   * Sends a bulk request that was started when the batch size was {@code sentWith}.
+   */
+  @FunctionalInterface
+  interface BatchExecutor {
+    void execute(BulkRequestBuilder bulkRequest, int sentWith, ActionListener<BulkResponse> listener);
+  }
+
+  /**
+   * The bulk requests for a single message.
+   */
+  private class MessageBatch {
+    private final InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight;
+    private BulkRequestBuilder bulkRequest;
+    private long batchStarted;
+    private int sentWith;
+
+    MessageBatch(InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight) {
+      this.inFlight = inFlight;
+      start();
+    }
+
+    void add(ActionRequest<?> request) throws Exception {
+      bulkRequest.request().add(request);
+      if (flushRequired(bulkRequest, batchStarted)) {
+        doSend(bulkRequest, sentWith, inFlight);
+        start();
+      }
+    }
+
+    void flush() throws Exception {
+      if (bulkRequest.numberOfActions() > 0) {
+        doSend(bulkRequest, sentWith, inFlight);
+      }
+    }
+
+    private void start() {
+      bulkRequest = transportClient.prepareBulk();
+      batchStarted = System.currentTimeMillis();
+      sentWith = batchWindow();
+    }
+  }
 
   /**
    * @return the batchCount
@@ -109,7 +345,14 @@ public class BulkIndexDocuments extends IndexDocuments {
     this.batchWindow = b;
   }
 
+  /**
+   * The batch size to use; either the configured batch window, or the current adaptive batch size.
+   */
   int batchWindow() {
+    return getAdaptiveBatchSize() != null ? getAdaptiveBatchSize().current() : configuredBatchWindow();
+  }
+
+  int configuredBatchWindow() {
     return getBatchWindow() != null ? getBatchWindow().intValue() : DEFAULT_BATCH_WINDOW;
   }
 
@@ -123,4 +366,143 @@ public class BulkIndexDocuments extends IndexDocuments {
     this.action = action;
   }
 
+  public Integer getConcurrentBulkRequests() {
+    return concurrentBulkRequests;
+  }
+
+  /**
+   * Set the number of bulk requests that can be outstanding at any one time.
+   * <p>
+   * If greater than 0, then each batch is submitted asynchronously and the next batch is built while earlier batches are still
+   * being processed by ElasticSearch; any failures are reported once all the outstanding requests have completed.
+   * </p>
+   * 
+   * @param i the number of concurrent requests, defaults to 0 (each batch is sent synchronously).
+   */
+  public void setConcurrentBulkRequests(Integer i) {
+    this.concurrentBulkRequests = i;
+  }
+
+  public Long getBatchSizeBytes() {
+    return batchSizeBytes;
+  }
+
+  /**
+   * Set the estimated size of a batch (in bytes) that will cause it to be sent.
+   * <p>
+   * This works alongside {@link #setBatchWindow(Integer)}; whichever limit is reached first causes the batch to be sent. The size
+   * is the estimate from {@code BulkRequest#estimatedSizeInBytes()}, so you should leave some headroom if you are trying to stay
+   * under {@code http.max_content_length}.
+   * </p>
+   * 
+   * @param l the size in bytes; if not specified (or 0) then batches are not limited by size.
+   */
+  public void setBatchSizeBytes(Long l) {
+    this.batchSizeBytes = l;
+  }
+
+  long batchSizeBytes() {
+    return getBatchSizeBytes() != null ? getBatchSizeBytes().longValue() : 0;
+  }
+
+  public TimeInterval getFlushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * Set the maximum amount of time that a batch is allowed to accumulate before it is sent.
+   * <p>
+   * This works alongside {@link #setBatchWindow(Integer)}; it is checked as each document is added, so a batch is sent once a
+   * document is added after the interval has expired.
+   * </p>
+   * 
+   * @param t the interval; if not specified then batches are not limited by time.
+   */
+  public void setFlushInterval(TimeInterval t) {
+    this.flushInterval = t;
+  }
+
+  long flushInterval() {
+    return getFlushInterval() != null ? getFlushInterval().toMilliseconds() : 0;
+  }
+
+  public BulkItemRetry getItemRetry() {
+    return itemRetry;
+  }
+
+  /**
+   * Set how items rejected by ElasticSearch are retried.
+   * <p>
+   * If a bulk request partially fails, only the items rejected because the cluster was busy are resubmitted; if there are still
+   * failures once the retries are exhausted then the message fails as before.
+   * </p>
+   * 
+   * @param r the retry behaviour; if not specified then failed items are not retried.
+   */
+  public void setItemRetry(BulkItemRetry r) {
+    this.itemRetry = r;
+  }
+
+  public Boolean getCoalesceDuplicateIds() {
+    return coalesceDuplicateIds;
+  }
+
+  /**
+   * Whether to coalesce the actions for the same document id within each batch window.
+   * <p>
+   * If true, then within every {@link #setBatchWindow(Integer)} documents, an update is merged into an earlier index or update for
+   * the same id, and otherwise the last action for an id wins (so an index followed by a delete only sends the delete). This
+   * reduces the work ElasticSearch has to do for delta feeds that contain the same id several times; ids are not coalesced across
+   * batch windows or messages.
+   * </p>
+   * 
+   * @param b true to coalesce, defaults to false.
+   */
+  public void setCoalesceDuplicateIds(Boolean b) {
+    this.coalesceDuplicateIds = b;
+  }
+
+  boolean coalesceDuplicateIds() {
+    return getCoalesceDuplicateIds() != null ? getCoalesceDuplicateIds().booleanValue() : false;
+  }
+
+  public AdaptiveBatchSize getAdaptiveBatchSize() {
+    return adaptiveBatchSize;
+  }
+
+  /**
+   * Set how the batch size adapts to the observed latency and rejections.
+   * <p>
+   * If set, then {@link #setBatchWindow(Integer)} is only the initial batch size; it is then adjusted between the configured bounds
+   * after each bulk request.
+   * </p>
+   * 
+   * @param a the adaptive batch size; if not specified then the batch window is fixed.
+   */
+  public void setAdaptiveBatchSize(AdaptiveBatchSize a) {
+    this.adaptiveBatchSize = a;
+  }
+
+  public UpdateSettings getUpdateSettings() {
+    return updateSettings;
+  }
+
+  /**
+   * Set how {@code UPDATE}, {@code UPSERT} and {@code SCRIPTED_UPDATE} actions are applied.
+   *
+   * @param u the settings; if not specified then conflicts are not retried, no-op updates are detected, and there is no script
+   *          for {@code SCRIPTED_UPDATE}.
+   */
+  public void setUpdateSettings(UpdateSettings u) {
+    this.updateSettings = u;
+  }
+
+  UpdateSettings updateSettings() {
+    return getUpdateSettings() != null ? getUpdateSettings() : new UpdateSettings();
+  }
+
+  int concurrentBulkRequests() {
+    return getConcurrentBulkRequests() != null ? getConcurrentBulkRequests().intValue() : 0;
+  }
+
 }
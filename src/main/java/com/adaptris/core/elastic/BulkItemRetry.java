@@ -0,0 +1,252 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Retries the individual items of a bulk request that ElasticSearch rejected because it was too busy.
+ *
+ * <p>
+ * Only items that failed with {@code 429 (Too Many Requests)} / {@code EsRejectedExecutionException} or
+ * {@code 503 (Service Unavailable)} are resubmitted; items that succeeded are never sent again, and items that failed for any
+ * other reason are treated as permanent failures. The delay between attempts starts at {@link #getInitialBackoff()} and doubles
+ * with each attempt up to {@link #getMaxBackoff()}.
+ * </p>
+ *
+ * @config elasticsearch-bulk-item-retry
+ */
+@XStreamAlias("elasticsearch-bulk-item-retry")
+public class BulkItemRetry {
+
+  private static final int DEFAULT_MAX_RETRIES = 5;
+  private static final TimeInterval DEFAULT_INITIAL_BACKOFF = new TimeInterval(100L, TimeUnit.MILLISECONDS);
+  private static final TimeInterval DEFAULT_MAX_BACKOFF = new TimeInterval(10L, TimeUnit.SECONDS);
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  @Min(0)
+  @InputFieldDefault(value = "5")
+  private Integer maxRetries;
+
+  @Valid
+  @InputFieldDefault(value = "100 milliseconds")
+  private TimeInterval initialBackoff;
+
+  @Valid
+  @InputFieldDefault(value = "10 seconds")
+  private TimeInterval maxBackoff;
+
+  public BulkItemRetry() {
+
+  }
+
+  public BulkItemRetry(Integer maxRetries) {
+    this();
+    setMaxRetries(maxRetries);
+  }
+
+  /**
+   * Execute the bulk request, retrying any rejected items.
+   * <p>
+   * The listener receives a single response containing the final outcome of every item, so it only contains failures for items
+   * that could not be retried, or ran out of retries.
+   * </p>
+   */
+  void execute(Client client, BulkRequest request, ActionListener<BulkResponse> listener) {
+    execute(client, request, listener, null);
+  }
+
+  /**
+   * Execute the bulk request, retrying any rejected items.
+   *
+   * @param firstAttempt if not null, receives the response to the first attempt as soon as it arrives, before any rejected items
+   *          are retried.
+   * @see #execute(Client, BulkRequest, ActionListener)
+   */
+  void execute(Client client, BulkRequest request, ActionListener<BulkResponse> listener,
+      ActionListener<BulkResponse> firstAttempt) {
+    new RetryHandler(client, listener, firstAttempt).execute(request);
+  }
+
+  public Integer getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Set the number of times a rejected item will be resubmitted.
+   *
+   * @param i the max number of retries, defaults to 5.
+   */
+  public void setMaxRetries(Integer i) {
+    this.maxRetries = i;
+  }
+
+  int maxRetries() {
+    return getMaxRetries() != null ? getMaxRetries().intValue() : DEFAULT_MAX_RETRIES;
+  }
+
+  public TimeInterval getInitialBackoff() {
+    return initialBackoff;
+  }
+
+  /**
+   * Set the delay before the first retry.
+   *
+   * @param t the delay, defaults to 100 milliseconds.
+   */
+  public void setInitialBackoff(TimeInterval t) {
+    this.initialBackoff = t;
+  }
+
+  long initialBackoff() {
+    return getInitialBackoff() != null ? getInitialBackoff().toMilliseconds() : DEFAULT_INITIAL_BACKOFF.toMilliseconds();
+  }
+
+  public TimeInterval getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  /**
+   * Set the maximum delay between retries.
+   *
+   * @param t the delay, defaults to 10 seconds.
+   */
+  public void setMaxBackoff(TimeInterval t) {
+    this.maxBackoff = t;
+  }
+
+  long maxBackoff() {
+    return getMaxBackoff() != null ? getMaxBackoff().toMilliseconds() : DEFAULT_MAX_BACKOFF.toMilliseconds();
+  }
+
+  long backoff(int attempt) {
+    long delay = initialBackoff() << Math.min(attempt, 30);
+    return delay < 0 ? maxBackoff() : Math.min(delay, maxBackoff());
+  }
+
+  static boolean isRetryable(BulkItemResponse item) {
+    if (!item.isFailed()) {
+      return false;
+    }
+    RestStatus status = item.getFailure().getStatus();
+    if (status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE) {
+      return true;
+    }
+    return ExceptionsHelper.unwrapCause(item.getFailure().getCause()) instanceof EsRejectedExecutionException;
+  }
+
+  private class RetryHandler implements ActionListener<BulkResponse> {
+    private final Client client;
+    private final ActionListener<BulkResponse> listener;
+    private final ActionListener<BulkResponse> firstAttempt;
+    private final long started = System.currentTimeMillis();
+    // indexed by the position in the original request.
+    private BulkItemResponse[] completed;
+    private BulkRequest current;
+    // the position in the original request of each item in the current request.
+    private int[] originalIds;
+    private int attempt = 0;
+
+    RetryHandler(Client client, ActionListener<BulkResponse> listener, ActionListener<BulkResponse> firstAttempt) {
+      this.client = client;
+      this.listener = listener;
+      this.firstAttempt = firstAttempt;
+    }
+
+    void execute(BulkRequest request) {
+      completed = new BulkItemResponse[request.numberOfActions()];
+      int[] ids = new int[request.numberOfActions()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = i;
+      }
+      execute(request, ids);
+    }
+
+    private void execute(BulkRequest request, int[] ids) {
+      current = request;
+      originalIds = ids;
+      client.bulk(request, this);
+    }
+
+    @Override
+    public void onResponse(BulkResponse response) {
+      if (attempt == 0 && firstAttempt != null) {
+        firstAttempt.onResponse(response);
+      }
+      BulkRequest retry = retryRequest(current);
+      List<Integer> retryIds = new ArrayList<>();
+      List<BulkItemResponse> retryable = new ArrayList<>();
+      for (BulkItemResponse item : response) {
+        if (isRetryable(item)) {
+          retry.add(current.requests().get(item.getItemId()));
+          retryIds.add(originalIds[item.getItemId()]);
+          retryable.add(item);
+        }
+        else {
+          complete(item);
+        }
+      }
+      if (retry.numberOfActions() == 0 || attempt >= maxRetries()) {
+        retryable.forEach(this::complete);
+        finish();
+        return;
+      }
+      long delay = backoff(attempt++);
+      log.trace("{} items rejected, retry {} of {} in {}ms", retry.numberOfActions(), attempt, maxRetries(), delay);
+      int[] ids = retryIds.stream().mapToInt(Integer::intValue).toArray();
+      try {
+        client.threadPool().schedule(TimeValue.timeValueMillis(delay), ThreadPool.Names.SAME, () -> execute(retry, ids));
+      }
+      catch (Exception e) {
+        retryable.forEach(this::complete);
+        finish();
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+      if (attempt == 0 && firstAttempt != null) {
+        firstAttempt.onFailure(e);
+      }
+      listener.onFailure(e);
+    }
+
+    // An empty request with the same headers, context and settings as the original.
+    private BulkRequest retryRequest(BulkRequest original) {
+      return new BulkRequest(original).timeout(original.timeout()).refresh(original.refresh())
+          .consistencyLevel(original.consistencyLevel());
+    }
+
+    // Renumber the item so that it refers to its position in the original request.
+    private void complete(BulkItemResponse item) {
+      int id = originalIds[item.getItemId()];
+      completed[id] = item.isFailed() ? new BulkItemResponse(id, item.getOpType(), item.getFailure())
+          : new BulkItemResponse(id, item.getOpType(), item.getResponse());
+    }
+
+    private void finish() {
+      listener.onResponse(new BulkResponse(completed, System.currentTimeMillis() - started));
+    }
+  }
+}
@@ -3,12 +3,10 @@ package com.adaptris.core.elastic;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import com.adaptris.annotation.AdvancedConfig;
@@ -73,20 +71,22 @@ public class CSVDocumentBuilder extends CSVDocumentBuilderImpl {
   }
 
   private class MyWrapper extends CSVDocumentWrapper {
-    private List<String> headers = new ArrayList<>();
+    private CsvColumnPlan columns;
 
     public MyWrapper(CSVParser p) {
       super(p);
       if (useHeaderRecord()) {
-        headers = buildHeaders(csvIterator.next());
+        columns = new CsvColumnPlan(buildHeaders(csvIterator.next()), getFieldNameMapper(), Collections.emptySet(), getSchema());
+      }
+      else {
+        columns = new CsvColumnPlan(getFieldNameMapper(), getSchema());
       }
     }
 
     @Override
-    public DocumentWrapper next() {
+    protected DocumentWrapper build(CSVRecord record) {
       DocumentWrapper result = null;
       try {
-        CSVRecord record = csvIterator.next();
         int idField = 0;
         if (uniqueIdField() <= record.size()) {
           idField = uniqueIdField();
@@ -97,14 +97,10 @@ public class CSVDocumentBuilder extends CSVDocumentBuilderImpl {
         String uniqueId = record.get(idField);
         XContentBuilder builder = jsonBuilder();
         builder.startObject();
-        for (int i = 0; i < record.size(); i++) {
-          String fieldName = getFieldNameMapper().map(headers.size() > 0 ? headers.get(i) : "field_" + i);
-          String data = record.get(i);
-          builder.field(fieldName, new Text(data));
-        }
+        columns.write(builder, record);
         builder.endObject();
 
-        result = new DocumentWrapper(uniqueId, builder);
+        result = createDocument(uniqueId, builder, record);
       }
       catch (IOException e) {
         throw new RuntimeException(e);
@@ -12,6 +12,7 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.IOUtils;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.adaptris.annotation.AdvancedConfig;
@@ -35,9 +36,26 @@ public abstract class CSVDocumentBuilderImpl implements ElasticDocumentBuilder {
   @InputFieldDefault(value = "0")
   private Integer uniqueIdField;
   @AdvancedConfig
+  @Min(0)
+  private Integer routingField;
+  @AdvancedConfig
+  @Min(0)
+  private Integer parentField;
+  @AdvancedConfig
   @NotNull
   @Valid
   private FieldNameMapper fieldNameMapper;
+  @AdvancedConfig
+  @Min(0)
+  @InputFieldDefault(value = "0")
+  private Integer parallelism;
+  @AdvancedConfig
+  @Min(1)
+  @InputFieldDefault(value = "1000")
+  private Integer chunkSize;
+  @AdvancedConfig
+  @Valid
+  private CsvSchema schema;
 
   protected transient Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -75,6 +93,50 @@ public abstract class CSVDocumentBuilderImpl implements ElasticDocumentBuilder {
     return getUniqueIdField() != null ? getUniqueIdField().intValue() : 0;
   }
 
+  public Integer getRoutingField() {
+    return routingField;
+  }
+
+  /**
+   * Specify which field contains the routing value for the document.
+   * 
+   * @param i the routingField to set (first field = '0'); if not specified, documents are routed by their parent or unique-id.
+   */
+  public void setRoutingField(Integer i) {
+    this.routingField = i;
+  }
+
+  public Integer getParentField() {
+    return parentField;
+  }
+
+  /**
+   * Specify which field contains the id of the parent document.
+   * 
+   * @param i the parentField to set (first field = '0'); if not specified, documents have no parent.
+   */
+  public void setParentField(Integer i) {
+    this.parentField = i;
+  }
+
+  /**
+   * Create the document, taking the routing value and parent id from the configured fields.
+   */
+  protected DocumentWrapper createDocument(String uniqueId, XContentBuilder content, CSVRecord record) {
+    return new DocumentWrapper(uniqueId, content, field(record, getRoutingField(), "routing"),
+        field(record, getParentField(), "parent"));
+  }
+
+  private static String field(CSVRecord record, Integer field, String name) {
+    if (field == null) {
+      return null;
+    }
+    if (field.intValue() >= record.size()) {
+      throw new IllegalArgumentException(name + " field > number of fields in record");
+    }
+    return defaultIfBlank(record.get(field.intValue()), null);
+  }
+
   protected List<String> buildHeaders(CSVRecord hdrRec) {
     List<String> result = new ArrayList<>();
     for (String hdrValue : hdrRec) {
@@ -102,7 +164,59 @@ public abstract class CSVDocumentBuilderImpl implements ElasticDocumentBuilder {
   }
 
   protected abstract CSVDocumentWrapper buildWrapper(CSVParser parser);
+
+  public Integer getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Set the number of threads used to build documents.
+   * <p>
+   * If greater than 1, then CSV records are read in chunks by a separate thread, and each chunk is turned into documents using a
+   * pool of this many threads; documents are still returned in the same order as the records in the CSV file.
+   * </p>
+   * 
+   * @param i the parallelism, defaults to 0 (documents are built as each record is read by the calling thread).
+   */
+  public void setParallelism(Integer i) {
+    this.parallelism = i;
+  }
+
+  int parallelism() {
+    return getParallelism() != null ? getParallelism().intValue() : 0;
+  }
+
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Set the number of CSV records in each chunk when building documents in parallel.
+   * 
+   * @param i the chunk size, defaults to 1000.
+   * @see #setParallelism(Integer)
+   */
+  public void setChunkSize(Integer i) {
+    this.chunkSize = i;
+  }
+
+  int chunkSize() {
+    return getChunkSize() != null ? Math.max(1, getChunkSize().intValue()) : 1000;
+  }
   
+  public CsvSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Set the schema that describes the types of the columns, and which columns are written into the document.
+   * 
+   * @param s the schema; if not specified, then all columns are written as strings.
+   */
+  public void setSchema(CsvSchema s) {
+    this.schema = s;
+  }
+
   public FieldNameMapper getFieldNameMapper() {
     return fieldNameMapper;
   }
@@ -111,9 +225,10 @@ public abstract class CSVDocumentBuilderImpl implements ElasticDocumentBuilder {
     this.fieldNameMapper = Args.notNull(fieldNameMapper, "fieldNameMapper");
   }
 
-  protected abstract class CSVDocumentWrapper implements CloseableIterable<DocumentWrapper>, Iterator {
+  protected abstract class CSVDocumentWrapper implements CloseableIterable<DocumentWrapper>, Iterator<DocumentWrapper> {
     protected CSVParser parser;
     protected Iterator<CSVRecord> csvIterator;
+    private ParallelChunkIterator<CSVRecord, DocumentWrapper> parallelIterator;
 
     public CSVDocumentWrapper(CSVParser p) {
       parser = p;
@@ -127,11 +242,38 @@ public abstract class CSVDocumentBuilderImpl implements ElasticDocumentBuilder {
 
     @Override
     public boolean hasNext() {
-      return csvIterator.hasNext();
+      return parallel() ? parallelIterator.hasNext() : csvIterator.hasNext();
+    }
+
+    @Override
+    public DocumentWrapper next() {
+      return parallel() ? parallelIterator.next() : build(csvIterator.next());
+    }
+
+    /**
+     * Build the document from the CSV record.
+     * <p>
+     * When building in parallel this may be called concurrently from multiple threads, so it must not modify any state.
+     * </p>
+     */
+    protected abstract DocumentWrapper build(CSVRecord record);
+
+    // Created lazily, since subclasses may consume the header record before the first document is requested.
+    private boolean parallel() {
+      if (parallelism() <= 1) {
+        return false;
+      }
+      if (parallelIterator == null) {
+        parallelIterator = new ParallelChunkIterator<>(csvIterator, this::build, parallelism(), chunkSize());
+      }
+      return true;
     }
 
     @Override
     public void close() throws IOException {
+      if (parallelIterator != null) {
+        parallelIterator.close();
+      }
       IOUtils.closeQuietly(parser);
     }
 
@@ -3,18 +3,15 @@ package com.adaptris.core.elastic;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
 
 import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.InputFieldDefault;
@@ -121,20 +118,24 @@ public class CSVWithGeoPointBuilder extends CSVDocumentBuilderImpl {
   }
 
   private class MyWrapper extends CSVDocumentWrapper {
-    private List<String> headers = new ArrayList<>();
+    private CsvColumnPlan columns;
     private LatLongHandler latLong;
+    private XContentBuilderString timestampField;
 
     public MyWrapper(Set<String> latitudeFieldNames, Set<String> longitudeFieldNames, CSVParser p) {
       super(p);
-      headers = buildHeaders(csvIterator.next());
-      latLong = new LatLongHandler(latitudeFieldNames, longitudeFieldNames, headers);
+      columns = new CsvColumnPlan(buildHeaders(csvIterator.next()), getFieldNameMapper(),
+          new HashSet<String>(CollectionUtils.union(latitudeFieldNames, longitudeFieldNames)), getSchema());
+      latLong = new LatLongHandler(latitudeFieldNames, longitudeFieldNames, columns);
+      if (addTimestampField() != null) {
+        timestampField = CsvColumnPlan.fieldName(addTimestampField());
+      }
     }
 
     @Override
-    public DocumentWrapper next() {
+    protected DocumentWrapper build(CSVRecord record) {
       DocumentWrapper result = null;
       try {
-        CSVRecord record = csvIterator.next();
         int idField = 0;
         if (uniqueIdField() <= record.size()) {
           idField = uniqueIdField();
@@ -146,20 +147,13 @@ public class CSVWithGeoPointBuilder extends CSVDocumentBuilderImpl {
         XContentBuilder builder = jsonBuilder();
         builder.startObject();
         
-        if(addTimestampField() != null) {
-          builder.field(addTimestampField(), new Date().getTime());
-        }
-        
-        for (int i = 0; i < record.size(); i++) {
-          String fieldName = headers.size() > 0 ? headers.get(i) : "field_" + i;
-          String data = record.get(i);
-          if (!latLong.isLatOrLong(fieldName)) {
-            builder.field(getFieldNameMapper().map(fieldName), new Text(data));
-          }
+        if (timestampField != null) {
+          builder.field(timestampField, System.currentTimeMillis());
         }
+        columns.write(builder, record);
         latLong.addLatLong(builder, record);
         builder.endObject();
-        result = new DocumentWrapper(uniqueId, builder);
+        result = createDocument(uniqueId, builder, record);
       }
       catch (IOException e) {
         throw new RuntimeException(e);
@@ -169,23 +163,18 @@ public class CSVWithGeoPointBuilder extends CSVDocumentBuilderImpl {
   }
   
   private class LatLongHandler {
-    
-    private final Set<String> latOrLongFieldNames;
-    
-    private int lat = -1;
-    private int lon = -1;
-
-    LatLongHandler(Set<String> latitudeFieldNames, Set<String> longitudeFieldNames, List<String> headers) {
-      this.latOrLongFieldNames = new HashSet<String>(CollectionUtils.union(latitudeFieldNames, longitudeFieldNames));
-      
-      for (int i = 0; i < headers.size(); i++) {
-        if (latitudeFieldNames.contains(headers.get(i).toLowerCase())) {
-          lat = i;
-        }
-        if (longitudeFieldNames.contains(headers.get(i).toLowerCase())) {
-          lon = i;
-        }
-      }
+
+    private final XContentBuilderString locationField;
+    private final XContentBuilderString latField = CsvColumnPlan.fieldName("lat");
+    private final XContentBuilderString lonField = CsvColumnPlan.fieldName("lon");
+
+    private final int lat;
+    private final int lon;
+
+    LatLongHandler(Set<String> latitudeFieldNames, Set<String> longitudeFieldNames, CsvColumnPlan columns) {
+      lat = columns.indexOf(latitudeFieldNames);
+      lon = columns.indexOf(longitudeFieldNames);
+      locationField = CsvColumnPlan.fieldName(getFieldNameMapper().map(locationFieldName()));
     }
 
     void addLatLong(XContentBuilder builder, CSVRecord record) throws IOException {
@@ -195,17 +184,13 @@ public class CSVWithGeoPointBuilder extends CSVDocumentBuilderImpl {
       String latitude = record.get(lat);
       String longitude = record.get(lon);
       try {
-        builder.latlon(
-            getFieldNameMapper().map(locationFieldName()), 
-            Double.valueOf(latitude).doubleValue(), Double.valueOf(longitude).doubleValue());
+        double latValue = Double.parseDouble(latitude);
+        double lonValue = Double.parseDouble(longitude);
+        builder.startObject(locationField).field(latField, latValue).field(lonField, lonValue).endObject();
       }
       catch (NumberFormatException e) {
         // Ignore it, no chance of having a location, because the values aren't real latlongs.
       }
     }
-    
-    boolean isLatOrLong(String name) {
-      return latOrLongFieldNames.contains(name.toLowerCase());
-    }
   }
 }
@@ -0,0 +1,104 @@
+package com.adaptris.core.elastic;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ProduceDestination;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Add document(s) to ElasticSearch, sharing bulk requests between messages.
+ *
+ * <p>
+ * {@link BulkIndexDocuments} sends at least one bulk request per message, which means a round trip per message if each message
+ * only contains a single document (e.g. when using {@link SimpleDocumentBuilder}). This producer adds the documents from all the
+ * messages being produced concurrently into a shared bulk request, which is sent when it reaches
+ * {@link #setBatchWindow(Integer)} actions or {@link #setBatchSizeBytes(Long)} bytes, or when {@link #setFlushInterval(TimeInterval)}
+ * has passed since the first document was added to it.
+ * </p>
+ * <p>
+ * A message is only considered produced once all of its documents have been acknowledged by ElasticSearch; if any of them fail,
+ * then the message fails (and normal error handling applies) even though other messages in the same bulk request succeed. Since
+ * each message waits for its bulk request, you will only see a benefit if messages are produced concurrently, e.g. from a
+ * {@code PoolingWorkflow}; the pool size is effectively the maximum number of messages in each bulk request. The
+ * {@link #setConcurrentBulkRequests(Integer)} setting is ignored.
+ * </p>
+ * <p>
+ * Documents are added to the shared bulk request as they are built. If building a message fails part way through, then the
+ * message fails, but the documents that were already added are still sent along with the rest of the shared request.
+ * </p>
+ *
+ * @config elasticsearch-coalescing-bulk-index-document
+ *
+ */
+@XStreamAlias("elasticsearch-coalescing-bulk-index-document")
+public class CoalescingBulkIndexDocuments extends BulkIndexDocuments {
+
+  private static final TimeInterval DEFAULT_FLUSH_INTERVAL = new TimeInterval(50L, TimeUnit.MILLISECONDS);
+
+  private transient ScheduledExecutorService scheduler;
+  private transient BulkCoalescer coalescer;
+
+  public CoalescingBulkIndexDocuments() {
+    super();
+  }
+
+  @Override
+  public void init() throws CoreException {
+    super.init();
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ManagedThreadFactory(getClass().getSimpleName()));
+    coalescer = new BulkCoalescer(transportClient::prepareBulk, this::execute, this::batchWindow, batchSizeBytes(), flushInterval(),
+        scheduler);
+  }
+
+  @Override
+  public void close() {
+    if (coalescer != null) {
+      coalescer.flush();
+      coalescer = null;
+    }
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    super.close();
+  }
+
+  @Override
+  protected AdaptrisMessage doRequest(AdaptrisMessage msg, ProduceDestination destination, long timeout) throws ProduceException {
+    try {
+      final String type = destination.getDestination(msg);
+      final String index = retrieveConnection(ElasticSearchConnection.class).getIndex();
+      BulkCoalescer.Ticket ticket = coalescer.newTicket();
+      buildRequests(msg, index, type, ticket::add);
+      ticket.await(timeout);
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapProduceException(e);
+    }
+    return msg;
+  }
+
+  /**
+   * Set the maximum amount of time that documents wait for a shared bulk request to fill up.
+   *
+   * @param t the interval, defaults to 50 milliseconds; if 0, a shared bulk request is sent as soon as a message that uses it has
+   *          been built.
+   */
+  @Override
+  public void setFlushInterval(TimeInterval t) {
+    super.setFlushInterval(t);
+  }
+
+  @Override
+  long flushInterval() {
+    return getFlushInterval() != null ? getFlushInterval().toMilliseconds() : DEFAULT_FLUSH_INTERVAL.toMilliseconds();
+  }
+}
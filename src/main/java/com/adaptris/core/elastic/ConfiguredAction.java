@@ -16,6 +16,16 @@ public class ConfiguredAction implements ActionExtractor {
     return getAction().name();
   }
 
+  @Override
+  public DocumentAction extractAction(AdaptrisMessage msg, DocumentWrapper document) {
+    return getAction();
+  }
+
+  @Override
+  public boolean isMessageScoped() {
+    return true;
+  }
+
   public DocumentAction getAction() {
     return action;
   }
@@ -0,0 +1,99 @@
+package com.adaptris.core.elastic;
+
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotBlank;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.core.util.Args;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * The type of a single column in a {@link CsvSchema}.
+ *
+ * @config elasticsearch-csv-column
+ */
+@XStreamAlias("elasticsearch-csv-column")
+public class CsvColumn {
+
+  @NotBlank
+  private String name;
+
+  @NotNull
+  @AutoPopulated
+  private CsvColumnType type;
+
+  @AdvancedConfig
+  private String dateFormat;
+
+  private transient DateTimeFormatter formatter;
+
+  public CsvColumn() {
+    setType(CsvColumnType.STRING);
+  }
+
+  public CsvColumn(String name, CsvColumnType type) {
+    this();
+    setName(name);
+    setType(type);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Set the column name.
+   *
+   * @param name the name of the column from the header row (case-insensitive); if there is no header row then columns are named
+   *          {@code field_0, field_1...}
+   */
+  public void setName(String name) {
+    this.name = Args.notBlank(name, "name");
+  }
+
+  public CsvColumnType getType() {
+    return type;
+  }
+
+  /**
+   * Set the column type.
+   *
+   * @param t the type, defaults to {@link CsvColumnType#STRING}.
+   */
+  public void setType(CsvColumnType t) {
+    this.type = Args.notNull(t, "type");
+  }
+
+  public String getDateFormat() {
+    return dateFormat;
+  }
+
+  /**
+   * Set the format for a {@link CsvColumnType#DATE} column.
+   *
+   * @param s the format (e.g. {@code yyyyMMdd}) which is interpreted as UTC unless it includes a timezone; if not specified then
+   *          the value is expected to be an ISO8601 date or date-time.
+   */
+  public void setDateFormat(String s) {
+    this.dateFormat = s;
+    formatter = null;
+  }
+
+  DateTimeFormatter dateFormatter() {
+    if (formatter == null) {
+      DateTimeFormatter f = getDateFormat() != null ? DateTimeFormat.forPattern(getDateFormat())
+          : ISODateTimeFormat.dateOptionalTimeParser();
+      formatter = f.withZoneUTC();
+    }
+    return formatter;
+  }
+
+  Object convert(String value) {
+    return getType().convert(value, this);
+  }
+}
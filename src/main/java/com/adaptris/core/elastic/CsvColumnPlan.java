@@ -0,0 +1,188 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.csv.CSVRecord;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.common.xcontent.XContentString;
+
+/**
+ * The header row of a CSV document compiled into the field names for each column.
+ * <p>
+ * Field names are mapped and JSON encoded once per message rather than once per cell; columns excluded from the document (e.g. the
+ * latitude/longitude columns that become a {@code geo_point}, or columns excluded by a {@link CsvSchema}) and column types are
+ * resolved up front. The plan is immutable once built (apart from generated names when there is no header row) so it can be shared
+ * by the threads building documents in parallel.
+ * </p>
+ */
+final class CsvColumnPlan {
+
+  private final FieldNameMapper mapper;
+  private final List<String> headers;
+  private final Set<String> excluded;
+  private final Set<String> included;
+  private final Map<String, CsvColumn> types;
+  private final boolean omitEmptyValues;
+  // null entries are columns that aren't written.
+  private volatile Column[] columns;
+
+  /**
+   * Create a plan where the columns are named {@code field_0, field_1...}.
+   */
+  CsvColumnPlan(FieldNameMapper mapper, CsvSchema schema) {
+    this(Collections.emptyList(), mapper, Collections.emptySet(), schema);
+  }
+
+  /**
+   * Create a plan from the header row.
+   *
+   * @param headers the header row.
+   * @param mapper the field name mapper
+   * @param excluded the (lowercase) header names that should not be written by {@link #write(XContentBuilder, CSVRecord)}.
+   * @param schema the schema, may be null.
+   */
+  CsvColumnPlan(List<String> headers, FieldNameMapper mapper, Set<String> excluded, CsvSchema schema) {
+    CsvSchema s = schema != null ? schema : new CsvSchema();
+    this.mapper = mapper;
+    this.headers = headers;
+    this.excluded = new HashSet<>(excluded);
+    this.excluded.addAll(s.excludeColumns());
+    included = s.includeColumns();
+    types = s.columnsByName();
+    omitEmptyValues = s.omitEmptyValues();
+    Column[] result = new Column[headers.size()];
+    for (int i = 0; i < headers.size(); i++) {
+      result[i] = column(headers.get(i));
+    }
+    columns = result;
+  }
+
+  /**
+   * Write all the (non-excluded) columns in the record as fields.
+   */
+  void write(XContentBuilder builder, CSVRecord record) throws IOException {
+    Column[] plan = columns(record.size());
+    for (int i = 0; i < record.size(); i++) {
+      Column column = plan[i];
+      if (column == null) {
+        continue;
+      }
+      String value = record.get(i);
+      if (value.isEmpty()) {
+        if (!omitEmptyValues) {
+          column.writeEmpty(builder);
+        }
+        continue;
+      }
+      column.write(builder, value);
+    }
+  }
+
+  /**
+   * Find the last column whose header matches one of the names.
+   *
+   * @param lowerCaseNames the lowercase names
+   * @return the column index, or -1 if not found.
+   */
+  int indexOf(Set<String> lowerCaseNames) {
+    int result = -1;
+    for (int i = 0; i < headers.size(); i++) {
+      if (lowerCaseNames.contains(headers.get(i).toLowerCase())) {
+        result = i;
+      }
+    }
+    return result;
+  }
+
+  private Column column(String name) {
+    String lower = name.toLowerCase();
+    if (excluded.contains(lower) || !(included.isEmpty() || included.contains(lower))) {
+      return null;
+    }
+    return new Column(fieldName(mapper.map(name)), types.get(lower));
+  }
+
+  private Column[] columns(int size) {
+    Column[] result = columns;
+    if (size <= result.length || headers.size() > 0) {
+      // With a header row, a record longer than the headers is an error, the array bounds check is enough.
+      return result;
+    }
+    synchronized (this) {
+      result = columns;
+      if (size > result.length) {
+        int from = result.length;
+        result = Arrays.copyOf(result, size);
+        for (int i = from; i < size; i++) {
+          result[i] = column("field_" + i);
+        }
+        columns = result;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Create a field name that is encoded once, and written as is.
+   * <p>
+   * {@link XContentBuilderString} on its own is no good, as it converts the name to underscore case.
+   * </p>
+   */
+  static XContentBuilderString fieldName(String name) {
+    return new EncodedFieldName(name);
+  }
+
+  private static class Column {
+    private final XContentBuilderString name;
+    private final CsvColumn type;
+
+    Column(XContentBuilderString name, CsvColumn type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    void write(XContentBuilder builder, String value) throws IOException {
+      if (type == null) {
+        builder.field(name, value);
+      }
+      else {
+        builder.field(name, type.convert(value));
+      }
+    }
+
+    void writeEmpty(XContentBuilder builder) throws IOException {
+      if (type == null || type.getType() == CsvColumnType.STRING) {
+        builder.field(name, "");
+      }
+      else {
+        builder.nullField(name);
+      }
+    }
+  }
+
+  private static class EncodedFieldName extends XContentBuilderString {
+    private final XContentString encoded;
+
+    EncodedFieldName(String name) {
+      super(name);
+      encoded = new XContentString(name);
+    }
+
+    @Override
+    public XContentString underscore() {
+      return encoded;
+    }
+
+    @Override
+    public XContentString camelCase() {
+      return encoded;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.adaptris.core.elastic;
+
+import org.apache.commons.lang3.BooleanUtils;
+
+/**
+ * The type of a CSV column, which controls how the value is written into the document.
+ * <p>
+ * If a value cannot be converted, then it is written as a string, in the same way as it would be without a type; whether that is
+ * then rejected depends on the index mapping. Empty values for anything other than {@link #STRING} are written as {@code null}.
+ * </p>
+ */
+public enum CsvColumnType {
+  /**
+   * Written as a JSON string; whether it is analysed or treated as a keyword is controlled by the index mapping.
+   */
+  STRING {
+    @Override
+    Object convert(String value, CsvColumn column) {
+      return value;
+    }
+  },
+  /**
+   * Written as a JSON number, the value must be a whole number.
+   */
+  LONG {
+    @Override
+    Object convert(String value, CsvColumn column) {
+      try {
+        return Long.valueOf(value.trim());
+      }
+      catch (NumberFormatException e) {
+        return value;
+      }
+    }
+  },
+  /**
+   * Written as a JSON number.
+   */
+  DOUBLE {
+    @Override
+    Object convert(String value, CsvColumn column) {
+      try {
+        return Double.valueOf(value.trim());
+      }
+      catch (NumberFormatException e) {
+        return value;
+      }
+    }
+  },
+  /**
+   * Written as a JSON boolean; {@code true/false, yes/no, on/off, y/n, t/f, 1/0} are all understood.
+   */
+  BOOLEAN {
+    @Override
+    Object convert(String value, CsvColumn column) {
+      String s = value.trim();
+      Boolean result = BooleanUtils.toBooleanObject(s);
+      if (result == null && (s.equals("1") || s.equals("0"))) {
+        result = Boolean.valueOf(s.equals("1"));
+      }
+      return result != null ? result : value;
+    }
+  },
+  /**
+   * Parsed using {@link CsvColumn#getDateFormat()} and written as milliseconds since the epoch.
+   */
+  DATE {
+    @Override
+    Object convert(String value, CsvColumn column) {
+      try {
+        return Long.valueOf(column.dateFormatter().parseMillis(value.trim()));
+      }
+      catch (IllegalArgumentException e) {
+        return value;
+      }
+    }
+  };
+
+  /**
+   * Convert a non-empty value.
+   */
+  abstract Object convert(String value, CsvColumn column);
+}
@@ -0,0 +1,142 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.csv.CSVPrinter;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.search.SearchHit;
+
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.transform.csv.BasicFormatBuilder;
+import com.adaptris.core.transform.csv.FormatBuilder;
+import com.adaptris.core.util.Args;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+
+/**
+ * Writes each search hit as a CSV record.
+ *
+ * <p>
+ * Each column is a field in the {@code _source} of the hit; nested fields can be referenced using dot notation (e.g.
+ * {@code address.city}), and {@code _id}, {@code _index} and {@code _type} refer to the hit itself. If no columns are configured,
+ * then the top-level fields of the first hit are used. Values that are arrays or objects are written as their string
+ * representation; missing values are empty.
+ * </p>
+ *
+ * @config elasticsearch-csv-result-writer
+ */
+@XStreamAlias("elasticsearch-csv-result-writer")
+public class CsvResultWriter implements SearchResultWriter {
+
+  @NotNull
+  @AutoPopulated
+  @Valid
+  private FormatBuilder format;
+
+  @XStreamImplicit(itemFieldName = "column")
+  private List<String> columns;
+
+  @InputFieldDefault(value = "true")
+  private Boolean includeHeader;
+
+  public CsvResultWriter() {
+    setFormat(new BasicFormatBuilder());
+    setColumns(new ArrayList<String>());
+  }
+
+  @Override
+  public Results start(OutputStream out) throws IOException {
+    final CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(out, StandardCharsets.UTF_8), getFormat().createFormat());
+    final List<String> configured = getColumns().isEmpty() ? null : getColumns();
+    if (configured != null && includeHeader()) {
+      printer.printRecord(configured);
+    }
+    return new Results() {
+      private List<String> names = configured;
+      private final List<Object> record = new ArrayList<>();
+
+      @Override
+      public void write(SearchHit hit) throws IOException {
+        Map<String, Object> source = hit.sourceAsMap();
+        if (names == null) {
+          names = source != null ? new ArrayList<>(source.keySet()) : new ArrayList<String>();
+          if (includeHeader()) {
+            printer.printRecord(names);
+          }
+        }
+        record.clear();
+        for (String name : names) {
+          record.add(value(hit, source, name));
+        }
+        printer.printRecord(record);
+      }
+
+      @Override
+      public void close() throws IOException {
+        // Flush, but don't close the underlying stream.
+        printer.flush();
+      }
+    };
+  }
+
+  private static Object value(SearchHit hit, Map<String, Object> source, String name) {
+    switch (name) {
+    case "_id":
+      return hit.getId();
+    case "_index":
+      return hit.getIndex();
+    case "_type":
+      return hit.getType();
+    default:
+      return source != null ? XContentMapValues.extractValue(name, source) : null;
+    }
+  }
+
+  public FormatBuilder getFormat() {
+    return format;
+  }
+
+  public void setFormat(FormatBuilder f) {
+    this.format = Args.notNull(f, "format");
+  }
+
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Set the fields to write, in order.
+   *
+   * @param l the columns; if empty, then the top-level fields of the first hit are used.
+   */
+  public void setColumns(List<String> l) {
+    this.columns = Args.notNull(l, "columns");
+  }
+
+  public Boolean getIncludeHeader() {
+    return includeHeader;
+  }
+
+  /**
+   * Whether to write a header row containing the column names.
+   *
+   * @param b true to write the header, defaults to true.
+   */
+  public void setIncludeHeader(Boolean b) {
+    this.includeHeader = b;
+  }
+
+  boolean includeHeader() {
+    return getIncludeHeader() != null ? getIncludeHeader().booleanValue() : true;
+  }
+}
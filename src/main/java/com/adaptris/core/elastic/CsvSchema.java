@@ -0,0 +1,150 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.util.Args;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+
+/**
+ * Describes the columns of a CSV document for {@link CSVDocumentBuilder} and {@link CSVWithGeoPointBuilder}.
+ * <p>
+ * Without a schema every column is written into the document as a string, leaving ElasticSearch to parse numbers and dates. With a
+ * schema, columns that have a type are written as native JSON types, and columns that are not included (or are excluded) are never
+ * written at all. Column names are matched against the header row (case-insensitively) after spaces have been replaced with
+ * {@code _}; the unique-id column is still used for the document id even if it is excluded from the document.
+ * </p>
+ *
+ * @config elasticsearch-csv-schema
+ */
+@XStreamAlias("elasticsearch-csv-schema")
+public class CsvSchema {
+
+  @XStreamImplicit(itemFieldName = "column")
+  @NotNull
+  @AutoPopulated
+  @Valid
+  private List<CsvColumn> columns;
+
+  private String includeColumns;
+
+  private String excludeColumns;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean omitEmptyValues;
+
+  public CsvSchema() {
+    setColumns(new ArrayList<CsvColumn>());
+  }
+
+  public CsvSchema(CsvColumn... columns) {
+    this();
+    setColumns(new ArrayList<>(Arrays.asList(columns)));
+  }
+
+  public List<CsvColumn> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Set the column types; columns that aren't listed here are written as strings.
+   */
+  public void setColumns(List<CsvColumn> l) {
+    this.columns = Args.notNull(l, "columns");
+  }
+
+  public void addColumn(CsvColumn c) {
+    columns.add(Args.notNull(c, "column"));
+  }
+
+  public String getIncludeColumns() {
+    return includeColumns;
+  }
+
+  /**
+   * Set the columns that should be written into the document.
+   *
+   * @param s a comma separated list of column names; if not specified, then all columns are included.
+   */
+  public void setIncludeColumns(String s) {
+    this.includeColumns = s;
+  }
+
+  public String getExcludeColumns() {
+    return excludeColumns;
+  }
+
+  /**
+   * Set the columns that should not be written into the document.
+   *
+   * @param s a comma separated list of column names, applied after {@link #setIncludeColumns(String)}.
+   */
+  public void setExcludeColumns(String s) {
+    this.excludeColumns = s;
+  }
+
+  public Boolean getOmitEmptyValues() {
+    return omitEmptyValues;
+  }
+
+  /**
+   * Whether or not to leave empty values out of the document entirely.
+   *
+   * @param b true to omit empty values, default is false (empty values are written as empty strings, or null for typed columns).
+   */
+  public void setOmitEmptyValues(Boolean b) {
+    this.omitEmptyValues = b;
+  }
+
+  boolean omitEmptyValues() {
+    return getOmitEmptyValues() != null ? getOmitEmptyValues().booleanValue() : false;
+  }
+
+  Set<String> includeColumns() {
+    return asSet(getIncludeColumns());
+  }
+
+  Set<String> excludeColumns() {
+    return asSet(getExcludeColumns());
+  }
+
+  /**
+   * The columns keyed by their lowercase name.
+   */
+  Map<String, CsvColumn> columnsByName() {
+    Map<String, CsvColumn> result = new HashMap<>();
+    for (CsvColumn c : getColumns()) {
+      result.put(c.getName().toLowerCase(), c);
+    }
+    return result;
+  }
+
+  private static Set<String> asSet(String commaSeparated) {
+    if (StringUtils.isBlank(commaSeparated)) {
+      return Collections.emptySet();
+    }
+    Set<String> result = new HashSet<>();
+    for (String s : commaSeparated.split(",")) {
+      if (!StringUtils.isBlank(s)) {
+        result.add(s.trim().toLowerCase());
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,269 @@
+package com.adaptris.core.elastic;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.validator.constraints.NotBlank;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Resolve the index from a date pattern, such as {@code logs-{yyyy.MM.dd}}, for rolling time-based indices.
+ *
+ * <p>
+ * The text between braces is a {@link DateTimeFormatter} pattern; everything else is used as is. The date is taken from
+ * {@link #setTimestampField(String)} in each document if specified (otherwise the current time is used); the value can be epoch
+ * milliseconds, an ISO-8601 date or date-time (with or without an offset), or in the format given by
+ * {@link #setTimestampFormat(String)}. Dates without an offset, and the index name itself, use {@link #setTimezone(String)}.
+ * </p>
+ * <p>
+ * Consecutive documents usually fall into the same index, so the last index name is remembered along with the period (day, hour...)
+ * that it covers; documents within that period reuse it without being formatted.
+ * </p>
+ *
+ * @config elasticsearch-date-pattern-index-resolver
+ */
+@XStreamAlias("elasticsearch-date-pattern-index-resolver")
+public class DatePatternIndexResolver implements IndexResolver {
+
+  private static final String DEFAULT_TIMEZONE = "UTC";
+  private static final DateTimeFormatter ISO_DATE_OPTIONAL_TIME = new DateTimeFormatterBuilder().parseCaseInsensitive()
+      .append(DateTimeFormatter.ISO_LOCAL_DATE).optionalStart().appendLiteral('T').append(DateTimeFormatter.ISO_LOCAL_TIME)
+      .optionalStart().appendOffsetId().optionalEnd().optionalEnd().toFormatter();
+
+  @NotBlank
+  private String indexPattern;
+
+  private String timestampField;
+
+  private String timestampFormat;
+
+  @InputFieldDefault(value = "UTC")
+  private String timezone;
+
+  private transient volatile Formatter formatter;
+  private transient volatile Period period;
+
+  public DatePatternIndexResolver() {
+
+  }
+
+  public DatePatternIndexResolver(String pattern, String timestampField) {
+    this();
+    setIndexPattern(pattern);
+    setTimestampField(timestampField);
+  }
+
+  @Override
+  public String resolveIndex(AdaptrisMessage msg, DocumentWrapper document) throws ProduceException {
+    try {
+      return format(timestamp(document));
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapProduceException(e);
+    }
+  }
+
+  String format(long millis) {
+    Period p = period;
+    if (p != null && millis >= p.start && millis < p.end) {
+      return p.name;
+    }
+    Formatter f = formatter();
+    ZonedDateTime time = Instant.ofEpochMilli(millis).atZone(f.zone);
+    String name = f.index.format(time);
+    if (f.unit != null) {
+      ZonedDateTime start = time.truncatedTo(f.unit);
+      period = new Period(start.toInstant().toEpochMilli(), start.plus(1, f.unit).toInstant().toEpochMilli(), name);
+    }
+    return name;
+  }
+
+  private long timestamp(DocumentWrapper document) throws Exception {
+    if (getTimestampField() == null) {
+      return System.currentTimeMillis();
+    }
+    String value = DocumentFields.value(document, getTimestampField());
+    if (StringUtils.isBlank(value)) {
+      throw new ProduceException("No " + getTimestampField() + " in document " + document.uniqueId());
+    }
+    Formatter f = formatter();
+    if (getTimestampFormat() == null && StringUtils.isNumeric(value)) {
+      return Long.parseLong(value);
+    }
+    TemporalAccessor parsed = f.timestamp.parseBest(value, ZonedDateTime::from, LocalDateTime::from, LocalDate::from);
+    if (parsed instanceof ZonedDateTime) {
+      return ((ZonedDateTime) parsed).toInstant().toEpochMilli();
+    }
+    if (parsed instanceof LocalDateTime) {
+      return ((LocalDateTime) parsed).atZone(f.zone).toInstant().toEpochMilli();
+    }
+    return ((LocalDate) parsed).atStartOfDay(f.zone).toInstant().toEpochMilli();
+  }
+
+  private Formatter formatter() {
+    Formatter f = formatter;
+    if (f == null) {
+      f = new Formatter(getIndexPattern(), getTimestampFormat(), ZoneId.of(timezone()));
+      formatter = f;
+    }
+    return f;
+  }
+
+  /**
+   * Convert {@code logs-{yyyy.MM.dd}} into the equivalent {@link DateTimeFormatter} pattern {@code 'logs-'yyyy.MM.dd}.
+   */
+  static String toFormatterPattern(String pattern) {
+    StringBuilder result = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '{') {
+        int end = pattern.indexOf('}', i);
+        if (end < 0) {
+          throw new IllegalArgumentException("Unterminated { in " + pattern);
+        }
+        appendLiteral(result, literal);
+        result.append(pattern, i + 1, end);
+        i = end + 1;
+      }
+      else {
+        literal.append(c);
+        i++;
+      }
+    }
+    appendLiteral(result, literal);
+    return result.toString();
+  }
+
+  private static void appendLiteral(StringBuilder result, StringBuilder literal) {
+    if (literal.length() > 0) {
+      result.append('\'').append(literal.toString().replace("'", "''")).append('\'');
+      literal.setLength(0);
+    }
+  }
+
+  /**
+   * Work out the smallest unit in the date part(s) of the pattern, which is how long an index name is valid for.
+   *
+   * @return the unit, or null if the pattern is too fine grained to be worth remembering.
+   */
+  static ChronoUnit period(String pattern) {
+    // Remove the literal text, both outside the braces and quoted within them.
+    String letters = toFormatterPattern(pattern).replaceAll("'[^']*'", "");
+    if (StringUtils.containsAny(letters, "SnNA")) {
+      return null;
+    }
+    if (letters.indexOf('s') >= 0) {
+      return ChronoUnit.SECONDS;
+    }
+    if (letters.indexOf('m') >= 0) {
+      return ChronoUnit.MINUTES;
+    }
+    if (StringUtils.containsAny(letters, "HhKka")) {
+      return ChronoUnit.HOURS;
+    }
+    return ChronoUnit.DAYS;
+  }
+
+  public String getIndexPattern() {
+    return indexPattern;
+  }
+
+  /**
+   * Set the index pattern.
+   *
+   * @param s the pattern, e.g. {@code logs-{yyyy.MM.dd}}.
+   */
+  public void setIndexPattern(String s) {
+    this.indexPattern = s;
+    formatter = null;
+    period = null;
+  }
+
+  public String getTimestampField() {
+    return timestampField;
+  }
+
+  /**
+   * Set the field containing the timestamp of each document.
+   *
+   * @param s the field, using dot notation for nested fields; if not specified then the current time is used.
+   */
+  public void setTimestampField(String s) {
+    this.timestampField = s;
+  }
+
+  public String getTimestampFormat() {
+    return timestampFormat;
+  }
+
+  /**
+   * Set the format of the timestamp.
+   *
+   * @param s a {@link DateTimeFormatter} pattern; if not specified then epoch milliseconds and ISO-8601 are supported.
+   */
+  public void setTimestampFormat(String s) {
+    this.timestampFormat = s;
+    formatter = null;
+  }
+
+  public String getTimezone() {
+    return timezone;
+  }
+
+  /**
+   * Set the timezone.
+   *
+   * @param s the timezone, defaults to UTC.
+   */
+  public void setTimezone(String s) {
+    this.timezone = s;
+    formatter = null;
+    period = null;
+  }
+
+  String timezone() {
+    return StringUtils.defaultIfBlank(getTimezone(), DEFAULT_TIMEZONE);
+  }
+
+  private static class Formatter {
+    private final DateTimeFormatter index;
+    private final DateTimeFormatter timestamp;
+    private final ChronoUnit unit;
+    private final ZoneId zone;
+
+    Formatter(String pattern, String timestampFormat, ZoneId zone) {
+      this.index = DateTimeFormatter.ofPattern(toFormatterPattern(pattern));
+      this.timestamp = timestampFormat != null ? DateTimeFormatter.ofPattern(timestampFormat) : ISO_DATE_OPTIONAL_TIME;
+      this.unit = period(pattern);
+      this.zone = zone;
+    }
+  }
+
+  // The index name for [start, end).
+  private static class Period {
+    private final long start;
+    private final long end;
+    private final String name;
+
+    Period(long start, long end, String name) {
+      this.start = start;
+      this.end = end;
+      this.name = name;
+    }
+  }
+}
@@ -4,4 +4,21 @@ package com.adaptris.core.elastic;
  * What to do with this document. These are references by ordinal from the 
  * "Delta_Status" column so the ordering in this enum is important!
  */
-public enum DocumentAction { DELETE, UPDATE, INDEX }
\ No newline at end of file
+public enum DocumentAction {
+  DELETE,
+  /**
+   * Partial update of an existing document; fails if the document doesn't exist.
+   */
+  UPDATE,
+  INDEX,
+  /**
+   * Partial update of the document, creating it if it doesn't exist ({@code doc_as_upsert}).
+   */
+  UPSERT,
+  /**
+   * Update the document using a script, creating it if it doesn't exist.
+   *
+   * @see UpdateSettings#setScript(String)
+   */
+  SCRIPTED_UPDATE
+}
@@ -0,0 +1,204 @@
+package com.adaptris.core.elastic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * A bounded cache of documents retrieved by {@link GetDocumentsService}.
+ *
+ * <p>
+ * Entries are evicted in least recently used order once there are more than {@link #setMaxEntries(Integer)} of them, and expire
+ * {@link #setTimeToLive(TimeInterval)} after they were fetched. Documents that don't exist are cached as well, so repeated
+ * lookups of a missing id don't go back to ElasticSearch either. Nothing is ever invalidated when a document changes, so the time
+ * to live is the upper bound on how stale a cached document can be.
+ * </p>
+ *
+ * @config elasticsearch-document-cache
+ */
+@XStreamAlias("elasticsearch-document-cache")
+public class DocumentCache implements DocumentCacheMXBean {
+
+  private static final int DEFAULT_MAX_ENTRIES = 10000;
+  private static final TimeInterval DEFAULT_TTL = new TimeInterval(5L, TimeUnit.MINUTES);
+
+  @Min(1)
+  @InputFieldDefault(value = "10000")
+  private Integer maxEntries;
+
+  @Valid
+  private TimeInterval timeToLive;
+
+  private transient Map<String, Entry> entries;
+  private transient long ttlMs;
+  private transient final LongAdder hits = new LongAdder();
+  private transient final LongAdder misses = new LongAdder();
+  private transient final LongAdder evictions = new LongAdder();
+  private transient final LongAdder expired = new LongAdder();
+
+  public DocumentCache() {
+
+  }
+
+  public DocumentCache(int maxEntries, TimeInterval ttl) {
+    this();
+    setMaxEntries(maxEntries);
+    setTimeToLive(ttl);
+  }
+
+  /**
+   * Create an empty cache using the current settings.
+   */
+  synchronized void init() {
+    final int max = maxEntries();
+    ttlMs = timeToLive();
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 2019090501L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > max) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Get the cached entry.
+   *
+   * @return the entry, or null if the key isn't cached (or has expired).
+   */
+  synchronized Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && entry.expires <= System.currentTimeMillis()) {
+      entries.remove(key);
+      expired.increment();
+      entry = null;
+    }
+    if (entry != null) {
+      hits.increment();
+    }
+    else {
+      misses.increment();
+    }
+    return entry;
+  }
+
+  /**
+   * Cache the document.
+   *
+   * @param source the document source, or null if the document doesn't exist.
+   */
+  synchronized void put(String key, String source) {
+    entries.put(key, new Entry(source, System.currentTimeMillis() + ttlMs));
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total > 0 ? (double) h / total : 0;
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  @Override
+  public long getExpiredCount() {
+    return expired.sum();
+  }
+
+  @Override
+  public synchronized int getSize() {
+    return entries != null ? entries.size() : 0;
+  }
+
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+    expired.reset();
+  }
+
+  @Override
+  public synchronized void clear() {
+    if (entries != null) {
+      entries.clear();
+    }
+  }
+
+  public Integer getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Set the maximum number of documents to cache.
+   *
+   * @param i the maximum, defaults to 10000.
+   */
+  public void setMaxEntries(Integer i) {
+    this.maxEntries = i;
+  }
+
+  int maxEntries() {
+    return getMaxEntries() != null ? getMaxEntries().intValue() : DEFAULT_MAX_ENTRIES;
+  }
+
+  public TimeInterval getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * Set how long a document is cached for.
+   *
+   * @param t the time to live, defaults to 5 minutes.
+   */
+  public void setTimeToLive(TimeInterval t) {
+    this.timeToLive = t;
+  }
+
+  long timeToLive() {
+    return getTimeToLive() != null ? getTimeToLive().toMilliseconds() : DEFAULT_TTL.toMilliseconds();
+  }
+
+  static final class Entry {
+    private final String source;
+    private final long expires;
+
+    private Entry(String source, long expires) {
+      this.source = source;
+      this.expires = expires;
+    }
+
+    /**
+     * The document source, or null if the document doesn't exist.
+     */
+    String source() {
+      return source;
+    }
+  }
+}
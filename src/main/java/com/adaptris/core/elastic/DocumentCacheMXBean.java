@@ -0,0 +1,51 @@
+package com.adaptris.core.elastic;
+
+/**
+ * Management interface exposing the effectiveness of a {@link DocumentCache}.
+ *
+ * <p>
+ * Counts are recorded since the cache was initialised (or since {@link #reset()} was last invoked).
+ * </p>
+ */
+public interface DocumentCacheMXBean {
+
+  /**
+   * The number of lookups answered from the cache (including cached "not found" results).
+   */
+  long getHitCount();
+
+  /**
+   * The number of lookups that had to be fetched from ElasticSearch.
+   */
+  long getMissCount();
+
+  /**
+   * The proportion of lookups answered from the cache.
+   */
+  double getHitRatio();
+
+  /**
+   * The number of entries removed to keep the cache within its maximum size.
+   */
+  long getEvictionCount();
+
+  /**
+   * The number of entries removed because they outlived their time to live.
+   */
+  long getExpiredCount();
+
+  /**
+   * The current number of entries.
+   */
+  int getSize();
+
+  /**
+   * Reset the counters.
+   */
+  void reset();
+
+  /**
+   * Remove all the entries from the cache.
+   */
+  void clear();
+}
@@ -0,0 +1,84 @@
+package com.adaptris.core.elastic;
+
+import org.hibernate.validator.constraints.NotBlank;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Resolve the index (and optionally the type) from fields in each document.
+ *
+ * <p>
+ * Fields can be nested, using dot notation (e.g. {@code meta.index}); if a document doesn't have the field, then the default
+ * index or type is used.
+ * </p>
+ *
+ * @config elasticsearch-document-field-index-resolver
+ */
+@XStreamAlias("elasticsearch-document-field-index-resolver")
+public class DocumentFieldIndexResolver implements IndexResolver {
+
+  @NotBlank
+  private String indexField;
+
+  private String typeField;
+
+  public DocumentFieldIndexResolver() {
+
+  }
+
+  public DocumentFieldIndexResolver(String indexField) {
+    this();
+    setIndexField(indexField);
+  }
+
+  @Override
+  public String resolveIndex(AdaptrisMessage msg, DocumentWrapper document) throws ProduceException {
+    return value(document, getIndexField());
+  }
+
+  @Override
+  public String resolveType(AdaptrisMessage msg, DocumentWrapper document) throws ProduceException {
+    return value(document, getTypeField());
+  }
+
+  private static String value(DocumentWrapper document, String field) throws ProduceException {
+    if (field == null) {
+      return null;
+    }
+    try {
+      return DocumentFields.value(document, field);
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapProduceException(e);
+    }
+  }
+
+  public String getIndexField() {
+    return indexField;
+  }
+
+  /**
+   * Set the field containing the index.
+   *
+   * @param s the field.
+   */
+  public void setIndexField(String s) {
+    this.indexField = s;
+  }
+
+  public String getTypeField() {
+    return typeField;
+  }
+
+  /**
+   * Set the field containing the type.
+   *
+   * @param s the field; if not specified then the type is taken from the produce destination.
+   */
+  public void setTypeField(String s) {
+    this.typeField = s;
+  }
+}
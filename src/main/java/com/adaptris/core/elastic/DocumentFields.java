@@ -0,0 +1,51 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+
+/**
+ * Reads a single field from a document without converting the whole document into a map.
+ */
+final class DocumentFields {
+
+  private DocumentFields() {
+  }
+
+  /**
+   * Get the value of the field.
+   *
+   * @param path the field, using dot notation for nested fields (e.g. {@code event.timestamp}).
+   * @return the value as text, or null if the field doesn't exist, or is not a simple value.
+   */
+  static String value(DocumentWrapper doc, String path) throws IOException {
+    try (XContentParser parser = XContentHelper.createParser(doc.content().bytes())) {
+      if (parser.nextToken() != Token.START_OBJECT) {
+        return null;
+      }
+      return find(parser, path.split("\\."), 0);
+    }
+  }
+
+  // The parser is positioned at the start of the object.
+  private static String find(XContentParser parser, String[] path, int depth) throws IOException {
+    while (parser.nextToken() == Token.FIELD_NAME) {
+      String name = parser.currentName();
+      Token token = parser.nextToken();
+      if (!name.equals(path[depth])) {
+        parser.skipChildren();
+        continue;
+      }
+      if (depth == path.length - 1) {
+        return token.isValue() && token != Token.VALUE_NULL ? parser.text() : null;
+      }
+      if (token == Token.START_OBJECT) {
+        return find(parser, path, depth + 1);
+      }
+      return null;
+    }
+    return null;
+  }
+}
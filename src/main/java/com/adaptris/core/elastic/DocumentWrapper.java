@@ -6,12 +6,26 @@ public class DocumentWrapper {
 
   private final String uniqueId;
   private final XContentBuilder content;
-  
+  private final String routing;
+  private final String parent;
+
   public DocumentWrapper(String uid, XContentBuilder content) {
+    this(uid, content, null, null);
+  }
+
+  /**
+   * @param uid the unique-id, or null to let ElasticSearch generate one.
+   * @param content the document.
+   * @param routing the routing value, or null to route by the parent (or unique-id).
+   * @param parent the id of the parent document, or null.
+   */
+  public DocumentWrapper(String uid, XContentBuilder content, String routing, String parent) {
     this.uniqueId = uid;
     this.content = content;
+    this.routing = routing;
+    this.parent = parent;
   }
-  
+
   public XContentBuilder content() {
     return content;
   }
@@ -20,4 +34,32 @@ public class DocumentWrapper {
     return uniqueId;
   }
 
+  /**
+   * The routing value for the document.
+   * <p>
+   * Documents with the same routing value (e.g. a tenant id) are stored in the same shard, so queries that specify the routing
+   * value only need to search that shard.
+   * </p>
+   *
+   * @return the routing value, or null to route by the parent (or unique-id).
+   */
+  public String routing() {
+    return routing;
+  }
+
+  public String parent() {
+    return parent;
+  }
+
+  /**
+   * Copy this document with the specified routing and parent, keeping any that are already set.
+   */
+  public DocumentWrapper withDefaultRouting(String defaultRouting, String defaultParent) {
+    if ((routing != null || defaultRouting == null) && (parent != null || defaultParent == null)) {
+      return this;
+    }
+    return new DocumentWrapper(uniqueId, content, routing != null ? routing : defaultRouting,
+        parent != null ? parent : defaultParent);
+  }
+
 }
@@ -0,0 +1,140 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Collapses the actions for the same {@link DocumentWrapper#uniqueId()} (in the same index and type, with the same routing) within
+ * a window of documents.
+ *
+ * <p>
+ * Pending actions are held in the order they were first seen and passed downstream when the window is full, or when
+ * {@link #flush()} is called. For each id:
+ * <ul>
+ * <li>{@code INDEX}, {@code UPDATE} or {@code UPSERT} followed by {@code UPDATE} or {@code UPSERT}; the update is merged into the
+ * pending document (in the same way as ElasticSearch merges a partial document), keeping the pending action; except that
+ * {@code UPDATE} followed by {@code UPSERT} becomes an {@code UPSERT}.</li>
+ * <li>Anything followed by {@code INDEX} or {@code DELETE}; the last one wins. In particular an {@code INDEX} followed by a
+ * {@code DELETE} becomes a single {@code DELETE}, as there may be an earlier version of the document already in the index.</li>
+ * <li>{@code DELETE} followed by {@code UPSERT}; becomes an {@code INDEX} of the upserted document.</li>
+ * <li>{@code DELETE} followed by {@code UPDATE}, or {@code SCRIPTED_UPDATE} followed by anything other than {@code INDEX} or
+ * {@code DELETE}; these can't be combined, so the pending action is passed downstream immediately and the new one becomes
+ * pending.</li>
+ * </ul>
+ * Documents without an id are never coalesced.
+ * </p>
+ */
+class DuplicateIdCoalescer {
+
+  private final int window;
+  private final Downstream downstream;
+  private final Map<String, Pending> pending = new LinkedHashMap<>();
+  private int count;
+
+  DuplicateIdCoalescer(int window, Downstream downstream) {
+    this.window = Math.max(1, window);
+    this.downstream = downstream;
+  }
+
+  void add(DocumentAction action, String index, String type, DocumentWrapper doc) throws Exception {
+    if (doc.uniqueId() == null) {
+      downstream.accept(action, index, type, doc);
+      return;
+    }
+    String key = index + "/" + type + "/" + doc.uniqueId() + "/" + routing(doc);
+    Pending existing = pending.get(key);
+    if (existing == null) {
+      pending.put(key, new Pending(action, index, type, doc));
+    }
+    else if (!existing.coalesce(action, doc)) {
+      downstream.accept(existing.action, index, type, existing.doc);
+      pending.put(key, new Pending(action, index, type, doc));
+    }
+    if (++count >= window) {
+      flush();
+    }
+  }
+
+  /**
+   * Pass all the pending actions downstream.
+   */
+  void flush() throws Exception {
+    for (Pending p : pending.values()) {
+      downstream.accept(p.action, p.index, p.type, p.doc);
+    }
+    pending.clear();
+    count = 0;
+  }
+
+  // ElasticSearch routes by the parent if there is no explicit routing.
+  private static String routing(DocumentWrapper doc) {
+    return doc.routing() != null ? doc.routing() : doc.parent();
+  }
+
+  private static DocumentWrapper merge(DocumentWrapper target, DocumentWrapper changes) throws IOException {
+    Tuple<XContentType, Map<String, Object>> source = XContentHelper.convertToMap(target.content().bytes(), true);
+    Map<String, Object> updates = XContentHelper.convertToMap(changes.content().bytes(), true).v2();
+    Map<String, Object> merged = source.v2();
+    XContentHelper.update(merged, updates, false);
+    return new DocumentWrapper(target.uniqueId(), XContentFactory.contentBuilder(source.v1()).map(merged), target.routing(),
+        target.parent());
+  }
+
+  private static class Pending {
+    private final String index;
+    private final String type;
+    private DocumentAction action;
+    private DocumentWrapper doc;
+
+    Pending(DocumentAction action, String index, String type, DocumentWrapper doc) {
+      this.action = action;
+      this.index = index;
+      this.type = type;
+      this.doc = doc;
+    }
+
+    boolean coalesce(DocumentAction next, DocumentWrapper nextDoc) throws IOException {
+      switch (next) {
+      case INDEX:
+      case DELETE:
+        action = next;
+        doc = nextDoc;
+        return true;
+      case UPDATE:
+        if (action == DocumentAction.DELETE || action == DocumentAction.SCRIPTED_UPDATE) {
+          return false;
+        }
+        doc = merge(doc, nextDoc);
+        return true;
+      case UPSERT:
+        if (action == DocumentAction.SCRIPTED_UPDATE) {
+          return false;
+        }
+        if (action == DocumentAction.DELETE) {
+          // The document won't exist, so the upsert creates it as is.
+          action = DocumentAction.INDEX;
+          doc = nextDoc;
+          return true;
+        }
+        doc = merge(doc, nextDoc);
+        if (action == DocumentAction.UPDATE) {
+          action = DocumentAction.UPSERT;
+        }
+        return true;
+      default:
+        return false;
+      }
+    }
+  }
+
+  @FunctionalInterface
+  interface Downstream {
+    void accept(DocumentAction action, String index, String type, DocumentWrapper doc) throws Exception;
+  }
+}
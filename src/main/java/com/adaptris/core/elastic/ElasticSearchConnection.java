@@ -4,20 +4,27 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import javax.mail.URLName;
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
 import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.transport.TransportAddress;
 import org.hibernate.validator.constraints.NotBlank;
 
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.CoreException;
 import com.adaptris.core.NoOpConnection;
 import com.adaptris.core.util.Args;
@@ -28,6 +35,18 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamImplicit;
 
 /**
+ * Connection to ElasticSearch using a {@link TransportClient}.
+ * 
+ * <p>
+ * The connection owns the {@link TransportClient} instances (along with their thread pools and node sniffing); these are created
+ * when the connection is initialised, and shared between all the producers that use this connection. By default a single client is
+ * shared; if you have a very high throughput configuration, you can choose to have a small pool of clients which are handed out to
+ * producers in turn.
+ * </p>
+ * <p>
+ * If the connection has a unique-id, then the aggregated metrics of all its producers are available via JMX as
+ * {@code com.adaptris:type=ElasticSearchConnectionMetrics,id=<unique-id>}; see {@link ElasticSearchMetricsMXBean}.
+ * </p>
  * 
  * @author lchan
  * @config elasticsearch-connection
@@ -48,6 +67,20 @@ public class ElasticSearchConnection extends NoOpConnection {
   @NotBlank
   private String index = null;
 
+  @AdvancedConfig
+  @Min(1)
+  @InputFieldDefault(value = "1")
+  private Integer clientPoolSize;
+
+  private transient List<TransportClient> clients = new ArrayList<>();
+  private transient int nextClient = 0;
+  private transient int references = 0;
+  private transient boolean closeRequested = false;
+  // Clients that only talk to a single node, keyed by node id; and those that are waiting for their last borrower.
+  private transient Map<String, NodeClient> nodeClients = new HashMap<>();
+  private transient List<NodeClient> retiredNodeClients = new ArrayList<>();
+  private transient ElasticSearchMetrics metrics = new ElasticSearchMetrics();
+
   public ElasticSearchConnection() {
     setTransportUrls(new ArrayList<String>());
     setSettings(new KeyValuePairSet());
@@ -58,6 +91,175 @@ public class ElasticSearchConnection extends NoOpConnection {
     setIndex(index);
   }
 
+  @Override
+  protected void initConnection() throws CoreException {
+    synchronized (clients) {
+      closeRequested = false;
+      createClients();
+    }
+    metrics.register(ElasticSearchMetrics.CONNECTION_TYPE, getUniqueId());
+  }
+
+  @Override
+  protected void closeConnection() {
+    metrics.unregister();
+    synchronized (clients) {
+      closeRequested = true;
+      if (references == 0) {
+        closeClients();
+      }
+      else {
+        log.trace("{} producers still using the connection, clients will be closed when released", references);
+      }
+    }
+  }
+
+  /**
+   * Borrow a client from this connection.
+   * <p>
+   * Each call should be matched with a corresponding call to {@link #releaseClient(TransportClient)}; the client itself should
+   * never be closed by the caller.
+   * </p>
+   */
+  protected TransportClient borrowClient() throws CoreException {
+    synchronized (clients) {
+      createClients();
+      references++;
+      TransportClient result = clients.get(nextClient % clients.size());
+      nextClient = (nextClient + 1) % clients.size();
+      return result;
+    }
+  }
+
+  /**
+   * Release a client previously borrowed via {@link #borrowClient()}.
+   */
+  protected void releaseClient(TransportClient c) {
+    if (c == null) {
+      return;
+    }
+    synchronized (clients) {
+      references = Math.max(0, references - 1);
+      if (references == 0 && closeRequested) {
+        closeClients();
+      }
+    }
+  }
+
+  /**
+   * Borrow a client that only talks to the specified node from this connection.
+   * <p>
+   * The client is created on first use, and shared between all the producers that use this connection. Each call should be
+   * matched with a corresponding call to {@link #releaseNodeClient(TransportClient)} once the request has completed; the client
+   * itself should never be closed by the caller.
+   * </p>
+   * 
+   * @see #createClient(TransportAddress)
+   */
+  protected TransportClient borrowNodeClient(DiscoveryNode node) throws CoreException {
+    synchronized (clients) {
+      NodeClient result = nodeClients.get(node.getId());
+      if (result != null && !result.address.equals(node.address())) {
+        retire(result);
+        nodeClients.remove(node.getId());
+        result = null;
+      }
+      if (result == null) {
+        result = new NodeClient(node.address(), createClient(node.address()));
+        nodeClients.put(node.getId(), result);
+      }
+      result.references++;
+      return result.client;
+    }
+  }
+
+  /**
+   * Release a client previously borrowed via {@link #borrowNodeClient(DiscoveryNode)}.
+   * <p>
+   * The client is only closed once it has no borrowers, and either its node has been removed or the connection has been closed.
+   * </p>
+   */
+  protected void releaseNodeClient(TransportClient c) {
+    if (c == null) {
+      return;
+    }
+    synchronized (clients) {
+      for (NodeClient n : nodeClients.values()) {
+        if (n.client == c) {
+          n.references = Math.max(0, n.references - 1);
+          return;
+        }
+      }
+      for (Iterator<NodeClient> i = retiredNodeClients.iterator(); i.hasNext();) {
+        NodeClient n = i.next();
+        if (n.client == c) {
+          n.references = Math.max(0, n.references - 1);
+          if (n.references == 0) {
+            closeQuietly(n.client);
+            i.remove();
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Retire the clients for any node that no longer exists.
+   * <p>
+   * Clients that are still borrowed are closed when they are released.
+   * </p>
+   * 
+   * @param exists whether the node with the specified id still exists.
+   */
+  protected void retainNodeClients(Predicate<String> exists) {
+    synchronized (clients) {
+      for (Iterator<Map.Entry<String, NodeClient>> i = nodeClients.entrySet().iterator(); i.hasNext();) {
+        Map.Entry<String, NodeClient> e = i.next();
+        if (!exists.test(e.getKey())) {
+          retire(e.getValue());
+          i.remove();
+        }
+      }
+    }
+  }
+
+  private void retire(NodeClient n) {
+    if (n.references == 0) {
+      closeQuietly(n.client);
+    }
+    else {
+      retiredNodeClients.add(n);
+    }
+  }
+
+  private void createClients() throws CoreException {
+    if (clients.size() == 0) {
+      for (int i = 0; i < clientPoolSize(); i++) {
+        clients.add(createClient());
+      }
+    }
+  }
+
+  private void closeClients() {
+    for (TransportClient c : clients) {
+      closeQuietly(c);
+    }
+    clients.clear();
+    nextClient = 0;
+    for (NodeClient n : nodeClients.values()) {
+      retire(n);
+    }
+    nodeClients.clear();
+  }
+
+  /**
+   * The metrics for all the producers using this connection.
+   */
+  ElasticSearchMetrics metrics() {
+    return metrics;
+  }
+
   protected TransportClient createClient() throws CoreException {
     Settings s = Settings.settingsBuilder().put(asMap(getSettings())).build();
     TransportClient transportClient = TransportClient.builder().settings(s).build();
@@ -67,6 +269,18 @@ public class ElasticSearchConnection extends NoOpConnection {
     return transportClient;
   }
 
+  /**
+   * Create a client that only talks to the specified node.
+   * <p>
+   * Sniffing is disabled, regardless of the configured settings, so that requests are never sent to another node. The caller owns
+   * the client, and is responsible for closing it; producers should use {@link #borrowNodeClient(DiscoveryNode)} instead.
+   * </p>
+   */
+  protected TransportClient createClient(TransportAddress address) throws CoreException {
+    Settings s = Settings.settingsBuilder().put(asMap(getSettings())).put("client.transport.sniff", false).build();
+    return TransportClient.builder().settings(s).build().addTransportAddress(address);
+  }
+
   public KeyValuePairSet getSettings() {
     return settings;
   }
@@ -95,6 +309,23 @@ public class ElasticSearchConnection extends NoOpConnection {
     this.index = Args.notBlank(index, "index");
   }
 
+  public Integer getClientPoolSize() {
+    return clientPoolSize;
+  }
+
+  /**
+   * Set the number of {@link TransportClient} instances that are shared between producers.
+   * 
+   * @param i the number of clients, defaults to 1.
+   */
+  public void setClientPoolSize(Integer i) {
+    this.clientPoolSize = i;
+  }
+
+  int clientPoolSize() {
+    return getClientPoolSize() != null ? Math.max(1, getClientPoolSize().intValue()) : 1;
+  }
+
   protected void closeQuietly(TransportClient c) {
     doClose(c);
   }
@@ -110,6 +341,17 @@ public class ElasticSearchConnection extends NoOpConnection {
     }
   }
 
+  private static class NodeClient {
+    private final TransportAddress address;
+    private final TransportClient client;
+    private int references = 0;
+
+    NodeClient(TransportAddress address, TransportClient client) {
+      this.address = address;
+      this.client = client;
+    }
+  }
+
   private static Map<String, String> asMap(KeyValuePairBag kvps) {
     Map<String, String> result = new HashMap<>();
     for (KeyValuePair kvp : kvps.getKeyValuePairs()) {
@@ -0,0 +1,396 @@
+package com.adaptris.core.elastic;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adaptris.core.util.JmxHelper;
+
+/**
+ * Records the metrics exposed by {@link ElasticSearchMetricsMXBean}.
+ * <p>
+ * Everything recorded against a producer's metrics is also recorded against the metrics of its parent (the connection).
+ * </p>
+ */
+final class ElasticSearchMetrics implements ElasticSearchMetricsMXBean {
+
+  static final String JMX_DOMAIN = "com.adaptris";
+  static final String CONNECTION_TYPE = "ElasticSearchConnectionMetrics";
+  static final String PRODUCER_TYPE = "ElasticSearchProducerMetrics";
+
+  // The maximum number of components with the same type and unique-id that are registered.
+  private static final int MAX_INSTANCES = 100;
+
+  private static final Logger log = LoggerFactory.getLogger(ElasticSearchMetrics.class);
+
+  private final ElasticSearchMetrics parent;
+
+  private final LongAdder documents = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder requestItems = new LongAdder();
+  private final LongAdder requestBytes = new LongAdder();
+  private final AtomicLong maxRequestItems = new AtomicLong();
+  private final AtomicLong maxRequestBytes = new AtomicLong();
+  private final LongAdder failedRequests = new LongAdder();
+  private final Map<RestStatus, LongAdder> failedItems = new ConcurrentHashMap<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger batchSize = new AtomicInteger();
+  private final SlidingRate documentRate = new SlidingRate();
+  private final SlidingRate requestRate = new SlidingRate();
+  private final Histogram clientLatency = new ConcurrentHistogram(3);
+  private final Histogram serverLatency = new ConcurrentHistogram(3);
+
+  private ObjectName registeredAs;
+
+  ElasticSearchMetrics() {
+    this(null);
+  }
+
+  ElasticSearchMetrics(ElasticSearchMetrics parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * Register with the platform MBeanServer as {@code com.adaptris:type=<type>,id=<uniqueId>}.
+   * <p>
+   * Like Interlok's own runtime components, nothing is registered unless the component has a unique-id; failures are logged and
+   * otherwise ignored, since metrics should never stop messages being produced.
+   * </p>
+   */
+  void register(String type, String uniqueId) {
+    if (registeredAs == null) {
+      registeredAs = register(this, type, uniqueId);
+    }
+  }
+
+  void unregister() {
+    unregister(registeredAs);
+    registeredAs = null;
+  }
+
+  /**
+   * Register the bean as {@code com.adaptris:type=<type>,id=<uniqueId>}.
+   * <p>
+   * Unique-ids only have to be unique within their parent, so if that name is already in use (e.g. by a component with the same
+   * unique-id in another channel) then {@code ,instance=<n>} is appended to it.
+   * </p>
+   *
+   * @return the name it was registered as, or null if it wasn't registered.
+   */
+  static ObjectName register(Object bean, String type, String uniqueId) {
+    if (StringUtils.isBlank(uniqueId)) {
+      return null;
+    }
+    try {
+      String baseName = JMX_DOMAIN + ":type=" + type + ",id=" + uniqueId;
+      MBeanServer server = JmxHelper.findMBeanServer();
+      for (int instance = 0; instance < MAX_INSTANCES; instance++) {
+        ObjectName name = new ObjectName(instance == 0 ? baseName : baseName + ",instance=" + instance);
+        if (server.isRegistered(name)) {
+          continue;
+        }
+        try {
+          JmxHelper.register(name, bean);
+        }
+        catch (InstanceAlreadyExistsException e) {
+          // Registered by someone else in the meantime.
+          continue;
+        }
+        if (instance > 0) {
+          log.warn("Metrics for [{}] are already registered, registered as {} instead", uniqueId, name);
+        }
+        return name;
+      }
+      log.warn("Failed to register metrics for [{}]: too many components with the same unique-id", uniqueId);
+    }
+    catch (Exception e) {
+      log.warn("Failed to register metrics for [{}]: {}", uniqueId, e.getMessage());
+    }
+    return null;
+  }
+
+  static void unregister(ObjectName name) {
+    if (name == null) {
+      return;
+    }
+    try {
+      JmxHelper.unregister(name);
+    }
+    catch (Exception e) {
+      log.trace("Failed to unregister {}: {}", name, e.getMessage());
+    }
+  }
+
+  ObjectName registeredAs() {
+    return registeredAs;
+  }
+
+  /**
+   * Record the outcome of a bulk request sent using the returned listener.
+   */
+  ActionListener<BulkResponse> record(BulkRequest request, ActionListener<BulkResponse> listener) {
+    final long started = requestStarted(request.numberOfActions(), request.estimatedSizeInBytes());
+    return new ActionListener<BulkResponse>() {
+      @Override
+      public void onResponse(BulkResponse response) {
+        requestCompleted(started, response);
+        listener.onResponse(response);
+      }
+
+      @Override
+      public void onFailure(Throwable e) {
+        requestFailed();
+        listener.onFailure(e);
+      }
+    };
+  }
+
+  long requestStarted(int items, long bytes) {
+    forEach(m -> {
+      m.inFlight.incrementAndGet();
+      m.requests.increment();
+      m.requestRate.add(1);
+      m.requestItems.add(items);
+      m.requestBytes.add(bytes);
+      m.maxRequestItems.accumulateAndGet(items, Math::max);
+      m.maxRequestBytes.accumulateAndGet(bytes, Math::max);
+    });
+    return System.nanoTime();
+  }
+
+  void requestCompleted(long started, BulkResponse response) {
+    long succeeded = 0;
+    for (BulkItemResponse item : response.getItems()) {
+      if (item.isFailed()) {
+        RestStatus status = item.getFailure().getStatus();
+        forEach(m -> m.failedItems.computeIfAbsent(status, k -> new LongAdder()).increment());
+      }
+      else {
+        succeeded++;
+      }
+    }
+    requestCompleted(started, succeeded, response.getTookInMillis());
+  }
+
+  /**
+   * Record a successful request.
+   *
+   * @param tookMillis the time reported by ElasticSearch, or -1 if not reported.
+   */
+  void requestCompleted(long started, long succeeded, long tookMillis) {
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    forEach(m -> {
+      m.inFlight.decrementAndGet();
+      m.documents.add(succeeded);
+      m.documentRate.add(succeeded);
+      m.clientLatency.recordValue(elapsed);
+      if (tookMillis >= 0) {
+        m.serverLatency.recordValue(tookMillis);
+      }
+    });
+  }
+
+  void requestFailed() {
+    forEach(m -> {
+      m.inFlight.decrementAndGet();
+      m.failedRequests.increment();
+    });
+  }
+
+  /**
+   * Record the current batch size; this is not rolled up to the parent.
+   */
+  void batchSize(int size) {
+    batchSize.set(size);
+  }
+
+  private void forEach(Consumer<ElasticSearchMetrics> c) {
+    for (ElasticSearchMetrics m = this; m != null; m = m.parent) {
+      c.accept(m);
+    }
+  }
+
+  @Override
+  public long getDocumentCount() {
+    return documents.sum();
+  }
+
+  @Override
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  @Override
+  public double getDocumentsPerSecond() {
+    return documentRate.perSecond();
+  }
+
+  @Override
+  public double getRequestsPerSecond() {
+    return requestRate.perSecond();
+  }
+
+  @Override
+  public int getInFlightRequests() {
+    return inFlight.get();
+  }
+
+  @Override
+  public double getAverageRequestItems() {
+    return average(requestItems.sum(), requests.sum());
+  }
+
+  @Override
+  public long getMaxRequestItems() {
+    return maxRequestItems.get();
+  }
+
+  @Override
+  public double getAverageRequestBytes() {
+    return average(requestBytes.sum(), requests.sum());
+  }
+
+  @Override
+  public long getMaxRequestBytes() {
+    return maxRequestBytes.get();
+  }
+
+  @Override
+  public long getClientLatency50thPercentile() {
+    return clientLatency.getValueAtPercentile(50.0);
+  }
+
+  @Override
+  public long getClientLatency99thPercentile() {
+    return clientLatency.getValueAtPercentile(99.0);
+  }
+
+  @Override
+  public long getClientLatencyMax() {
+    return clientLatency.getMaxValue();
+  }
+
+  @Override
+  public long getServerLatency50thPercentile() {
+    return serverLatency.getValueAtPercentile(50.0);
+  }
+
+  @Override
+  public long getServerLatency99thPercentile() {
+    return serverLatency.getValueAtPercentile(99.0);
+  }
+
+  @Override
+  public long getServerLatencyMax() {
+    return serverLatency.getMaxValue();
+  }
+
+  @Override
+  public long getFailedRequestCount() {
+    return failedRequests.sum();
+  }
+
+  @Override
+  public long getFailedItemCount() {
+    return failedItems.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  @Override
+  public Map<String, Long> getFailedItemsByStatus() {
+    Map<String, Long> result = new TreeMap<>();
+    failedItems.forEach((k, v) -> result.put(k.getStatus() + " " + k.name(), v.sum()));
+    return result;
+  }
+
+  @Override
+  public int getBatchSize() {
+    return batchSize.get();
+  }
+
+  @Override
+  public void reset() {
+    // in-flight and batch size are gauges, not counters, so they stay as is.
+    documents.reset();
+    requests.reset();
+    requestItems.reset();
+    requestBytes.reset();
+    maxRequestItems.set(0);
+    maxRequestBytes.set(0);
+    failedRequests.reset();
+    failedItems.clear();
+    documentRate.reset();
+    requestRate.reset();
+    clientLatency.reset();
+    serverLatency.reset();
+  }
+
+  private static double average(long total, long count) {
+    return count > 0 ? (double) total / count : 0;
+  }
+
+  /**
+   * Rate over the last minute, using a bucket per second.
+   * <p>
+   * Updates that race with a bucket being recycled may be lost; that's an acceptable trade-off for something that is only ever
+   * going to be eyeballed.
+   * </p>
+   */
+  static class SlidingRate {
+    private static final int WINDOW_SECONDS = 60;
+    private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    void add(long n) {
+      long now = now();
+      int i = (int) (now % WINDOW_SECONDS);
+      long bucket = seconds.get(i);
+      if (bucket != now && seconds.compareAndSet(i, bucket, now)) {
+        counts.set(i, 0);
+      }
+      counts.addAndGet(i, n);
+    }
+
+    double perSecond() {
+      long now = now();
+      long total = 0;
+      for (int i = 0; i < WINDOW_SECONDS; i++) {
+        if (now - seconds.get(i) < WINDOW_SECONDS) {
+          total += counts.get(i);
+        }
+      }
+      return (double) total / WINDOW_SECONDS;
+    }
+
+    void reset() {
+      for (int i = 0; i < WINDOW_SECONDS; i++) {
+        seconds.set(i, 0);
+        counts.set(i, 0);
+      }
+    }
+
+    long now() {
+      return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.adaptris.core.elastic;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing the throughput of an {@link ElasticSearchProducer} or {@link ElasticSearchConnection}.
+ *
+ * <p>
+ * The connection metrics are the aggregate of all the producers that use the connection. Rates are averaged over the last minute;
+ * latencies are in milliseconds and are recorded since the component was initialised (or since {@link #reset()} was last invoked).
+ * </p>
+ */
+public interface ElasticSearchMetricsMXBean {
+
+  /**
+   * The number of documents successfully indexed, updated or deleted.
+   */
+  long getDocumentCount();
+
+  /**
+   * The number of requests (bulk or otherwise) sent to ElasticSearch.
+   */
+  long getRequestCount();
+
+  double getDocumentsPerSecond();
+
+  double getRequestsPerSecond();
+
+  /**
+   * The number of requests that have been sent but not yet completed.
+   */
+  int getInFlightRequests();
+
+  double getAverageRequestItems();
+
+  long getMaxRequestItems();
+
+  /**
+   * Average request size in bytes; as estimated by {@code BulkRequest#estimatedSizeInBytes()}.
+   */
+  double getAverageRequestBytes();
+
+  long getMaxRequestBytes();
+
+  /**
+   * Request latency as observed by the client; this includes network time and any item retries.
+   */
+  long getClientLatency50thPercentile();
+
+  long getClientLatency99thPercentile();
+
+  long getClientLatencyMax();
+
+  /**
+   * Request latency as reported by ElasticSearch ({@code BulkResponse#getTook()}).
+   */
+  long getServerLatency50thPercentile();
+
+  long getServerLatency99thPercentile();
+
+  long getServerLatencyMax();
+
+  /**
+   * The number of requests that failed outright (e.g. no nodes available).
+   */
+  long getFailedRequestCount();
+
+  /**
+   * The number of items that failed within a bulk request.
+   */
+  long getFailedItemCount();
+
+  /**
+   * Failed items keyed by their status (e.g. {@code 429 TOO_MANY_REQUESTS}); a growing number of 429 / 503 failures means the
+   * cluster is pushing back.
+   */
+  Map<String, Long> getFailedItemsByStatus();
+
+  /**
+   * The current batch size of a {@link BulkIndexDocuments} producer using {@link AdaptiveBatchSize}; 0 otherwise.
+   */
+  int getBatchSize();
+
+  /**
+   * Reset all the counters and latencies.
+   */
+  void reset();
+}
@@ -0,0 +1,37 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+
+/**
+ * Records how far each partition of an {@link ExportDocumentsConsumer} has got, so that an interrupted export can be resumed.
+ *
+ * <p>
+ * The cursor for a partition is the {@code _uid} of the last document that was successfully delivered; it is saved after each
+ * message, and cleared when the partition has been completely exported.
+ * </p>
+ */
+public interface ExportCursorStore {
+
+  /**
+   * Get the cursor for the partition.
+   *
+   * @param partition the partition.
+   * @return the cursor, or null if the partition should be exported from the start.
+   */
+  String load(String partition) throws IOException;
+
+  /**
+   * Save the cursor for the partition.
+   *
+   * @param partition the partition.
+   * @param cursor the cursor.
+   */
+  void save(String partition, String cursor) throws IOException;
+
+  /**
+   * Clear the cursor for the partition.
+   *
+   * @param partition the partition.
+   */
+  void clear(String partition) throws IOException;
+}
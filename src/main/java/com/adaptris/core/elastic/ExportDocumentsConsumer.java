@@ -0,0 +1,452 @@
+package com.adaptris.core.elastic;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.search.SearchHit;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisPollingConsumer;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Export all the documents in an index (or those matching a query) as a stream of messages.
+ *
+ * <p>
+ * Each time the consumer is triggered by its poller, the index is split into {@link #setPartitions(Integer)} partitions, each of
+ * which is a subset of the index's shards (searched using a {@code _shards} preference, so that the work is spread across the
+ * nodes holding those shards), and the partitions are scrolled through in parallel. The hits from each partition are written into
+ * messages by the configured {@link SearchResultWriter}, up to {@link #setDocumentsPerMessage(Integer)} hits per message.
+ * </p>
+ * <p>
+ * If an {@link ExportCursorStore} is configured then hits are returned in {@code _uid} order, and the {@code _uid} of the last hit
+ * in each message is saved as the cursor for its partition once the message has been processed; a partition that fails, or is
+ * interrupted by the consumer being stopped, resumes from its cursor the next time the consumer is triggered. Sorting by
+ * {@code _uid} is more expensive than the default {@code _doc} order, so only configure a cursor store if you need it.
+ * </p>
+ * <p>
+ * The {@code index} is taken from the underlying {@link ElasticSearchConnection}; the destination can optionally be the type of
+ * document to export (or a comma separated list of types). Each message has the partition (e.g. {@code _shards:0,2}) stored
+ * against {@value #PARTITION_METADATA_KEY} and the number of documents against {@value #DOCUMENT_COUNT_METADATA_KEY}.
+ * </p>
+ *
+ * @config elasticsearch-export-documents-consumer
+ */
+@XStreamAlias("elasticsearch-export-documents-consumer")
+public class ExportDocumentsConsumer extends AdaptrisPollingConsumer {
+
+  /**
+   * Metadata key containing the partition that the documents were exported from.
+   */
+  public static final String PARTITION_METADATA_KEY = "elasticExportPartition";
+  /**
+   * Metadata key containing the number of documents in the message.
+   */
+  public static final String DOCUMENT_COUNT_METADATA_KEY = "elasticExportDocumentCount";
+
+  private static final int DEFAULT_DOCUMENTS_PER_MESSAGE = 1000;
+  private static final TimeInterval DEFAULT_KEEP_ALIVE = new TimeInterval(1L, TimeUnit.MINUTES);
+  private static final TimeInterval DEFAULT_PAGE_TIMEOUT = new TimeInterval(2L, TimeUnit.MINUTES);
+  private static final String ALL_SHARDS = "_all";
+
+  private String query;
+
+  @NotNull
+  @AutoPopulated
+  @Valid
+  private SearchResultWriter resultWriter;
+
+  @Min(1)
+  private Integer partitions;
+
+  @Min(1)
+  @InputFieldDefault(value = "1000")
+  private Integer documentsPerMessage;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval scrollKeepAlive;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval pageTimeout;
+
+  @AdvancedConfig
+  @Valid
+  private ExportCursorStore cursorStore;
+
+  private transient TransportClient transportClient;
+  private transient volatile boolean running = false;
+
+  public ExportDocumentsConsumer() {
+    setResultWriter(new NdjsonResultWriter());
+  }
+
+  @Override
+  public void init() throws CoreException {
+    super.init();
+    transportClient = retrieveConnection(ElasticSearchConnection.class).borrowClient();
+  }
+
+  @Override
+  public void start() throws CoreException {
+    running = true;
+    super.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    super.stop();
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    retrieveConnection(ElasticSearchConnection.class).releaseClient(transportClient);
+    transportClient = null;
+  }
+
+  @Override
+  protected void prepareConsumer() throws CoreException {}
+
+  @Override
+  protected int processMessages() {
+    int count = 0;
+    ExecutorService executor = null;
+    try {
+      final String index = retrieveConnection(ElasticSearchConnection.class).getIndex();
+      List<PartitionExport> exports = new ArrayList<>();
+      for (String preference : preferences(ShardRouter.fetch(transportClient, index).shards(), partitions())) {
+        exports.add(new PartitionExport(index, preference));
+      }
+      executor = Executors.newFixedThreadPool(exports.size(), new ManagedThreadFactory(getClass().getSimpleName()));
+      List<Future<Integer>> results = executor.invokeAll(exports);
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          count += results.get(i).get();
+        }
+        catch (ExecutionException e) {
+          log.warn("Failed to export [{}] from {}", exports.get(i).partition, index, e.getCause());
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (Exception e) {
+      log.warn("Failed to export documents", e);
+    }
+    finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Split the shards into partitions, as {@code _shards} preferences.
+   *
+   * @param shards the number of shards, or 0 if unknown.
+   * @param partitions the number of partitions, or 0 for one per shard.
+   * @return the preferences; a single null preference if the index can't (or shouldn't) be partitioned.
+   */
+  static List<String> preferences(int shards, int partitions) {
+    int count = partitions > 0 ? Math.min(partitions, shards) : shards;
+    if (count <= 1) {
+      return Collections.singletonList(null);
+    }
+    List<String> result = new ArrayList<>(count);
+    for (int p = 0; p < count; p++) {
+      StringBuilder sb = new StringBuilder("_shards:").append(p);
+      for (int shard = p + count; shard < shards; shard += count) {
+        sb.append(',').append(shard);
+      }
+      result.add(sb.toString());
+    }
+    return result;
+  }
+
+  private Map<String, Object> searchSource(String cursor) {
+    Map<String, Object> result = StringUtils.isBlank(getQuery()) ? new HashMap<String, Object>()
+        : XContentHelper.convertToMap(new BytesArray(getQuery()), true).v2();
+    if (cursor != null) {
+      Object query = result.containsKey("query") ? result.get("query")
+          : Collections.singletonMap("match_all", Collections.emptyMap());
+      Map<String, Object> bool = new HashMap<>();
+      bool.put("must", query);
+      bool.put("filter", Collections.singletonMap("range",
+          Collections.singletonMap("_uid", Collections.singletonMap("gt", cursor))));
+      result.put("query", Collections.singletonMap("bool", bool));
+    }
+    if (!result.containsKey("size")) {
+      result.put("size", documentsPerMessage());
+    }
+    if (getCursorStore() != null) {
+      result.put("sort", Collections.singletonList(Collections.singletonMap("_uid", "asc")));
+    }
+    else if (!result.containsKey("sort")) {
+      result.put("sort", Collections.singletonList("_doc"));
+    }
+    return result;
+  }
+
+  private void clearScroll(String scrollId) {
+    if (scrollId == null) {
+      return;
+    }
+    try {
+      transportClient.prepareClearScroll().addScrollId(scrollId).get();
+    }
+    catch (Exception e) {
+      log.trace("Failed to clear scroll: {}", e.getMessage());
+    }
+  }
+
+  private class PartitionExport implements Callable<Integer> {
+    private final String index;
+    private final String preference;
+    private final String partition;
+
+    PartitionExport(String index, String preference) {
+      this.index = index;
+      this.preference = preference;
+      this.partition = index + "/" + StringUtils.defaultIfEmpty(preference, ALL_SHARDS);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+      final TimeValue keepAlive = TimeValue.timeValueMillis(scrollKeepAlive());
+      final TimeValue timeout = TimeValue.timeValueMillis(pageTimeout());
+      final int max = documentsPerMessage();
+      String cursor = getCursorStore() != null ? getCursorStore().load(partition) : null;
+      SearchRequestBuilder search = transportClient.prepareSearch(index).setScroll(keepAlive).setSource(searchSource(cursor));
+      String types = getDestination() != null ? getDestination().getDestination() : null;
+      if (!StringUtils.isBlank(types)) {
+        search.setTypes(StringUtils.split(types, ','));
+      }
+      if (preference != null) {
+        search.setPreference(preference);
+      }
+      log.debug("Exporting [{}] from {}", partition, cursor != null ? cursor : "the start");
+      int messages = 0;
+      String scrollId = null;
+      Batch batch = null;
+      try {
+        SearchResponse response = search.get(timeout);
+        scrollId = response.getScrollId();
+        while (running && response.getHits().getHits().length > 0) {
+          for (SearchHit hit : response.getHits().getHits()) {
+            if (batch == null) {
+              batch = new Batch();
+            }
+            batch.write(hit);
+            if (batch.count >= max) {
+              deliver(batch);
+              batch = null;
+              messages++;
+            }
+          }
+          response = transportClient.prepareSearchScroll(scrollId).setScroll(keepAlive).get(timeout);
+          scrollId = response.getScrollId();
+        }
+        if (running) {
+          if (batch != null) {
+            deliver(batch);
+            batch = null;
+            messages++;
+          }
+          if (getCursorStore() != null) {
+            getCursorStore().clear(partition);
+          }
+          log.debug("Exported [{}] as {} messages", partition, messages);
+        }
+      }
+      finally {
+        clearScroll(scrollId);
+        if (batch != null) {
+          batch.close();
+        }
+      }
+      return messages;
+    }
+
+    private void deliver(Batch batch) throws IOException {
+      batch.close();
+      batch.msg.addMetadata(PARTITION_METADATA_KEY, StringUtils.defaultIfEmpty(preference, ALL_SHARDS));
+      batch.msg.addMetadata(DOCUMENT_COUNT_METADATA_KEY, String.valueOf(batch.count));
+      retrieveAdaptrisMessageListener().onAdaptrisMessage(batch.msg);
+      if (getCursorStore() != null) {
+        getCursorStore().save(partition, batch.lastUid);
+      }
+    }
+  }
+
+  private class Batch {
+    private final AdaptrisMessage msg;
+    private final OutputStream out;
+    private final SearchResultWriter.Results results;
+    private int count = 0;
+    private String lastUid;
+    private boolean closed = false;
+
+    Batch() throws IOException {
+      msg = defaultIfNull().newMessage();
+      out = new BufferedOutputStream(msg.getOutputStream());
+      results = getResultWriter().start(out);
+    }
+
+    void write(SearchHit hit) throws IOException {
+      results.write(hit);
+      lastUid = hit.getType() + "#" + hit.getId();
+      count++;
+    }
+
+    void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try (OutputStream o = out) {
+          results.close();
+        }
+      }
+    }
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Set the search request body that selects the documents to export.
+   *
+   * @param s the search (e.g. <code>{"query": {"term": {"status": "active"}}}</code>); if not specified then every document is
+   *          exported.
+   */
+  public void setQuery(String s) {
+    this.query = s;
+  }
+
+  public SearchResultWriter getResultWriter() {
+    return resultWriter;
+  }
+
+  /**
+   * Set how the hits are written to each message.
+   *
+   * @param w the writer, defaults to {@link NdjsonResultWriter}.
+   */
+  public void setResultWriter(SearchResultWriter w) {
+    this.resultWriter = w;
+  }
+
+  public Integer getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * Set the number of partitions to export in parallel.
+   *
+   * @param i the number of partitions; defaults to one per shard, and is capped at the number of shards.
+   */
+  public void setPartitions(Integer i) {
+    this.partitions = i;
+  }
+
+  int partitions() {
+    return getPartitions() != null ? getPartitions().intValue() : 0;
+  }
+
+  public Integer getDocumentsPerMessage() {
+    return documentsPerMessage;
+  }
+
+  /**
+   * Set the maximum number of documents in each message.
+   *
+   * @param i the maximum, defaults to 1000.
+   */
+  public void setDocumentsPerMessage(Integer i) {
+    this.documentsPerMessage = i;
+  }
+
+  int documentsPerMessage() {
+    return getDocumentsPerMessage() != null ? getDocumentsPerMessage().intValue() : DEFAULT_DOCUMENTS_PER_MESSAGE;
+  }
+
+  public TimeInterval getScrollKeepAlive() {
+    return scrollKeepAlive;
+  }
+
+  /**
+   * Set how long ElasticSearch should keep each partition's search context alive between pages.
+   *
+   * @param t the keep alive, defaults to 1 minute.
+   */
+  public void setScrollKeepAlive(TimeInterval t) {
+    this.scrollKeepAlive = t;
+  }
+
+  long scrollKeepAlive() {
+    return getScrollKeepAlive() != null ? getScrollKeepAlive().toMilliseconds() : DEFAULT_KEEP_ALIVE.toMilliseconds();
+  }
+
+  public TimeInterval getPageTimeout() {
+    return pageTimeout;
+  }
+
+  /**
+   * Set how long to wait for each page of results from ElasticSearch.
+   *
+   * @param t the timeout, defaults to 2 minutes.
+   */
+  public void setPageTimeout(TimeInterval t) {
+    this.pageTimeout = t;
+  }
+
+  long pageTimeout() {
+    return getPageTimeout() != null ? getPageTimeout().toMilliseconds() : DEFAULT_PAGE_TIMEOUT.toMilliseconds();
+  }
+
+  public ExportCursorStore getCursorStore() {
+    return cursorStore;
+  }
+
+  /**
+   * Set where to keep the cursor for each partition, so that an interrupted export can be resumed.
+   *
+   * @param s the store, defaults to null (exports always start from the beginning).
+   */
+  public void setCursorStore(ExportCursorStore s) {
+    this.cursorStore = s;
+  }
+}
@@ -0,0 +1,93 @@
+package com.adaptris.core.elastic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.hibernate.validator.constraints.NotBlank;
+
+import com.adaptris.core.util.Args;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Keeps export cursors in a properties file, so that an export can be resumed after the adapter is restarted.
+ *
+ * <p>
+ * The file is rewritten (via a temporary file, then renamed) each time a cursor changes; so it should not be shared between
+ * consumers.
+ * </p>
+ *
+ * @config elasticsearch-file-export-cursor-store
+ */
+@XStreamAlias("elasticsearch-file-export-cursor-store")
+public class FileExportCursorStore implements ExportCursorStore {
+
+  @NotBlank
+  private String filename;
+
+  public FileExportCursorStore() {
+
+  }
+
+  public FileExportCursorStore(String filename) {
+    this();
+    setFilename(filename);
+  }
+
+  @Override
+  public synchronized String load(String partition) throws IOException {
+    return read().getProperty(partition);
+  }
+
+  @Override
+  public synchronized void save(String partition, String cursor) throws IOException {
+    Properties p = read();
+    p.setProperty(partition, cursor);
+    write(p);
+  }
+
+  @Override
+  public synchronized void clear(String partition) throws IOException {
+    Properties p = read();
+    if (p.remove(partition) != null) {
+      write(p);
+    }
+  }
+
+  private Properties read() throws IOException {
+    Properties p = new Properties();
+    File file = new File(getFilename());
+    if (file.exists()) {
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+        p.load(in);
+      }
+    }
+    return p;
+  }
+
+  private void write(Properties p) throws IOException {
+    File file = new File(getFilename()).getAbsoluteFile();
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+      p.store(out, null);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * Set the file to store the cursors in.
+   *
+   * @param s the filename.
+   */
+  public void setFilename(String s) {
+    this.filename = Args.notBlank(s, "filename");
+  }
+}
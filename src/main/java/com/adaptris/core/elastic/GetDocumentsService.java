@@ -0,0 +1,346 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.client.transport.TransportClient;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.annotation.InputFieldHint;
+import com.adaptris.core.AdaptrisConnection;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.ServiceImp;
+import com.adaptris.core.common.StringPayloadDataInputParameter;
+import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.util.Args;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.core.util.ManagedThreadFactory;
+import com.adaptris.interlok.config.DataInputParameter;
+import com.adaptris.interlok.config.DataOutputParameter;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Look up existing documents by id.
+ *
+ * <p>
+ * The ids are extracted from the message by {@link #setIds(DataInputParameter)} (by default the payload) as a comma or newline
+ * separated list; the documents are written by {@link #setOutput(DataOutputParameter)} (by default, replacing the payload) as a
+ * JSON object keyed by id, whose values are the {@code _source} of each document. Ids that don't exist are omitted. The
+ * {@code index} is taken from the {@link ElasticSearchConnection}; the type can be specified via {@link #setType(String)},
+ * otherwise all types are searched.
+ * </p>
+ * <p>
+ * Rather than a {@code get} per id, the ids are fetched using {@code multiGet}; and if {@link #setLingerInterval(TimeInterval)} is
+ * specified, then the ids from all the messages being processed within that interval (e.g. by a {@code PoolingWorkflow}) are
+ * fetched in the same requests, up to {@link #setMaxIdsPerRequest(Integer)} ids per request. If a {@link DocumentCache} is
+ * configured, then ids are looked up in the cache first, and only the ones that aren't cached are fetched. If the service has a
+ * unique-id, then the cache statistics are available via JMX as
+ * {@code com.adaptris:type=ElasticSearchDocumentCache,id=<unique-id>}.
+ * </p>
+ *
+ * @config elasticsearch-get-documents-service
+ */
+@XStreamAlias("elasticsearch-get-documents-service")
+public class GetDocumentsService extends ServiceImp {
+
+  static final String CACHE_TYPE = "ElasticSearchDocumentCache";
+
+  private static final int DEFAULT_MAX_IDS = 1000;
+  private static final TimeInterval DEFAULT_TIMEOUT = new TimeInterval(2L, TimeUnit.MINUTES);
+  private static final String ALL_TYPES = "_all";
+
+  @NotNull
+  @Valid
+  private AdaptrisConnection connection;
+
+  @NotNull
+  @AutoPopulated
+  @Valid
+  private DataInputParameter<String> ids;
+
+  @NotNull
+  @AutoPopulated
+  @Valid
+  private DataOutputParameter<String> output;
+
+  @InputFieldHint(expression = true)
+  private String type;
+
+  @Valid
+  private DocumentCache cache;
+
+  @AdvancedConfig
+  @Min(1)
+  @InputFieldDefault(value = "1000")
+  private Integer maxIdsPerRequest;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval lingerInterval;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval timeout;
+
+  private transient TransportClient transportClient;
+  private transient ScheduledExecutorService scheduler;
+  private transient MultiGetCoalescer coalescer;
+  private transient ObjectName cacheRegisteredAs;
+
+  public GetDocumentsService() {
+    setIds(new StringPayloadDataInputParameter());
+    setOutput(new StringPayloadDataOutputParameter());
+  }
+
+  @Override
+  public void doService(AdaptrisMessage msg) throws ServiceException {
+    try {
+      final String index = getConnection().retrieveConnection(ElasticSearchConnection.class).getIndex();
+      final String docType = getType() != null ? StringUtils.defaultIfBlank(msg.resolve(getType()), null) : null;
+      Set<String> requested = new LinkedHashSet<>();
+      for (String id : StringUtils.split(StringUtils.defaultString(getIds().extract(msg)), ",\r\n")) {
+        if (!StringUtils.isBlank(id)) {
+          requested.add(id.trim());
+        }
+      }
+      Map<String, String> sources = new HashMap<>();
+      List<String> toFetch = new ArrayList<>();
+      for (String id : requested) {
+        DocumentCache.Entry cached = getCache() != null ? getCache().get(cacheKey(index, docType, id)) : null;
+        if (cached != null) {
+          sources.put(id, cached.source());
+        }
+        else {
+          toFetch.add(id);
+        }
+      }
+      if (!toFetch.isEmpty()) {
+        fetch(index, docType, toFetch, sources);
+      }
+      StringBuilder json = new StringBuilder("{");
+      for (String id : requested) {
+        String source = sources.get(id);
+        if (source != null) {
+          json.append(json.length() > 1 ? "," : "").append(JsonStreams.quote(id)).append(':').append(source);
+        }
+      }
+      getOutput().insert(json.append('}').toString(), msg);
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapServiceException(e);
+    }
+  }
+
+  private void fetch(String index, String docType, List<String> toFetch, Map<String, String> sources) throws Exception {
+    MultiGetCoalescer.Ticket ticket = coalescer.newTicket();
+    for (String id : toFetch) {
+      ticket.add(index, docType, id);
+    }
+    if (lingerInterval() <= 0) {
+      coalescer.flush();
+    }
+    List<String> failures = new ArrayList<>();
+    List<MultiGetItemResponse> responses = ticket.await(timeout());
+    for (int i = 0; i < responses.size(); i++) {
+      MultiGetItemResponse item = responses.get(i);
+      if (item.isFailed()) {
+        failures.add(String.format("id [%s], message [%s]", toFetch.get(i), item.getFailure().getMessage()));
+        continue;
+      }
+      GetResponse response = item.getResponse();
+      String source = response.isExists() && !response.isSourceEmpty() ? response.getSourceAsString() : null;
+      sources.put(toFetch.get(i), source);
+      if (getCache() != null) {
+        getCache().put(cacheKey(index, docType, toFetch.get(i)), source);
+      }
+    }
+    if (failures.size() > 0) {
+      throw new ServiceException("failure in multi-get execution:\n" + String.join("\n", failures));
+    }
+  }
+
+  private static String cacheKey(String index, String docType, String id) {
+    return index + "/" + StringUtils.defaultString(docType, ALL_TYPES) + "/" + id;
+  }
+
+  @Override
+  protected void initService() throws CoreException {
+    LifecycleHelper.init(getConnection());
+    transportClient = getConnection().retrieveConnection(ElasticSearchConnection.class).borrowClient();
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ManagedThreadFactory(getClass().getSimpleName()));
+    coalescer = new MultiGetCoalescer(transportClient::prepareMultiGet, maxIdsPerRequest(), lingerInterval(), scheduler);
+    if (getCache() != null) {
+      getCache().init();
+      cacheRegisteredAs = ElasticSearchMetrics.register(getCache(), CACHE_TYPE, getUniqueId());
+    }
+  }
+
+  @Override
+  public void start() throws CoreException {
+    LifecycleHelper.start(getConnection());
+  }
+
+  @Override
+  public void stop() {
+    LifecycleHelper.stop(getConnection());
+  }
+
+  @Override
+  protected void closeService() {
+    if (coalescer != null) {
+      coalescer.flush();
+      coalescer = null;
+    }
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    ElasticSearchMetrics.unregister(cacheRegisteredAs);
+    cacheRegisteredAs = null;
+    getConnection().retrieveConnection(ElasticSearchConnection.class).releaseClient(transportClient);
+    transportClient = null;
+    LifecycleHelper.close(getConnection());
+  }
+
+  @Override
+  public void prepare() throws CoreException {
+    LifecycleHelper.prepare(getConnection());
+  }
+
+  public AdaptrisConnection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Set the connection, which should be (or refer to) an {@link ElasticSearchConnection}.
+   *
+   * @param c the connection.
+   */
+  public void setConnection(AdaptrisConnection c) {
+    this.connection = Args.notNull(c, "connection");
+  }
+
+  public DataInputParameter<String> getIds() {
+    return ids;
+  }
+
+  /**
+   * Set where to get the ids from.
+   *
+   * @param p the ids as a comma or newline separated list, defaults to {@link StringPayloadDataInputParameter}.
+   */
+  public void setIds(DataInputParameter<String> p) {
+    this.ids = Args.notNull(p, "ids");
+  }
+
+  public DataOutputParameter<String> getOutput() {
+    return output;
+  }
+
+  /**
+   * Set where to write the documents.
+   *
+   * @param p the output, defaults to {@link StringPayloadDataOutputParameter}.
+   */
+  public void setOutput(DataOutputParameter<String> p) {
+    this.output = Args.notNull(p, "output");
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Set the type of document to look up.
+   *
+   * @param s the type, which may contain {@code %message{}} expressions; if not specified, then all types are searched.
+   */
+  public void setType(String s) {
+    this.type = s;
+  }
+
+  public DocumentCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Set the cache.
+   *
+   * @param c the cache, defaults to null (no caching).
+   */
+  public void setCache(DocumentCache c) {
+    this.cache = c;
+  }
+
+  public Integer getMaxIdsPerRequest() {
+    return maxIdsPerRequest;
+  }
+
+  /**
+   * Set the maximum number of distinct ids in each multi-get request.
+   *
+   * @param i the maximum, defaults to 1000.
+   */
+  public void setMaxIdsPerRequest(Integer i) {
+    this.maxIdsPerRequest = i;
+  }
+
+  int maxIdsPerRequest() {
+    return getMaxIdsPerRequest() != null ? getMaxIdsPerRequest().intValue() : DEFAULT_MAX_IDS;
+  }
+
+  public TimeInterval getLingerInterval() {
+    return lingerInterval;
+  }
+
+  /**
+   * Set how long to wait for other messages' ids before sending a multi-get request.
+   *
+   * @param t the interval, defaults to 0 (each message's ids are sent straight away).
+   */
+  public void setLingerInterval(TimeInterval t) {
+    this.lingerInterval = t;
+  }
+
+  long lingerInterval() {
+    return getLingerInterval() != null ? getLingerInterval().toMilliseconds() : 0;
+  }
+
+  public TimeInterval getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Set how long to wait for the documents.
+   *
+   * @param t the timeout, defaults to 2 minutes.
+   */
+  public void setTimeout(TimeInterval t) {
+    this.timeout = t;
+  }
+
+  long timeout() {
+    return getTimeout() != null ? getTimeout().toMilliseconds() : DEFAULT_TIMEOUT.toMilliseconds();
+  }
+}
@@ -0,0 +1,207 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adaptris.core.ProduceException;
+
+/**
+ * Tracks requests that have been submitted asynchronously on behalf of a single message.
+ *
+ * <p>
+ * At most {@code maxInFlight} requests are outstanding at any one time; {@link #submit(Object)} blocks until a slot becomes free.
+ * Failures are collected as the responses arrive and reported in one go by {@link #await(long)}. If the message fails for some
+ * other reason, {@link #await(long, Exception)} should still be called so that no requests are left running, and none of their
+ * failures are lost.
+ * </p>
+ *
+ * @param <R> the type of request.
+ * @param <T> the type of response.
+ */
+class InFlightRequests<R, T> {
+
+  private static final Logger log = LoggerFactory.getLogger(InFlightRequests.class);
+
+  private final String name;
+  private final int maxInFlight;
+  private final Semaphore permits;
+  private final Executor<R, T> executor;
+  private final Outcome<R, T> outcome;
+  private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+  // The number of failures already reported by submit().
+  private volatile int reported = 0;
+
+  InFlightRequests(String name, int maxInFlight, Executor<R, T> executor, Outcome<R, T> outcome) {
+    this.name = name;
+    this.maxInFlight = maxInFlight;
+    this.permits = new Semaphore(maxInFlight);
+    this.executor = executor;
+    this.outcome = outcome;
+  }
+
+  /**
+   * Track bulk requests; a response that contains failed items is a failure.
+   */
+  static InFlightRequests<BulkRequestBuilder, BulkResponse> bulk(int maxInFlight,
+      Executor<BulkRequestBuilder, BulkResponse> executor) {
+    return new InFlightRequests<>("bulk", maxInFlight, executor, new Outcome<BulkRequestBuilder, BulkResponse>() {
+      @Override
+      public String failure(BulkRequestBuilder request, BulkResponse response) {
+        log.trace("Producing batch of {} actions took {}", response.getItems().length, response.getTook().toString());
+        return response.hasFailures() ? response.buildFailureMessage() : null;
+      }
+
+      @Override
+      public String failure(BulkRequestBuilder request, Throwable e) {
+        return e.getMessage();
+      }
+    });
+  }
+
+  /**
+   * Track single document index requests.
+   */
+  static InFlightRequests<IndexRequestBuilder, IndexResponse> index(int maxInFlight,
+      Executor<IndexRequestBuilder, IndexResponse> executor) {
+    return new InFlightRequests<>("index", maxInFlight, executor, new Outcome<IndexRequestBuilder, IndexResponse>() {
+      @Override
+      public String failure(IndexRequestBuilder request, IndexResponse response) {
+        log.trace("Added document {} version {} to {}", response.getId(), response.getVersion(), response.getIndex());
+        return null;
+      }
+
+      @Override
+      public String failure(IndexRequestBuilder request, Throwable e) {
+        return String.format("id [%s], message [%s]", request.request().id(), e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Submit the request, waiting for a free slot if required.
+   *
+   * @throws ProduceException if an earlier request has already failed; there is no point sending any more.
+   */
+  void submit(final R request) throws ProduceException, InterruptedException {
+    submit(request, executor);
+  }
+
+  /**
+   * Submit the request using the specified executor, waiting for a free slot if required.
+   *
+   * @throws ProduceException if an earlier request has already failed; there is no point sending any more.
+   */
+  void submit(final R request, Executor<R, T> executor) throws ProduceException, InterruptedException {
+    permits.acquire();
+    if (failures.size() > 0) {
+      permits.release();
+      String message = failureMessage(0);
+      reported = failures.size();
+      throw new ProduceException(message);
+    }
+    try {
+      executor.execute(request, new ActionListener<T>() {
+        @Override
+        public void onResponse(T response) {
+          try {
+            String failure = outcome.failure(request, response);
+            if (failure != null) {
+              failures.add(failure);
+            }
+          }
+          finally {
+            permits.release();
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          try {
+            failures.add(outcome.failure(request, e));
+          }
+          finally {
+            permits.release();
+          }
+        }
+      });
+    }
+    catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Wait for all outstanding requests to complete.
+   *
+   * @param timeout the maximum time to wait in milliseconds.
+   * @throws ProduceException if any of the requests failed, or we timed out.
+   */
+  void await(long timeout) throws ProduceException, InterruptedException {
+    if (!permits.tryAcquire(maxInFlight, timeout, TimeUnit.MILLISECONDS)) {
+      throw new ProduceException("Timed out waiting for outstanding " + name + " requests");
+    }
+    permits.release(maxInFlight);
+    if (failures.size() > reported) {
+      throw new ProduceException(failureMessage(reported));
+    }
+  }
+
+  /**
+   * Wait for all outstanding requests to complete, from a {@code finally} block.
+   *
+   * @param timeout the maximum time to wait in milliseconds.
+   * @param cause the exception that is already being thrown, or null if there isn't one.
+   * @throws ProduceException if there is no {@code cause}, and any of the requests failed, or we timed out; otherwise those
+   *           failures are added to {@code cause} as suppressed exceptions, so that they don't replace it.
+   */
+  void await(long timeout, Exception cause) throws ProduceException, InterruptedException {
+    if (cause == null) {
+      await(timeout);
+      return;
+    }
+    try {
+      await(timeout);
+    }
+    catch (ProduceException | InterruptedException e) {
+      cause.addSuppressed(e);
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private String failureMessage(int from) {
+    synchronized (failures) {
+      return String.join(System.lineSeparator(), failures.subList(from, failures.size()));
+    }
+  }
+
+  @FunctionalInterface
+  interface Executor<R, T> {
+    void execute(R request, ActionListener<T> listener);
+  }
+
+  /**
+   * Decides whether each request failed, and describes the failure.
+   */
+  interface Outcome<R, T> {
+    /**
+     * @return the failure message, or null if the request succeeded.
+     */
+    String failure(R request, T response);
+
+    String failure(R request, Throwable e);
+  }
+}
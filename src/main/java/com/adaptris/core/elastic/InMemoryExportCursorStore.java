@@ -0,0 +1,41 @@
+package com.adaptris.core.elastic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Keeps export cursors in memory.
+ *
+ * <p>
+ * A partition that fails part way through will resume from where it stopped on the next poll, but the cursors are lost when the
+ * adapter is restarted.
+ * </p>
+ *
+ * @config elasticsearch-in-memory-export-cursor-store
+ */
+@XStreamAlias("elasticsearch-in-memory-export-cursor-store")
+public class InMemoryExportCursorStore implements ExportCursorStore {
+
+  private transient Map<String, String> cursors = new ConcurrentHashMap<>();
+
+  public InMemoryExportCursorStore() {
+
+  }
+
+  @Override
+  public String load(String partition) {
+    return cursors.get(partition);
+  }
+
+  @Override
+  public void save(String partition, String cursor) {
+    cursors.put(partition, cursor);
+  }
+
+  @Override
+  public void clear(String partition) {
+    cursors.remove(partition);
+  }
+}
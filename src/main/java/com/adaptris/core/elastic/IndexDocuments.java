@@ -1,16 +1,25 @@
 package com.adaptris.core.elastic;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.transport.TransportClient;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.CoreException;
 import com.adaptris.core.ProduceDestination;
 import com.adaptris.core.ProduceException;
 import com.adaptris.core.util.CloseableIterable;
 import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.TimeInterval;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
 /**
@@ -18,7 +27,19 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * 
  * <p>
  * {@link ProduceDestination#getDestination(AdaptrisMessage)} should return the type of document that we are submitting to into
- * ElasticSearch; the {@code index} is taken from the underlying {@link ElasticSearchConnection}.
+ * ElasticSearch; the {@code index} is taken from the underlying {@link ElasticSearchConnection}. If an {@link IndexResolver} is
+ * configured, then the index and type can be resolved for each document instead; e.g. {@link DatePatternIndexResolver} for rolling
+ * time-based indices. Each resolved index is checked (and created if {@link #setCreateMissingIndices(Boolean)} is true) the first
+ * time it is seen.
+ * </p>
+ * <p>
+ * Documents are routed to a shard by their routing value if the {@link ElasticDocumentBuilder} provides one (e.g.
+ * {@link StreamingJsonDocumentBuilder#setRoutingPointer(String)}), or else their parent id, or else their unique-id. The routing
+ * value and parent id can also be taken from metadata, for documents that don't have their own.
+ * </p>
+ * <p>
+ * If the producer has a unique-id, then its metrics are available via JMX as
+ * {@code com.adaptris:type=ElasticSearchProducerMetrics,id=<unique-id>}; see {@link ElasticSearchMetricsMXBean}.
  * </p>
  * 
  * @author lchan
@@ -28,13 +49,40 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 @XStreamAlias("elasticsearch-index-document")
 public class IndexDocuments extends ElasticSearchProducer {
 
+  private static final TimeInterval DEFAULT_INDEX_CHECK_INTERVAL = new TimeInterval(5L, TimeUnit.MINUTES);
+
   protected transient TransportClient transportClient = null;
+  protected transient ElasticSearchMetrics metrics = new ElasticSearchMetrics();
+  private transient KnownIndices knownIndices = new KnownIndices(false, 0);
 
   @Valid
   @NotNull
   @AutoPopulated
   private ElasticDocumentBuilder documentBuilder;
 
+  @AdvancedConfig
+  @Min(0)
+  @InputFieldDefault(value = "0")
+  private Integer concurrentRequests;
+
+  @AdvancedConfig
+  @Valid
+  private IndexResolver indexResolver;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean createMissingIndices;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval indexCheckInterval;
+
+  @AdvancedConfig
+  private String routingMetadataKey;
+
+  @AdvancedConfig
+  private String parentMetadataKey;
+
   public IndexDocuments() {
     setDocumentBuilder(new SimpleDocumentBuilder());
   }
@@ -50,11 +98,41 @@ public class IndexDocuments extends ElasticSearchProducer {
     try {
       final String type = destination.getDestination(msg);
       final String index = retrieveConnection(ElasticSearchConnection.class).getIndex();
+      InFlightRequests<IndexRequestBuilder, IndexResponse> inFlight = concurrentRequests() > 0
+          ? InFlightRequests.index(concurrentRequests(), this::execute)
+          : null;
+      Exception failure = null;
       try (CloseableIterable<DocumentWrapper> docs = ensureCloseable(documentBuilder.build(msg))) {
-        docs.forEach(e -> {
-          IndexResponse response = transportClient.prepareIndex(index, type, e.uniqueId()).setSource(e.content()).get();
-          log.trace("Added document {} version {} to {}", response.getId(), response.getVersion(), index);
-        });
+        for (DocumentWrapper doc : docs) {
+          DocumentWrapper e = withRouting(msg, doc);
+          IndexRequestBuilder request = transportClient
+              .prepareIndex(resolveIndex(msg, e, index), resolveType(msg, e, type), e.uniqueId()).setSource(e.content())
+              .setRouting(e.routing()).setParent(e.parent());
+          if (inFlight != null) {
+            inFlight.submit(request);
+            continue;
+          }
+          long started = metrics.requestStarted(1, e.content().bytes().length());
+          IndexResponse response;
+          try {
+            response = request.get();
+          }
+          catch (RuntimeException ex) {
+            metrics.requestFailed();
+            throw ex;
+          }
+          metrics.requestCompleted(started, 1, -1);
+          log.trace("Added document {} version {} to {}", response.getId(), response.getVersion(), response.getIndex());
+        }
+      }
+      catch (Exception e) {
+        failure = e;
+        throw e;
+      }
+      finally {
+        if (inFlight != null) {
+          inFlight.await(timeout, failure);
+        }
       }
     }
     catch (Exception e) {
@@ -63,16 +141,74 @@ public class IndexDocuments extends ElasticSearchProducer {
     return msg;
   }
 
+  /**
+   * Resolve the index for the document using {@link #getIndexResolver()}, making sure that it exists.
+   */
+  protected String resolveIndex(AdaptrisMessage msg, DocumentWrapper doc, String defaultIndex) throws ProduceException {
+    if (getIndexResolver() == null) {
+      return defaultIndex;
+    }
+    String index = StringUtils.defaultIfBlank(getIndexResolver().resolveIndex(msg, doc), defaultIndex);
+    if (!index.equals(defaultIndex)) {
+      knownIndices.ensureExists(transportClient, index);
+    }
+    return index;
+  }
+
+  /**
+   * Resolve the type for the document using {@link #getIndexResolver()}.
+   */
+  protected String resolveType(AdaptrisMessage msg, DocumentWrapper doc, String defaultType) throws ProduceException {
+    if (getIndexResolver() == null) {
+      return defaultType;
+    }
+    return StringUtils.defaultIfBlank(getIndexResolver().resolveType(msg, doc), defaultType);
+  }
+
+  /**
+   * Apply the routing value and parent id from metadata, if the document doesn't have its own.
+   */
+  protected DocumentWrapper withRouting(AdaptrisMessage msg, DocumentWrapper doc) {
+    return doc.withDefaultRouting(metadataValue(msg, getRoutingMetadataKey()), metadataValue(msg, getParentMetadataKey()));
+  }
+
+  private static String metadataValue(AdaptrisMessage msg, String key) {
+    return key != null ? StringUtils.defaultIfBlank(msg.getMetadataValue(key), null) : null;
+  }
+
+  void execute(IndexRequestBuilder request, ActionListener<IndexResponse> listener) {
+    final long started = metrics.requestStarted(1, request.request().source().length());
+    request.execute(new ActionListener<IndexResponse>() {
+      @Override
+      public void onResponse(IndexResponse response) {
+        metrics.requestCompleted(started, 1, -1);
+        listener.onResponse(response);
+      }
+
+      @Override
+      public void onFailure(Throwable e) {
+        metrics.requestFailed();
+        listener.onFailure(e);
+      }
+    });
+  }
+
   @Override
   public void close() {
     super.close();
-    retrieveConnection(ElasticSearchConnection.class).closeQuietly(transportClient);
+    metrics.unregister();
+    retrieveConnection(ElasticSearchConnection.class).releaseClient(transportClient);
+    transportClient = null;
   }
 
   @Override
   public void init() throws CoreException {
     super.init();
-    transportClient = retrieveConnection(ElasticSearchConnection.class).createClient();
+    ElasticSearchConnection connection = retrieveConnection(ElasticSearchConnection.class);
+    transportClient = connection.borrowClient();
+    metrics = new ElasticSearchMetrics(connection.metrics());
+    metrics.register(ElasticSearchMetrics.PRODUCER_TYPE, getUniqueId());
+    knownIndices = new KnownIndices(createMissingIndices(), indexCheckInterval());
   }
 
   /**
@@ -89,6 +225,112 @@ public class IndexDocuments extends ElasticSearchProducer {
     this.documentBuilder = b;
   }
 
+  public Integer getConcurrentRequests() {
+    return concurrentRequests;
+  }
+
+  /**
+   * Set the number of index requests that can be outstanding at any one time.
+   * <p>
+   * If greater than 0, then each document is submitted asynchronously and the next document is built while earlier documents are
+   * still being indexed; the message is only produced once every document has been acknowledged, and any failures are reported once
+   * all the outstanding requests have completed. This has no effect on {@link BulkIndexDocuments}, which has
+   * {@link BulkIndexDocuments#setConcurrentBulkRequests(Integer)} instead.
+   * </p>
+   * 
+   * @param i the number of concurrent requests, defaults to 0 (each document is indexed synchronously).
+   */
+  public void setConcurrentRequests(Integer i) {
+    this.concurrentRequests = i;
+  }
+
+  int concurrentRequests() {
+    return getConcurrentRequests() != null ? getConcurrentRequests().intValue() : 0;
+  }
+
+  public IndexResolver getIndexResolver() {
+    return indexResolver;
+  }
+
+  /**
+   * Set how the index and type are resolved for each document.
+   * 
+   * @param r the resolver; if not specified then every document is written to the connection's index, with the type from the
+   *          produce destination.
+   */
+  public void setIndexResolver(IndexResolver r) {
+    this.indexResolver = r;
+  }
+
+  public Boolean getCreateMissingIndices() {
+    return createMissingIndices;
+  }
+
+  /**
+   * Whether to create indices resolved by {@link #setIndexResolver(IndexResolver)} that don't exist.
+   * <p>
+   * The indices are created with the cluster defaults (and any matching index templates). If false, then writing to a missing
+   * index depends on the cluster's {@code action.auto_create_index} setting.
+   * </p>
+   * 
+   * @param b true to create missing indices, defaults to false.
+   */
+  public void setCreateMissingIndices(Boolean b) {
+    this.createMissingIndices = b;
+  }
+
+  boolean createMissingIndices() {
+    return getCreateMissingIndices() != null ? getCreateMissingIndices().booleanValue() : false;
+  }
+
+  public TimeInterval getIndexCheckInterval() {
+    return indexCheckInterval;
+  }
+
+  /**
+   * Set how long to remember whether an index resolved by {@link #setIndexResolver(IndexResolver)} exists.
+   * <p>
+   * Each index is checked (and created if {@link #setCreateMissingIndices(Boolean)} is true) the first time it is seen, and again
+   * once this interval has passed; so an index that is deleted in the meantime is only recreated after the next check.
+   * </p>
+   * 
+   * @param t the interval, defaults to 5 minutes.
+   */
+  public void setIndexCheckInterval(TimeInterval t) {
+    this.indexCheckInterval = t;
+  }
+
+  long indexCheckInterval() {
+    return getIndexCheckInterval() != null ? getIndexCheckInterval().toMilliseconds()
+        : DEFAULT_INDEX_CHECK_INTERVAL.toMilliseconds();
+  }
+
+  public String getRoutingMetadataKey() {
+    return routingMetadataKey;
+  }
+
+  /**
+   * Set the metadata key that contains the routing value for documents that don't have their own.
+   * 
+   * @param s the metadata key; if not specified, documents are routed by their parent or unique-id.
+   */
+  public void setRoutingMetadataKey(String s) {
+    this.routingMetadataKey = s;
+  }
+
+  public String getParentMetadataKey() {
+    return parentMetadataKey;
+  }
+
+  /**
+   * Set the metadata key that contains the parent id for documents that don't have their own.
+   * 
+   * @param s the metadata key; if not specified, only the document builder can supply a parent.
+   */
+  public void setParentMetadataKey(String s) {
+    this.parentMetadataKey = s;
+  }
+
 
 
 }
@@ -0,0 +1,34 @@
+package com.adaptris.core.elastic;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ProduceException;
+
+/**
+ * Works out which index (and optionally which type) each document should be written to.
+ *
+ * <p>
+ * If a resolver returns null, then the producer falls back to the {@code index} from the {@link ElasticSearchConnection}, or the
+ * type from the produce destination.
+ * </p>
+ */
+public interface IndexResolver {
+
+  /**
+   * Resolve the index for the document.
+   *
+   * @return the index, or null to use the default.
+   */
+  String resolveIndex(AdaptrisMessage msg, DocumentWrapper document) throws ProduceException;
+
+  /**
+   * Resolve the type for the document.
+   * <p>
+   * The default implementation returns null.
+   * </p>
+   *
+   * @return the type, or null to use the default.
+   */
+  default String resolveType(AdaptrisMessage msg, DocumentWrapper document) throws ProduceException {
+    return null;
+  }
+}
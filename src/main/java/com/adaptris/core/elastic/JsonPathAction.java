@@ -1,21 +1,46 @@
 package com.adaptris.core.elastic;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.validation.constraints.NotNull;
 
+import org.elasticsearch.common.bytes.BytesReference;
+
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.ServiceException;
+import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.ReadContext;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
+/**
+ * Extract the action from the document using a JSON path.
+ *
+ * <p>
+ * The JSON path is compiled once. If it is a simple path of field names (e.g. {@code $.action} or {@code $.delta.status}) then
+ * the document is scanned as a stream of tokens, stopping at the first match, rather than being parsed in its entirety. Other paths
+ * are evaluated against the entire document.
+ * </p>
+ *
+ * @config elasticsearch-jsonpath-action
+ */
 @XStreamAlias("elasticsearch-jsonpath-action")
 public class JsonPathAction implements ActionExtractor {
 
+  private static final Pattern SIMPLE_PATH = Pattern.compile("^\\$(\\.[A-Za-z0-9_\\-]+)+$");
+  private static final String CHARSET = "UTF-8";
+
   @NotNull
   private String jsonPath;
-  
+
+  private transient JsonPath compiledPath;
+  private transient List<String> fieldNames;
+
   public JsonPathAction() {
     setJsonPath("$.action");
   }
@@ -23,9 +48,16 @@ public class JsonPathAction implements ActionExtractor {
   @Override
   public String extract(AdaptrisMessage msg, DocumentWrapper document) throws ServiceException {
     try {
-      String content = document.content().string();
-      ReadContext context = JsonPath.parse(content);
-      return context.read(getJsonPath());
+      BytesReference content = document.content().bytes();
+      if (fieldNames().size() > 0) {
+        JsonStreams.ScanResult result = JsonStreams.scan(content, fieldNames());
+        if (result.found()) {
+          return result.value();
+        }
+      }
+      try (InputStream in = content.streamInput()) {
+        return compiledPath().read(in, CHARSET, Configuration.defaultConfiguration());
+      }
     } catch (IOException e) {
       throw new ServiceException(e);
     }
@@ -37,6 +69,33 @@ public class JsonPathAction implements ActionExtractor {
 
   public void setJsonPath(String jsonPath) {
     this.jsonPath = jsonPath;
+    compiledPath = null;
+    fieldNames = null;
+  }
+
+  private JsonPath compiledPath() {
+    if (compiledPath == null) {
+      compiledPath = JsonPath.compile(getJsonPath());
+    }
+    return compiledPath;
   }
 
+  List<String> fieldNames() {
+    if (fieldNames == null) {
+      fieldNames = simplePath(getJsonPath());
+    }
+    return fieldNames;
+  }
+
+  private static List<String> simplePath(String path) {
+    Matcher m = SIMPLE_PATH.matcher(path != null ? path : "");
+    if (!m.matches()) {
+      return Collections.emptyList();
+    }
+    List<String> result = new ArrayList<>();
+    for (String name : path.substring(2).split("\\.")) {
+      result.add(name);
+    }
+    return Collections.unmodifiableList(result);
+  }
 }
@@ -0,0 +1,212 @@
+package com.adaptris.core.elastic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+/**
+ * Helpers for reading and writing JSON directly from/to byte buffers and streams, rather than via an intermediate {@code String}.
+ */
+final class JsonStreams {
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private JsonStreams() {
+  }
+
+  /**
+   * Write the contents of the reader as a quoted, escaped JSON string.
+   *
+   * <p>
+   * The reader is consumed in small chunks, so the only copy of the data is the one written to the output stream.
+   * </p>
+   */
+  static void writeString(Reader in, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new NonClosingOutputStream(out), StandardCharsets.UTF_8), BUFFER_SIZE);
+    char[] buf = new char[BUFFER_SIZE];
+    writer.write('"');
+    int read;
+    while ((read = in.read(buf)) != -1) {
+      for (int i = 0; i < read; i++) {
+        writeEscaped(buf[i], writer);
+      }
+    }
+    writer.write('"');
+    writer.close();
+  }
+
+  /**
+   * Quote and escape a (short) string as a JSON string; null becomes {@code null}.
+   */
+  static String quote(String s) {
+    if (s == null) {
+      return "null";
+    }
+    StringWriter w = new StringWriter(s.length() + 2);
+    try {
+      w.write('"');
+      for (int i = 0; i < s.length(); i++) {
+        writeEscaped(s.charAt(i), w);
+      }
+      w.write('"');
+    }
+    catch (IOException e) {
+      // StringWriter never throws.
+    }
+    return w.toString();
+  }
+
+  /**
+   * Write the contents of the reference less its trailing character; used to re-open a JSON object that has already been closed.
+   */
+  static void writeWithoutLastChar(BytesReference ref, OutputStream out) throws IOException {
+    ref.slice(0, ref.length() - 1).writeTo(out);
+  }
+
+  /**
+   * Wrap output that already contains a complete JSON document as an {@link XContentBuilder}.
+   */
+  static XContentBuilder asBuilder(BytesStreamOutput out) throws IOException {
+    return new XContentBuilder(JsonXContent.jsonXContent, out);
+  }
+
+  /**
+   * Scan a JSON object for the value at the specified path of field names, stopping at the first match.
+   * <p>
+   * Only scalar values are matched; if the path resolves to an object or an array then it is treated as not found.
+   * </p>
+   */
+  static ScanResult scan(BytesReference content, List<String> names) throws IOException {
+    try (XContentParser parser = XContentHelper.createParser(content)) {
+      if (parser.nextToken() != Token.START_OBJECT) {
+        return ScanResult.NOT_FOUND;
+      }
+      return scanObject(parser, names, 0);
+    }
+  }
+
+  // The parser is positioned at the start of an object; look for names[depth] amongst its fields.
+  private static ScanResult scanObject(XContentParser parser, List<String> names, int depth) throws IOException {
+    while (parser.nextToken() == Token.FIELD_NAME) {
+      String name = parser.currentName();
+      Token token = parser.nextToken();
+      if (!names.get(depth).equals(name)) {
+        parser.skipChildren();
+        continue;
+      }
+      if (depth == names.size() - 1) {
+        if (token == Token.VALUE_NULL) {
+          return new ScanResult(null);
+        }
+        return token.isValue() ? new ScanResult(parser.text()) : ScanResult.NOT_FOUND;
+      }
+      if (token == Token.START_OBJECT) {
+        return scanObject(parser, names, depth + 1);
+      }
+      return ScanResult.NOT_FOUND;
+    }
+    return ScanResult.NOT_FOUND;
+  }
+
+  private static void writeEscaped(char c, Writer w) throws IOException {
+    switch (c) {
+    case '"':
+      w.write("\\\"");
+      break;
+    case '\\':
+      w.write("\\\\");
+      break;
+    case '\n':
+      w.write("\\n");
+      break;
+    case '\r':
+      w.write("\\r");
+      break;
+    case '\t':
+      w.write("\\t");
+      break;
+    case '\b':
+      w.write("\\b");
+      break;
+    case '\f':
+      w.write("\\f");
+      break;
+    default:
+      if (c < 0x20) {
+        w.write("\\u00");
+        w.write(HEX[(c >> 4) & 0xF]);
+        w.write(HEX[c & 0xF]);
+      }
+      else {
+        w.write(c);
+      }
+    }
+  }
+
+  private static class NonClosingOutputStream extends OutputStream {
+    private final OutputStream out;
+
+    NonClosingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  static class ScanResult {
+    static final ScanResult NOT_FOUND = new ScanResult();
+    private final boolean found;
+    private final String value;
+
+    private ScanResult() {
+      found = false;
+      value = null;
+    }
+
+    ScanResult(String value) {
+      found = true;
+      this.value = value;
+    }
+
+    boolean found() {
+      return found;
+    }
+
+    String value() {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.adaptris.core.elastic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers which indices exist, so that resolved indices are only checked (and optionally created) periodically rather than for
+ * every document.
+ */
+class KnownIndices {
+
+  private static final Logger log = LoggerFactory.getLogger(KnownIndices.class);
+
+  // The time each index was last checked, keyed by index; whether it exists or not.
+  private final Map<String, Long> checked = new ConcurrentHashMap<>();
+  private final boolean create;
+  private final long expiry;
+
+  /**
+   * @param create whether to create missing indices.
+   * @param expiry how long (in milliseconds) the result of each check is remembered.
+   */
+  KnownIndices(boolean create, long expiry) {
+    this.create = create;
+    this.expiry = expiry;
+  }
+
+  /**
+   * Check that the index (or alias) exists, creating it if required.
+   * <p>
+   * The result is remembered until it expires, whether the index exists or not; so indices that are deleted, or created by
+   * someone else, are only noticed when it is next checked. If the index doesn't exist and it isn't being created, then
+   * ElasticSearch decides what happens (depending on {@code action.auto_create_index}) when the document is written.
+   * </p>
+   */
+  void ensureExists(Client client, String index) {
+    long now = System.currentTimeMillis();
+    Long lastChecked = checked.get(index);
+    if (lastChecked != null && now - lastChecked.longValue() < expiry) {
+      return;
+    }
+    if (!client.admin().indices().prepareExists(index).get().isExists() && create) {
+      try {
+        client.admin().indices().prepareCreate(index).get();
+        log.trace("Created index {}", index);
+      }
+      catch (IndexAlreadyExistsException e) {
+        // Created by someone else in the meantime.
+      }
+    }
+    checked.put(index, now);
+  }
+
+  void clear() {
+    checked.clear();
+  }
+}
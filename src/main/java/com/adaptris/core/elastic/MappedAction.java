@@ -1,7 +1,12 @@
 package com.adaptris.core.elastic;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.ServiceException;
+import com.adaptris.util.KeyValuePair;
 import com.adaptris.util.KeyValuePairList;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
@@ -10,7 +15,9 @@ public class MappedAction implements ActionExtractor {
 
   private ActionExtractor action;
   private KeyValuePairList mappings;
-  
+
+  private transient Mappings cache;
+
   public MappedAction() {
     setMappings(new KeyValuePairList());
   }
@@ -18,10 +25,36 @@ public class MappedAction implements ActionExtractor {
   @Override
   public String extract(AdaptrisMessage msg, DocumentWrapper document) throws ServiceException {
     String action = getAction().extract(msg, document);
-    String mappedAction = mappings.getValue(action);
+    String mappedAction = mappings().table.get(action);
     return mappedAction != null ? mappedAction : action;
   }
 
+  @Override
+  public DocumentAction extractAction(AdaptrisMessage msg, DocumentWrapper document) throws ServiceException {
+    String action = getAction().extract(msg, document);
+    Mappings m = mappings();
+    // Only ever contains the keys of the mappings + the names of the actions, so no need to bound it.
+    return m.resolved.computeIfAbsent(action, k -> {
+      String mappedAction = m.table.get(k);
+      return DocumentAction.valueOf(mappedAction != null ? mappedAction : k);
+    });
+  }
+
+  @Override
+  public boolean isMessageScoped() {
+    return getAction() != null && getAction().isMessageScoped();
+  }
+
+  // Built on first use, and discarded by setMappings().
+  private Mappings mappings() {
+    Mappings result = cache;
+    if (result == null) {
+      result = new Mappings(getMappings());
+      cache = result;
+    }
+    return result;
+  }
+
   public ActionExtractor getAction() {
     return action;
   }
@@ -34,8 +67,33 @@ public class MappedAction implements ActionExtractor {
     return mappings;
   }
 
+  /**
+   * Set the mappings from the extracted action to the {@link DocumentAction}.
+   * <p>
+   * The mappings are turned into a lookup table when first used; changes made via {@link #getMappings()} after that are ignored
+   * until the mappings are set again.
+   * </p>
+   * 
+   * @param mappings the mappings, where the key is the extracted action and the value is the name of the document action.
+   */
   public void setMappings(KeyValuePairList mappings) {
     this.mappings = mappings;
+    cache = null;
+  }
+
+  /**
+   * The lookup table for the mappings, along with the actions they resolve to.
+   */
+  private static class Mappings {
+    private final Map<String, String> table = new HashMap<>();
+    private final Map<String, DocumentAction> resolved = new ConcurrentHashMap<>();
+
+    Mappings(KeyValuePairList mappings) {
+      for (KeyValuePair kvp : mappings) {
+        // The first one wins, the same as KeyValuePairList#getValue()
+        table.putIfAbsent(kvp.getKey(), kvp.getValue());
+      }
+    }
   }
 
 }
@@ -16,6 +16,11 @@ public class MetadataAction implements ActionExtractor {
     return msg.getMetadataValue(metadataKey());
   }
 
+  @Override
+  public boolean isMessageScoped() {
+    return true;
+  }
+
   public String getMetadataKey() {
     return metadataKey;
   }
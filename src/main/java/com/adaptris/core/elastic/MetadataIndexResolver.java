@@ -0,0 +1,73 @@
+package com.adaptris.core.elastic;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Resolve the index (and optionally the type) from metadata.
+ *
+ * <p>
+ * Every document in the message is written to the same index; this allows a single producer to write to many indices, rather
+ * than needing a producer (and connection) per index. If the metadata key doesn't exist, then the default index or type is used.
+ * </p>
+ *
+ * @config elasticsearch-metadata-index-resolver
+ */
+@XStreamAlias("elasticsearch-metadata-index-resolver")
+public class MetadataIndexResolver implements IndexResolver {
+
+  private String indexMetadataKey;
+
+  private String typeMetadataKey;
+
+  public MetadataIndexResolver() {
+
+  }
+
+  public MetadataIndexResolver(String indexKey) {
+    this();
+    setIndexMetadataKey(indexKey);
+  }
+
+  @Override
+  public String resolveIndex(AdaptrisMessage msg, DocumentWrapper document) {
+    return value(msg, getIndexMetadataKey());
+  }
+
+  @Override
+  public String resolveType(AdaptrisMessage msg, DocumentWrapper document) {
+    return value(msg, getTypeMetadataKey());
+  }
+
+  private static String value(AdaptrisMessage msg, String key) {
+    return key != null ? StringUtils.defaultIfBlank(msg.getMetadataValue(key), null) : null;
+  }
+
+  public String getIndexMetadataKey() {
+    return indexMetadataKey;
+  }
+
+  /**
+   * Set the metadata key containing the index.
+   *
+   * @param s the key; if not specified then the index is taken from the connection.
+   */
+  public void setIndexMetadataKey(String s) {
+    this.indexMetadataKey = s;
+  }
+
+  public String getTypeMetadataKey() {
+    return typeMetadataKey;
+  }
+
+  /**
+   * Set the metadata key containing the type.
+   *
+   * @param s the key; if not specified then the type is taken from the produce destination.
+   */
+  public void setTypeMetadataKey(String s) {
+    this.typeMetadataKey = s;
+  }
+}
@@ -0,0 +1,160 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the ids from many messages into shared multi-get requests.
+ *
+ * <p>
+ * Each message gets a {@link Ticket}, adds its ids to it, and then waits for the multi-get requests that contain them. A request is
+ * sent when it reaches {@code maxIds} distinct ids, once {@code lingerMs} has passed since the first id was added to it, or when
+ * {@link #flush()} is invoked; whichever comes first. An id requested by more than one message in the same window is only fetched
+ * once.
+ * </p>
+ */
+class MultiGetCoalescer {
+
+  private transient Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private final Supplier<MultiGetRequestBuilder> factory;
+  private final int maxIds;
+  private final long lingerMs;
+  private final ScheduledExecutorService scheduler;
+
+  private Batch current;
+
+  MultiGetCoalescer(Supplier<MultiGetRequestBuilder> factory, int maxIds, long lingerMs, ScheduledExecutorService scheduler) {
+    this.factory = factory;
+    this.maxIds = Math.max(1, maxIds);
+    this.lingerMs = lingerMs;
+    this.scheduler = scheduler;
+  }
+
+  Ticket newTicket() {
+    return new Ticket();
+  }
+
+  /**
+   * Send whatever is currently waiting.
+   */
+  void flush() {
+    Batch toSend = null;
+    synchronized (this) {
+      toSend = current;
+      current = null;
+    }
+    send(toSend);
+  }
+
+  private void flush(Batch batch) {
+    synchronized (this) {
+      if (current != batch) {
+        // Already sent because it was full.
+        return;
+      }
+      current = null;
+    }
+    send(batch);
+  }
+
+  // Must hold the lock.
+  private Batch current() {
+    if (current == null) {
+      Batch batch = new Batch(factory.get());
+      current = batch;
+      if (lingerMs > 0) {
+        scheduler.schedule(() -> flush(batch), lingerMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    return current;
+  }
+
+  private void send(Batch batch) {
+    if (batch == null) {
+      return;
+    }
+    log.trace("Sending shared multi-get of {} ids", batch.slots.size());
+    try {
+      batch.request.execute(batch.result);
+    }
+    catch (Exception e) {
+      batch.result.onFailure(e);
+    }
+  }
+
+  private static class Batch {
+    private final MultiGetRequestBuilder request;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final PlainActionFuture<MultiGetResponse> result = PlainActionFuture.newFuture();
+
+    Batch(MultiGetRequestBuilder b) {
+      request = b;
+    }
+  }
+
+  // An id in a batch that belongs to a ticket.
+  private static class Slot {
+    private final Batch batch;
+    private final int item;
+
+    Slot(Batch batch, int item) {
+      this.batch = batch;
+      this.item = item;
+    }
+  }
+
+  /**
+   * The ids for a single message.
+   */
+  class Ticket {
+    private final List<Slot> slots = new ArrayList<>();
+
+    void add(String index, String type, String id) {
+      Batch full = null;
+      synchronized (MultiGetCoalescer.this) {
+        Batch batch = current();
+        String key = index + "/" + type + "/" + id;
+        Integer item = batch.slots.get(key);
+        if (item == null) {
+          item = batch.slots.size();
+          batch.slots.put(key, item);
+          batch.request.add(index, type, id);
+        }
+        slots.add(new Slot(batch, item));
+        if (batch.slots.size() >= maxIds) {
+          full = batch;
+          current = null;
+        }
+      }
+      send(full);
+    }
+
+    /**
+     * Wait for the responses.
+     *
+     * @return the response for each id, in the order they were added.
+     */
+    List<MultiGetItemResponse> await(long timeoutMs) throws Exception {
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      List<MultiGetItemResponse> result = new ArrayList<>(slots.size());
+      for (Slot slot : slots) {
+        MultiGetResponse response = slot.batch.result.actionGet(Math.max(0, deadline - System.currentTimeMillis()));
+        result.add(response.getResponses()[slot.item]);
+      }
+      return result;
+    }
+  }
+}
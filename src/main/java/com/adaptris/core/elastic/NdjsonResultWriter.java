@@ -0,0 +1,105 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.search.SearchHit;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Writes each search hit as a line of newline delimited JSON.
+ *
+ * <p>
+ * By default each line is the {@code _source} of the hit as it was stored, which means the output can be fed straight back into
+ * {@link StreamingJsonDocumentBuilder}; if the source was stored on multiple lines (or isn't JSON), then it is reformatted onto a
+ * single line. If {@link #setIncludeMetadata(Boolean)} is true then each line is instead an object containing {@code _index},
+ * {@code _type}, {@code _id} and {@code _source}.
+ * </p>
+ *
+ * @config elasticsearch-ndjson-result-writer
+ */
+@XStreamAlias("elasticsearch-ndjson-result-writer")
+public class NdjsonResultWriter implements SearchResultWriter {
+
+  private static final byte[] EMPTY_SOURCE = "{}".getBytes(StandardCharsets.UTF_8);
+
+  @InputFieldDefault(value = "false")
+  private Boolean includeMetadata;
+
+  public NdjsonResultWriter() {
+
+  }
+
+  @Override
+  public Results start(final OutputStream out) throws IOException {
+    return new Results() {
+      @Override
+      public void write(SearchHit hit) throws IOException {
+        if (includeMetadata()) {
+          out.write(String.format("{\"_index\":%s,\"_type\":%s,\"_id\":%s,\"_source\":", JsonStreams.quote(hit.getIndex()),
+              JsonStreams.quote(hit.getType()), JsonStreams.quote(hit.getId())).getBytes(StandardCharsets.UTF_8));
+          writeSource(hit, out);
+          out.write('}');
+        }
+        else {
+          writeSource(hit, out);
+        }
+        out.write('\n');
+      }
+
+      @Override
+      public void close() throws IOException {
+        out.flush();
+      }
+    };
+  }
+
+  private static void writeSource(SearchHit hit, OutputStream out) throws IOException {
+    BytesReference source = hit.sourceRef();
+    if (source == null || source.length() == 0) {
+      out.write(EMPTY_SOURCE);
+    }
+    else if (isSingleLineJson(source)) {
+      source.writeTo(out);
+    }
+    else {
+      out.write(XContentHelper.convertToJson(source, true).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static boolean isSingleLineJson(BytesReference source) {
+    if (source.get(0) != '{') {
+      // SMILE / CBOR / YAML
+      return false;
+    }
+    for (int i = 0; i < source.length(); i++) {
+      byte b = source.get(i);
+      if (b == '\n' || b == '\r') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Boolean getIncludeMetadata() {
+    return includeMetadata;
+  }
+
+  /**
+   * Whether to wrap each source with the index, type and id of the hit.
+   *
+   * @param b true to include the metadata, defaults to false.
+   */
+  public void setIncludeMetadata(Boolean b) {
+    this.includeMetadata = b;
+  }
+
+  boolean includeMetadata() {
+    return getIncludeMetadata() != null ? getIncludeMetadata().booleanValue() : false;
+  }
+}
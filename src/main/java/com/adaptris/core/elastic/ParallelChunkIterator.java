@@ -0,0 +1,142 @@
+package com.adaptris.core.elastic;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.adaptris.core.util.ManagedThreadFactory;
+
+/**
+ * Iterator that transforms the elements of another iterator in parallel, while preserving the original order.
+ *
+ * <p>
+ * A single reader thread pulls elements from the source in chunks, and submits each chunk to a {@link ForkJoinPool} for
+ * transformation; the results are handed back in the original order. The number of chunks that are outstanding at any one time is
+ * bounded, so memory usage is bounded regardless of the size of the source.
+ * </p>
+ */
+class ParallelChunkIterator<I, O> implements Iterator<O>, Closeable {
+
+  private static final long READER_SHUTDOWN_MS = TimeUnit.SECONDS.toMillis(10);
+
+  private final Future<List<O>> endOfData = CompletableFuture.completedFuture(Collections.<O>emptyList());
+
+  private final Iterator<I> source;
+  private final Function<I, O> transform;
+  private final int chunkSize;
+  private final ForkJoinPool pool;
+  private final BlockingQueue<Future<List<O>>> chunks;
+  private final Thread reader;
+
+  private Iterator<O> current = Collections.emptyIterator();
+  private boolean finished = false;
+
+  ParallelChunkIterator(Iterator<I> source, Function<I, O> transform, int parallelism, int chunkSize) {
+    this.source = source;
+    this.transform = transform;
+    this.chunkSize = chunkSize;
+    pool = new ForkJoinPool(parallelism);
+    chunks = new ArrayBlockingQueue<>(parallelism * 2);
+    reader = new ManagedThreadFactory(getClass().getSimpleName()).newThread(() -> read());
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (finished) {
+        return false;
+      }
+      current = nextChunk().iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public O next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  @Override
+  public void close() {
+    finished = true;
+    reader.interrupt();
+    pool.shutdownNow();
+    chunks.clear();
+    try {
+      reader.join(READER_SHUTDOWN_MS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private List<O> nextChunk() {
+    try {
+      Future<List<O>> chunk = chunks.take();
+      if (chunk == endOfData) {
+        finished = true;
+      }
+      return chunk.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    catch (ExecutionException e) {
+      finished = true;
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private void read() {
+    try {
+      while (source.hasNext() && !Thread.currentThread().isInterrupted()) {
+        final List<I> chunk = new ArrayList<>(chunkSize);
+        while (source.hasNext() && chunk.size() < chunkSize) {
+          chunk.add(source.next());
+        }
+        chunks.put(pool.submit(() -> transform(chunk)));
+      }
+      chunks.put(endOfData);
+    }
+    catch (InterruptedException e) {
+      // Closed before we reached the end, so no-one is interested any more.
+    }
+    catch (Exception e) {
+      CompletableFuture<List<O>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      try {
+        chunks.put(failed);
+      }
+      catch (InterruptedException ignored) {
+      }
+    }
+  }
+
+  private List<O> transform(List<I> chunk) {
+    List<O> result = new ArrayList<>(chunk.size());
+    for (I input : chunk) {
+      result.add(transform.apply(input));
+    }
+    return result;
+  }
+}
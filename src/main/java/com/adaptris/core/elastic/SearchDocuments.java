@@ -0,0 +1,244 @@
+package com.adaptris.core.elastic;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.search.SearchHit;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.AutoPopulated;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.annotation.InputFieldHint;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ProduceDestination;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Search ElasticSearch, writing all the hits into the message.
+ *
+ * <p>
+ * The search is a standard ElasticSearch search request body (e.g. <code>{"query": {"match_all": {}}}</code>, optionally with
+ * {@code _source} filtering); it is either taken from {@link #setQuery(String)} (which can contain {@code %message{}} expressions)
+ * or, if that is not configured, from the message payload. The results are paged through using the scroll API,
+ * {@link #setPageSize(Integer)} hits at a time, and each page is written to the message by the configured
+ * {@link SearchResultWriter} before the next page is requested; so the memory required is bounded by the page size, not the
+ * number of hits. The pages are written to a temporary file, which only replaces the payload once every page has been written; if
+ * the search fails part way through, the payload is left unchanged. Unless the search specifies its own {@code sort}, hits are returned in {@code _doc} order, which is the most
+ * efficient order for scrolling.
+ * </p>
+ * <p>
+ * {@link ProduceDestination#getDestination(AdaptrisMessage)} can optionally return the type of document to search for (or a comma
+ * separated list of types); if it returns null then all types are searched. The {@code index} is taken from the underlying
+ * {@link ElasticSearchConnection}. The timeout applies to each page, rather than the search as a whole.
+ * </p>
+ *
+ * @config elasticsearch-search-documents
+ */
+@XStreamAlias("elasticsearch-search-documents")
+public class SearchDocuments extends ElasticSearchProducer {
+
+  private static final int DEFAULT_PAGE_SIZE = 1000;
+  private static final TimeInterval DEFAULT_KEEP_ALIVE = new TimeInterval(1L, TimeUnit.MINUTES);
+
+  protected transient TransportClient transportClient = null;
+
+  @InputFieldHint(expression = true)
+  private String query;
+
+  @NotNull
+  @AutoPopulated
+  @Valid
+  private SearchResultWriter resultWriter;
+
+  @AdvancedConfig
+  @Min(1)
+  @InputFieldDefault(value = "1000")
+  private Integer pageSize;
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval scrollKeepAlive;
+
+  public SearchDocuments() {
+    setResultWriter(new NdjsonResultWriter());
+  }
+
+  @Override
+  public void produce(AdaptrisMessage msg, ProduceDestination destination) throws ProduceException {
+    request(msg, destination, defaultTimeout());
+  }
+
+  @Override
+  protected AdaptrisMessage doRequest(AdaptrisMessage msg, ProduceDestination destination, long timeout) throws ProduceException {
+    String scrollId = null;
+    File buffer = null;
+    try {
+      final String index = retrieveConnection(ElasticSearchConnection.class).getIndex();
+      final TimeValue keepAlive = TimeValue.timeValueMillis(scrollKeepAlive());
+      SearchRequestBuilder search = transportClient.prepareSearch(index).setScroll(keepAlive).setSource(searchSource(msg));
+      String types = destination != null ? destination.getDestination(msg) : null;
+      if (!StringUtils.isBlank(types)) {
+        search.setTypes(StringUtils.split(types, ','));
+      }
+      long count = 0;
+      SearchResponse response = search.get(TimeValue.timeValueMillis(timeout));
+      scrollId = response.getScrollId();
+      buffer = File.createTempFile(getClass().getSimpleName(), null);
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(buffer));
+          SearchResultWriter.Results results = getResultWriter().start(out)) {
+        while (response.getHits().getHits().length > 0) {
+          for (SearchHit hit : response.getHits().getHits()) {
+            results.write(hit);
+          }
+          count += response.getHits().getHits().length;
+          log.trace("Written {} of {} hits from {}", count, response.getHits().getTotalHits(), index);
+          response = transportClient.prepareSearchScroll(scrollId).setScroll(keepAlive).get(TimeValue.timeValueMillis(timeout));
+          scrollId = response.getScrollId();
+        }
+      }
+      try (InputStream in = new FileInputStream(buffer); OutputStream out = msg.getOutputStream()) {
+        IOUtils.copy(in, out);
+      }
+      log.debug("Search of {} returned {} hits", index, count);
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapProduceException(e);
+    }
+    finally {
+      clearScroll(scrollId);
+      FileUtils.deleteQuietly(buffer);
+    }
+    return msg;
+  }
+
+  private Map<String, Object> searchSource(AdaptrisMessage msg) throws Exception {
+    String source = null;
+    if (!StringUtils.isBlank(getQuery())) {
+      source = msg.resolve(getQuery());
+    }
+    else {
+      try (InputStream in = msg.getInputStream()) {
+        source = IOUtils.toString(in, msg.getContentEncoding() != null ? msg.getContentEncoding() : "UTF-8");
+      }
+    }
+    Map<String, Object> result = StringUtils.isBlank(source) ? new HashMap<String, Object>()
+        : XContentHelper.convertToMap(new BytesArray(source), true).v2();
+    if (!result.containsKey("size")) {
+      result.put("size", pageSize());
+    }
+    if (!result.containsKey("sort")) {
+      result.put("sort", Collections.singletonList("_doc"));
+    }
+    return result;
+  }
+
+  private void clearScroll(String scrollId) {
+    if (scrollId == null || transportClient == null) {
+      return;
+    }
+    try {
+      transportClient.prepareClearScroll().addScrollId(scrollId).get();
+    }
+    catch (Exception e) {
+      log.trace("Failed to clear scroll: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void init() throws CoreException {
+    super.init();
+    transportClient = retrieveConnection(ElasticSearchConnection.class).borrowClient();
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    retrieveConnection(ElasticSearchConnection.class).releaseClient(transportClient);
+    transportClient = null;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Set the search request body.
+   *
+   * @param s the search, which may contain {@code %message{}} expressions; if not specified then the payload is used.
+   */
+  public void setQuery(String s) {
+    this.query = s;
+  }
+
+  public SearchResultWriter getResultWriter() {
+    return resultWriter;
+  }
+
+  /**
+   * Set how the hits are written to the message.
+   *
+   * @param w the writer, defaults to {@link NdjsonResultWriter}.
+   */
+  public void setResultWriter(SearchResultWriter w) {
+    this.resultWriter = w;
+  }
+
+  public Integer getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Set the number of hits in each page; ignored if the search itself specifies a {@code size}.
+   *
+   * @param i the page size, defaults to 1000.
+   */
+  public void setPageSize(Integer i) {
+    this.pageSize = i;
+  }
+
+  int pageSize() {
+    return getPageSize() != null ? getPageSize().intValue() : DEFAULT_PAGE_SIZE;
+  }
+
+  public TimeInterval getScrollKeepAlive() {
+    return scrollKeepAlive;
+  }
+
+  /**
+   * Set how long ElasticSearch should keep the search context alive between pages.
+   *
+   * @param t the keep alive, defaults to 1 minute.
+   */
+  public void setScrollKeepAlive(TimeInterval t) {
+    this.scrollKeepAlive = t;
+  }
+
+  long scrollKeepAlive() {
+    return getScrollKeepAlive() != null ? getScrollKeepAlive().toMilliseconds() : DEFAULT_KEEP_ALIVE.toMilliseconds();
+  }
+}
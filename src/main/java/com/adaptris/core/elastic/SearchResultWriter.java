@@ -0,0 +1,28 @@
+package com.adaptris.core.elastic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Writes search hits to the reply message, as they are received.
+ *
+ */
+public interface SearchResultWriter {
+
+  /**
+   * Start writing results.
+   *
+   * @param out the output stream; closing the returned {@link Results} should not close it.
+   */
+  Results start(OutputStream out) throws IOException;
+
+  /**
+   * The results for a single search.
+   */
+  interface Results extends Closeable {
+    void write(SearchHit hit) throws IOException;
+  }
+}
@@ -0,0 +1,272 @@
+package com.adaptris.core.elastic;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.validation.Valid;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ProduceDestination;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.util.ExceptionHelper;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Add document(s) to ElasticSearch, sending each bulk request directly to the node that holds the primary shards.
+ *
+ * <p>
+ * {@link BulkIndexDocuments} sends a mixed bulk request to whichever node the {@link TransportClient} picks; that node then splits
+ * it up and forwards the parts to the nodes that hold each shard. This producer fetches the cluster state for the index, works out
+ * the primary shard for each document on the client (in the same way as ElasticSearch), and builds a separate bulk request per
+ * node. The bulk requests for all the nodes are sent in parallel, and the documents in each one are ordered by id.
+ * </p>
+ * <p>
+ * Each node is contacted using its own (non-sniffing) client, at the address the node publishes in the cluster state; so that
+ * address has to be reachable from the adapter. These clients are owned by the {@link ElasticSearchConnection}, and shared between
+ * all the producers that use it. The cluster state is refreshed every {@link #setRoutingRefreshInterval(TimeInterval)};
+ * if a shard moves in the meantime, the request is still indexed correctly, it just takes the extra hop. Documents without an id,
+ * or whose primary shard can't be located, are sent using the normal client; as are documents resolved to a different index by
+ * {@link #setIndexResolver(IndexResolver)}, since only the routing for the connection's index is fetched. {@link #setConcurrentBulkRequests(Integer)} limits
+ * the total number of bulk requests in flight; by default it is one per data node.
+ * </p>
+ *
+ * @config elasticsearch-shard-aware-bulk-index-document
+ *
+ */
+@XStreamAlias("elasticsearch-shard-aware-bulk-index-document")
+public class ShardAwareBulkIndexDocuments extends BulkIndexDocuments {
+
+  private static final TimeInterval DEFAULT_ROUTING_REFRESH = new TimeInterval(1L, TimeUnit.MINUTES);
+  private static final Comparator<ActionRequest<?>> BY_ID = Comparator.comparing(r -> ((DocumentRequest<?>) r).id(),
+      Comparator.nullsFirst(Comparator.naturalOrder()));
+
+  @AdvancedConfig
+  @Valid
+  private TimeInterval routingRefreshInterval;
+
+  private transient ShardRouter router;
+  private transient long routerChecked = 0;
+  private transient Object routerLock = new Object();
+
+  public ShardAwareBulkIndexDocuments() {
+    super();
+  }
+
+  @Override
+  public void close() {
+    synchronized (routerLock) {
+      router = null;
+      routerChecked = 0;
+    }
+    super.close();
+  }
+
+  @Override
+  protected AdaptrisMessage doRequest(AdaptrisMessage msg, ProduceDestination destination, long timeout) throws ProduceException {
+    try {
+      final String type = destination.getDestination(msg);
+      final String index = retrieveConnection(ElasticSearchConnection.class).getIndex();
+      ShardRouter shards = router(index);
+      int maxInFlight = concurrentBulkRequests() > 0 ? concurrentBulkRequests() : shards != null ? shards.dataNodes() + 1 : 1;
+      InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight = InFlightRequests.bulk(maxInFlight, this::execute);
+      Exception failure = null;
+      try {
+        NodeBatches batches = new NodeBatches(shards, inFlight);
+        buildRequests(msg, index, type, batches::add);
+        batches.flush();
+      }
+      catch (Exception e) {
+        failure = e;
+        throw e;
+      }
+      finally {
+        inFlight.await(timeout, failure);
+      }
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapProduceException(e);
+    }
+    return msg;
+  }
+
+  private ShardRouter router(String index) {
+    synchronized (routerLock) {
+      boolean stale = router == null || !router.index().equals(index) || router.isStale(routingRefreshInterval());
+      if (stale && System.currentTimeMillis() - routerChecked >= routingRefreshInterval()) {
+        routerChecked = System.currentTimeMillis();
+        try {
+          router = ShardRouter.fetch(transportClient, index);
+          retrieveConnection(ElasticSearchConnection.class).retainNodeClients(router::hasNode);
+        }
+        catch (Exception e) {
+          log.warn("Failed to fetch the cluster state for [{}], bulk requests will not be routed: {}", index, e.getMessage());
+          router = null;
+        }
+      }
+      return router;
+    }
+  }
+
+  /**
+   * Send the bulk request to the node, borrowing its client from the connection until the request completes.
+   */
+  private void execute(DiscoveryNode node, BulkRequestBuilder bulkRequest, int sentWith, ActionListener<BulkResponse> listener) {
+    if (node == null) {
+      execute(bulkRequest, sentWith, listener);
+      return;
+    }
+    final ElasticSearchConnection connection = retrieveConnection(ElasticSearchConnection.class);
+    final TransportClient client;
+    try {
+      client = connection.borrowNodeClient(node);
+    }
+    catch (Exception e) {
+      log.warn("Failed to create a client for node [{}], using the default client: {}", node.address(), e.getMessage());
+      execute(bulkRequest, sentWith, listener);
+      return;
+    }
+    final AtomicBoolean released = new AtomicBoolean(false);
+    Runnable release = () -> {
+      if (released.compareAndSet(false, true)) {
+        connection.releaseNodeClient(client);
+      }
+    };
+    try {
+      execute(client, bulkRequest, sentWith, new ActionListener<BulkResponse>() {
+        @Override
+        public void onResponse(BulkResponse response) {
+          release.run();
+          listener.onResponse(response);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          release.run();
+          listener.onFailure(e);
+        }
+      });
+    }
+    catch (RuntimeException e) {
+      release.run();
+      throw e;
+    }
+  }
+
+  public TimeInterval getRoutingRefreshInterval() {
+    return routingRefreshInterval;
+  }
+
+  /**
+   * Set how often the cluster state (and hence which node holds each primary shard) is refreshed.
+   *
+   * @param t the interval, defaults to 1 minute.
+   */
+  public void setRoutingRefreshInterval(TimeInterval t) {
+    this.routingRefreshInterval = t;
+  }
+
+  long routingRefreshInterval() {
+    return getRoutingRefreshInterval() != null ? getRoutingRefreshInterval().toMilliseconds()
+        : DEFAULT_ROUTING_REFRESH.toMilliseconds();
+  }
+
+  /**
+   * The pending bulk request for each node for a single message.
+   */
+  private class NodeBatches {
+    private final ShardRouter shards;
+    private final InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight;
+    // keyed by node id, the empty string for requests that aren't routed.
+    private final Map<String, NodeBatch> batches = new HashMap<>();
+
+    NodeBatches(ShardRouter shards, InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight) {
+      this.shards = shards;
+      this.inFlight = inFlight;
+    }
+
+    void add(ActionRequest<?> request) throws Exception {
+      DiscoveryNode node = null;
+      if (shards != null && request instanceof DocumentRequest) {
+        node = shards.primaryNode((DocumentRequest<?>) request);
+      }
+      String key = node != null ? node.getId() : "";
+      NodeBatch batch = batches.get(key);
+      if (batch == null) {
+        batch = new NodeBatch(node, inFlight);
+        batches.put(key, batch);
+      }
+      batch.add(request);
+    }
+
+    void flush() throws Exception {
+      for (NodeBatch batch : batches.values()) {
+        batch.send();
+      }
+    }
+  }
+
+  private class NodeBatch {
+    private final DiscoveryNode node;
+    private final InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight;
+    private BulkRequest pending = new BulkRequest();
+    private long batchStarted = System.currentTimeMillis();
+    private int sentWith = batchWindow();
+
+    NodeBatch(DiscoveryNode node, InFlightRequests<BulkRequestBuilder, BulkResponse> inFlight) {
+      this.node = node;
+      this.inFlight = inFlight;
+    }
+
+    void add(ActionRequest<?> request) throws Exception {
+      pending.add(request);
+      if (flushRequired()) {
+        send();
+      }
+    }
+
+    private boolean flushRequired() {
+      if (pending.numberOfActions() >= batchWindow()) {
+        return true;
+      }
+      if (batchSizeBytes() > 0 && pending.estimatedSizeInBytes() >= batchSizeBytes()) {
+        return true;
+      }
+      return flushInterval() > 0 && System.currentTimeMillis() - batchStarted >= flushInterval();
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    void send() throws Exception {
+      if (pending.numberOfActions() == 0) {
+        return;
+      }
+      // Stable sort, so multiple actions for the same id stay in order.
+      List<ActionRequest<?>> sorted = new ArrayList<>((List) pending.requests());
+      sorted.sort(BY_ID);
+      BulkRequestBuilder bulkRequest = transportClient.prepareBulk();
+      for (ActionRequest<?> r : sorted) {
+        bulkRequest.request().add(r);
+      }
+      final int size = sentWith;
+      inFlight.submit(bulkRequest, (b, l) -> execute(node, b, size, l));
+      pending = new BulkRequest();
+      batchStarted = System.currentTimeMillis();
+      sentWith = batchWindow();
+    }
+  }
+}
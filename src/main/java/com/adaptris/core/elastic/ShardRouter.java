@@ -0,0 +1,101 @@
+package com.adaptris.core.elastic;
+
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.OperationRouting;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.allocation.decider.AwarenessAllocationDecider;
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Works out which node holds the primary shard for a document, from a snapshot of the cluster state.
+ *
+ * <p>
+ * The shard is calculated by ElasticSearch's own {@link OperationRouting} so it always matches the server (murmur3 of the routing
+ * or id, modulo the number of shards, taking into account any per-index hash settings). The snapshot can go stale if shards are
+ * relocated; that only costs an extra hop, since the receiving node will still forward the request to the right shard.
+ * </p>
+ */
+class ShardRouter {
+
+  private static final OperationRouting ROUTING = new OperationRouting(Settings.EMPTY, new AwarenessAllocationDecider());
+
+  private final ClusterState state;
+  private final String index;
+  private final long created;
+
+  ShardRouter(ClusterState state, String index) {
+    this.state = state;
+    this.index = index;
+    this.created = System.currentTimeMillis();
+  }
+
+  /**
+   * Fetch the routing table, metadata and nodes for the index.
+   */
+  static ShardRouter fetch(Client client, String index) {
+    ClusterState state = client.admin().cluster().prepareState().clear().setIndices(index).setRoutingTable(true).setMetaData(true)
+        .setNodes(true).get().getState();
+    return new ShardRouter(state, index);
+  }
+
+  boolean isStale(long maxAgeMs) {
+    return System.currentTimeMillis() - created >= maxAgeMs;
+  }
+
+  String index() {
+    return index;
+  }
+
+  /**
+   * The number of data nodes in the cluster.
+   */
+  int dataNodes() {
+    return state.nodes().getDataNodes().size();
+  }
+
+  /**
+   * The number of primary shards in the index.
+   *
+   * @return the number of shards, or 0 if the index isn't known (e.g. it is an alias).
+   */
+  int shards() {
+    IndexMetaData metadata = state.metaData().index(index);
+    return metadata != null ? metadata.getNumberOfShards() : 0;
+  }
+
+  boolean hasNode(String nodeId) {
+    return state.nodes().get(nodeId) != null;
+  }
+
+  /**
+   * Get the shard number for the document.
+   */
+  int shardId(String type, String id, String routing) {
+    return ROUTING.shardId(state, index, type, id, routing).id();
+  }
+
+  /**
+   * Get the node that currently holds the primary shard for the request.
+   *
+   * @return the node, or null if it can't be determined (no id, different index, unassigned shard...).
+   */
+  DiscoveryNode primaryNode(DocumentRequest<?> request) {
+    if (request.id() == null || !index.equals(request.index())) {
+      return null;
+    }
+    IndexRoutingTable table = state.routingTable().index(index);
+    if (table == null) {
+      return null;
+    }
+    ShardRouting primary = table.shard(shardId(request.type(), request.id(), request.routing())).primaryShard();
+    if (primary == null || !primary.active()) {
+      return null;
+    }
+    return state.nodes().get(primary.currentNodeId());
+  }
+}
@@ -1,18 +1,27 @@
 package com.adaptris.core.elastic;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.ProduceException;
 import com.adaptris.core.util.ExceptionHelper;
@@ -30,6 +39,13 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
  * <li>The message's uniqueID is used as the ID of the document.
  * </ul>
  * </p>
+ * <p>
+ * If {@code stream-content} is true then the payload is written directly from the message's reader into the document, rather than
+ * being copied into an intermediate {@code String}; this is recommended for large payloads. If {@code content-is-json} is true then
+ * the payload is embedded as JSON rather than as an escaped string (the payload is always streamed in this case, and is not
+ * validated, so it must be well-formed JSON); it is transcoded to UTF-8 if the message has a different content encoding, and an
+ * empty payload becomes {@code null}.
+ * </p>
  * 
  * @author lchan
  * @config elasticsearch-simple-document-builder
@@ -40,10 +56,22 @@ public class SimpleDocumentBuilder implements ElasticDocumentBuilder {
 
   private transient Logger log = LoggerFactory.getLogger(this.getClass());
 
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean streamContent;
+
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean contentIsJson;
+
   @Override
   public Iterable<DocumentWrapper> build(AdaptrisMessage msg) throws ProduceException {
     List<DocumentWrapper> result = new ArrayList<>();
     try {
+      if (streamContent() || contentIsJson()) {
+        result.add(new DocumentWrapper(msg.getUniqueId(), buildStreaming(msg)));
+        return result;
+      }
       XContentBuilder builder = jsonBuilder();
       builder.startObject();
       builder.field("content", new Text(msg.getContent()));
@@ -58,6 +86,81 @@ public class SimpleDocumentBuilder implements ElasticDocumentBuilder {
     return result;
   }
 
+  private XContentBuilder buildStreaming(AdaptrisMessage msg) throws Exception {
+    XContentBuilder header = jsonBuilder();
+    header.startObject();
+    header.field("metadata", filterIllegal(msg.getMessageHeaders()));
+    header.field("date", new Date());
+    header.endObject();
+    BytesStreamOutput out = new BytesStreamOutput(expectedSize(msg));
+    JsonStreams.writeWithoutLastChar(header.bytes(), out);
+    out.write(",\"content\":".getBytes(UTF_8));
+    if (contentIsJson() && msg.getSize() == 0) {
+      // An empty payload isn't valid JSON.
+      out.write("null".getBytes(UTF_8));
+    }
+    else if (contentIsJson() && isUtf8(msg.getContentEncoding())) {
+      try (InputStream in = msg.getInputStream()) {
+        IOUtils.copy(in, out);
+      }
+    }
+    else if (contentIsJson()) {
+      try (Reader in = new InputStreamReader(msg.getInputStream(), msg.getContentEncoding())) {
+        IOUtils.copy(in, out, UTF_8);
+      }
+    }
+    else {
+      try (Reader in = msg.getReader()) {
+        JsonStreams.writeString(in, out);
+      }
+    }
+    out.write('}');
+    return JsonStreams.asBuilder(out);
+  }
+
+  // JSON without an explicit encoding is assumed to be UTF-8 already.
+  private static boolean isUtf8(String encoding) {
+    return encoding == null || Charset.forName(encoding).equals(UTF_8);
+  }
+
+  private static int expectedSize(AdaptrisMessage msg) {
+    return (int) Math.max(0, Math.min(Integer.MAX_VALUE - 1024, msg.getSize()) + 1024);
+  }
+
+  public Boolean getStreamContent() {
+    return streamContent;
+  }
+
+  /**
+   * Whether or not to write the payload directly into the document.
+   * 
+   * @param b true to stream the payload, default is false.
+   */
+  public void setStreamContent(Boolean b) {
+    this.streamContent = b;
+  }
+
+  boolean streamContent() {
+    return getStreamContent() != null ? getStreamContent().booleanValue() : false;
+  }
+
+  public Boolean getContentIsJson() {
+    return contentIsJson;
+  }
+
+  /**
+   * Whether or not the payload is already JSON, and should be embedded as-is.
+   * 
+   * @param b true to embed the payload as JSON, default is false (payload is an escaped string).
+   */
+  public void setContentIsJson(Boolean b) {
+    this.contentIsJson = b;
+  }
+
+  boolean contentIsJson() {
+    return getContentIsJson() != null ? getContentIsJson().booleanValue() : false;
+  }
+
   private static Map<String, String> filterIllegal(Map<String, String> map) {
     Map<String, String> result = new HashMap<>();
     map.entrySet().stream().filter(e -> !e.getKey().contains(".")).forEach(e -> {
@@ -0,0 +1,276 @@
+package com.adaptris.core.elastic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ProduceException;
+import com.adaptris.core.util.CloseableIterable;
+import com.adaptris.core.util.ExceptionHelper;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Builds a document for each JSON object in the message.
+ *
+ * <p>
+ * The message may either be a JSON array of objects, or a sequence of JSON objects separated by whitespace (such as newline
+ * delimited JSON), optionally preceded by a byte order mark. The message is read as a stream, and each object is copied to its own
+ * document source as it is parsed, so memory usage is proportional to the size of the largest object, rather than the size of the
+ * message.
+ * </p>
+ * <p>
+ * The unique-id of each document is taken from the object using the configured JSON pointer (e.g. {@code /id} or
+ * {@code /customer/id}); if no pointer is configured, or the object does not contain a value at that location, then the
+ * unique-id will be null and ElasticSearch will generate one (which only makes sense if you are indexing new documents). The
+ * routing value and parent id can be taken from the object in the same way, using {@link #setRoutingPointer(String)} and
+ * {@link #setParentPointer(String)}.
+ * </p>
+ *
+ * @config elasticsearch-streaming-json-document-builder
+ */
+@XStreamAlias("elasticsearch-streaming-json-document-builder")
+public class StreamingJsonDocumentBuilder implements ElasticDocumentBuilder {
+
+  @AdvancedConfig
+  private String uniqueIdPointer;
+
+  @AdvancedConfig
+  private String routingPointer;
+
+  @AdvancedConfig
+  private String parentPointer;
+
+  public StreamingJsonDocumentBuilder() {
+
+  }
+
+  public StreamingJsonDocumentBuilder(String uniqueIdPointer) {
+    this();
+    setUniqueIdPointer(uniqueIdPointer);
+  }
+
+  @Override
+  public Iterable<DocumentWrapper> build(AdaptrisMessage msg) throws ProduceException {
+    try {
+      return new JsonDocumentWrapper(msg.getInputStream(), pointerAsPath(getUniqueIdPointer()), pointerAsPath(getRoutingPointer()),
+          pointerAsPath(getParentPointer()));
+    }
+    catch (Exception e) {
+      throw ExceptionHelper.wrapProduceException(e);
+    }
+  }
+
+  public String getUniqueIdPointer() {
+    return uniqueIdPointer;
+  }
+
+  /**
+   * Set the JSON pointer that identifies the unique-id of each document.
+   *
+   * @param s the JSON pointer (RFC 6901) e.g. {@code /id}.
+   */
+  public void setUniqueIdPointer(String s) {
+    this.uniqueIdPointer = s;
+  }
+
+  public String getRoutingPointer() {
+    return routingPointer;
+  }
+
+  /**
+   * Set the JSON pointer that identifies the routing value of each document.
+   *
+   * @param s the JSON pointer (RFC 6901) e.g. {@code /tenant}; if not specified, routed by the parent or unique-id.
+   */
+  public void setRoutingPointer(String s) {
+    this.routingPointer = s;
+  }
+
+  public String getParentPointer() {
+    return parentPointer;
+  }
+
+  /**
+   * Set the JSON pointer that identifies the id of the parent document.
+   *
+   * @param s the JSON pointer (RFC 6901) e.g. {@code /order/id}; if not specified, documents have no parent.
+   */
+  public void setParentPointer(String s) {
+    this.parentPointer = s;
+  }
+
+  static List<String> pointerAsPath(String pointer) {
+    if (pointer == null || !pointer.startsWith("/") || pointer.length() == 1) {
+      return Collections.emptyList();
+    }
+    List<String> result = new ArrayList<>();
+    for (String s : pointer.substring(1).split("/", -1)) {
+      result.add(s.replace("~1", "/").replace("~0", "~"));
+    }
+    return result;
+  }
+
+  private class JsonDocumentWrapper implements CloseableIterable<DocumentWrapper>, Iterator<DocumentWrapper> {
+    private final JsonObjectSplitter splitter;
+    private DocumentWrapper next;
+
+    JsonDocumentWrapper(InputStream in, List<String> idPath, List<String> routingPath, List<String> parentPath)
+        throws IOException {
+      this.splitter = new JsonObjectSplitter(in, Arrays.asList(idPath, routingPath, parentPath));
+    }
+
+    @Override
+    public Iterator<DocumentWrapper> iterator() {
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        next = readNext();
+      }
+      return next != null;
+    }
+
+    @Override
+    public DocumentWrapper next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      DocumentWrapper result = next;
+      next = null;
+      return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+      splitter.close();
+    }
+
+    private DocumentWrapper readNext() {
+      try {
+        String[] values = new String[3];
+        XContentBuilder content = splitter.next(values);
+        if (content == null) {
+          return null;
+        }
+        return new DocumentWrapper(values[0], content, values[1], values[2]);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Splits a stream containing either a JSON array of objects, or a whitespace separated sequence of objects into each object.
+   * <p>
+   * The stream is read using a pull parser, which detects the encoding and skips any byte order mark. Each object is copied as it
+   * is read, picking out the scalar values at the configured paths on the way; so each object is only parsed once.
+   * </p>
+   */
+  static class JsonObjectSplitter {
+    private final XContentParser parser;
+    private final List<List<String>> paths;
+    private final List<String> current = new ArrayList<>();
+    private boolean started = false;
+    private boolean inArray = false;
+    private boolean finished = false;
+
+    /**
+     * @param paths the field names that lead to each value that is picked out; empty if that value isn't required.
+     */
+    JsonObjectSplitter(InputStream in, List<List<String>> paths) throws IOException {
+      this.parser = JsonXContent.jsonXContent.createParser(in);
+      this.paths = paths;
+    }
+
+    /**
+     * Return the next object, or null if there are no more.
+     *
+     * @param values populated with the value at each path, or null if the object has no scalar value there.
+     */
+    XContentBuilder next(String[] values) throws IOException {
+      if (finished) {
+        return null;
+      }
+      Token token = parser.nextToken();
+      if (!started) {
+        started = true;
+        if (token == Token.START_ARRAY) {
+          inArray = true;
+          token = parser.nextToken();
+        }
+      }
+      if (token == null || inArray && token == Token.END_ARRAY) {
+        finished = true;
+        return null;
+      }
+      if (token != Token.START_OBJECT) {
+        throw new IOException("Expected a JSON object, found " + token);
+      }
+      XContentBuilder result = XContentFactory.jsonBuilder();
+      current.clear();
+      copyObject(result.generator(), values);
+      return result;
+    }
+
+    void close() {
+      try {
+        parser.close();
+      }
+      catch (Exception e) {
+        ;
+      }
+    }
+
+    // The parser is positioned at the start of an object; only the fields that lead to a value are copied field by field,
+    // everything else is copied wholesale.
+    private void copyObject(XContentGenerator generator, String[] values) throws IOException {
+      generator.writeStartObject();
+      Token token;
+      while ((token = parser.nextToken()) == Token.FIELD_NAME) {
+        current.add(parser.currentName());
+        generator.writeFieldName(parser.currentName());
+        token = parser.nextToken();
+        boolean descend = false;
+        for (int i = 0; i < paths.size(); i++) {
+          List<String> path = paths.get(i);
+          if (path.equals(current)) {
+            if (values[i] == null && token.isValue()) {
+              values[i] = parser.text();
+            }
+          }
+          else if (path.size() > current.size() && path.subList(0, current.size()).equals(current)) {
+            descend = true;
+          }
+        }
+        if (descend && token == Token.START_OBJECT) {
+          copyObject(generator, values);
+        }
+        else {
+          generator.copyCurrentStructure(parser);
+        }
+        current.remove(current.size() - 1);
+      }
+      if (token != Token.END_OBJECT) {
+        throw new IOException("Unexpected end of JSON input");
+      }
+      generator.writeEndObject();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.adaptris.core.elastic;
+
+import java.util.Map;
+
+import javax.validation.constraints.Min;
+
+import org.elasticsearch.action.update.UpdateRequestBuilder;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptService.ScriptType;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.ProduceException;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Controls how {@link DocumentAction#UPDATE}, {@link DocumentAction#UPSERT} and {@link DocumentAction#SCRIPTED_UPDATE} actions are
+ * applied by {@link BulkIndexDocuments}.
+ *
+ * <p>
+ * {@code SCRIPTED_UPDATE} runs {@link #setScript(String)} against the existing document, with each top-level field of the document
+ * in the message available as a script parameter; if the document doesn't exist yet, then the document in the message is inserted
+ * as is. The script can mark the document as unchanged by setting {@code ctx.op = "none"}, in which case nothing is written.
+ * Partial document updates are skipped by ElasticSearch when they wouldn't change the document, unless
+ * {@link #setDetectNoop(Boolean)} is false.
+ * </p>
+ *
+ * @config elasticsearch-update-settings
+ */
+@XStreamAlias("elasticsearch-update-settings")
+public class UpdateSettings {
+
+  @Min(0)
+  @InputFieldDefault(value = "0")
+  private Integer retryOnConflict;
+
+  @InputFieldDefault(value = "true")
+  private Boolean detectNoop;
+
+  private String script;
+
+  private String scriptLanguage;
+
+  @InputFieldDefault(value = "INLINE")
+  private ScriptType scriptType;
+
+  public UpdateSettings() {
+
+  }
+
+  /**
+   * Apply the conflict and no-op settings to the request.
+   */
+  UpdateRequestBuilder apply(UpdateRequestBuilder request) {
+    return request.setRetryOnConflict(retryOnConflict()).setDetectNoop(detectNoop());
+  }
+
+  /**
+   * Create the script to run.
+   *
+   * @param params the script parameters.
+   * @throws ProduceException if no script is configured.
+   */
+  Script script(Map<String, Object> params) throws ProduceException {
+    if (getScript() == null) {
+      throw new ProduceException("No script configured for " + DocumentAction.SCRIPTED_UPDATE);
+    }
+    return new Script(getScript(), scriptType(), getScriptLanguage(), params);
+  }
+
+  public Integer getRetryOnConflict() {
+    return retryOnConflict;
+  }
+
+  /**
+   * Set how many times to retry an update if the document is changed between being read and written.
+   *
+   * @param i the number of retries, defaults to 0.
+   */
+  public void setRetryOnConflict(Integer i) {
+    this.retryOnConflict = i;
+  }
+
+  int retryOnConflict() {
+    return getRetryOnConflict() != null ? getRetryOnConflict().intValue() : 0;
+  }
+
+  public Boolean getDetectNoop() {
+    return detectNoop;
+  }
+
+  /**
+   * Whether ElasticSearch should skip partial document updates that wouldn't change the document.
+   *
+   * @param b true to skip them, defaults to true.
+   */
+  public void setDetectNoop(Boolean b) {
+    this.detectNoop = b;
+  }
+
+  boolean detectNoop() {
+    return getDetectNoop() != null ? getDetectNoop().booleanValue() : true;
+  }
+
+  public String getScript() {
+    return script;
+  }
+
+  /**
+   * Set the script used by {@link DocumentAction#SCRIPTED_UPDATE}.
+   *
+   * @param s the script source (or its id, depending on {@link #setScriptType(ScriptType)}).
+   */
+  public void setScript(String s) {
+    this.script = s;
+  }
+
+  public String getScriptLanguage() {
+    return scriptLanguage;
+  }
+
+  /**
+   * Set the script language.
+   *
+   * @param s the language, defaults to null (the cluster default).
+   */
+  public void setScriptLanguage(String s) {
+    this.scriptLanguage = s;
+  }
+
+  public ScriptType getScriptType() {
+    return scriptType;
+  }
+
+  /**
+   * Set where the script comes from.
+   *
+   * @param t the script type, defaults to {@code INLINE}.
+   */
+  public void setScriptType(ScriptType t) {
+    this.scriptType = t;
+  }
+
+  ScriptType scriptType() {
+    return getScriptType() != null ? getScriptType() : ScriptType.INLINE;
+  }
+}
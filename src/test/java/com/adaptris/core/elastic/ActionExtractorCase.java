@@ -52,6 +52,34 @@ public class ActionExtractorCase {
     }
   }
   
+  @Test
+  public void testJsonPathAction_Nested() throws IOException, ServiceException {
+    JsonPathAction action = new JsonPathAction();
+    action.setJsonPath("$.delta.status");
+    assertEquals(2, action.fieldNames().size());
+    for(DocumentAction val: DocumentAction.values()) {
+      XContentBuilder builder = XContentFactory.jsonBuilder();
+      builder.startObject();
+      builder.startObject("other").field("status", "ignored").endObject();
+      builder.startArray("status").value("ignored").endArray();
+      builder.startObject("delta").field("status", val.name()).endObject();
+      builder.endObject();
+      assertEquals(val.name(), action.extract(null, new DocumentWrapper("uid", builder)));
+    }
+  }
+
+  @Test
+  public void testJsonPathAction_NotSimple() throws IOException, ServiceException {
+    JsonPathAction action = new JsonPathAction();
+    action.setJsonPath("$.actions[1]");
+    assertEquals(0, action.fieldNames().size());
+    XContentBuilder builder = XContentFactory.jsonBuilder();
+    builder.startObject();
+    builder.startArray("actions").value(DocumentAction.INDEX.name()).value(DocumentAction.DELETE.name()).endArray();
+    builder.endObject();
+    assertEquals(DocumentAction.DELETE.name(), action.extract(null, new DocumentWrapper("uid", builder)));
+  }
+
   @Test
   public void testMappedAction() throws ServiceException {
     final String KEY = "myaction";
@@ -61,16 +89,63 @@ public class ActionExtractorCase {
     action.setAction(ma);
     KeyValuePairList mappings = new KeyValuePairList();
     for(DocumentAction val: DocumentAction.values()) {
-      mappings.add(new KeyValuePair(val.name().substring(0, 1), val.name()));
+      mappings.add(new KeyValuePair(String.valueOf(val.ordinal()), val.name()));
     }
     action.setMappings(mappings);
     
     for(DocumentAction val: DocumentAction.values()) {
       AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
-      msg.addMetadata(KEY, val.name().substring(0, 1));
+      msg.addMetadata(KEY, String.valueOf(val.ordinal()));
       
       assertEquals(val, DocumentAction.valueOf(action.extract(msg, null)));
+      assertEquals(val, action.extractAction(msg, null));
+      // Unmapped values are used as is.
+      msg.addMetadata(KEY, val.name());
+      assertEquals(val, action.extractAction(msg, null));
     }
   }
 
+  @Test
+  public void testMappedAction_SetMappings() throws ServiceException {
+    final String KEY = "myaction";
+    MetadataAction ma = new MetadataAction();
+    ma.setMetadataKey(KEY);
+    MappedAction action = new MappedAction();
+    action.setAction(ma);
+    action.getMappings().add(new KeyValuePair("1", DocumentAction.INDEX.name()));
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    msg.addMetadata(KEY, "1");
+    assertEquals(DocumentAction.INDEX, action.extractAction(msg, null));
+    KeyValuePairList mappings = new KeyValuePairList();
+    mappings.add(new KeyValuePair("1", DocumentAction.UPSERT.name()));
+    action.setMappings(mappings);
+    assertEquals(DocumentAction.UPSERT, action.extractAction(msg, null));
+    assertEquals(DocumentAction.UPSERT.name(), action.extract(msg, null));
+  }
+
+  @Test
+  public void testExtractAction() throws Exception {
+    for (DocumentAction val : DocumentAction.values()) {
+      ConfiguredAction action = new ConfiguredAction();
+      action.setAction(val);
+      assertEquals(val, action.extractAction(null, null));
+      XContentBuilder builder = XContentFactory.jsonBuilder();
+      builder.startObject().field("action", val.name()).endObject();
+      assertEquals(val, new JsonPathAction().extractAction(null, new DocumentWrapper("uid", builder)));
+    }
+  }
+
+  @Test
+  public void testIsMessageScoped() throws Exception {
+    assertTrue(new ConfiguredAction().isMessageScoped());
+    assertTrue(new MetadataAction().isMessageScoped());
+    assertFalse(new JsonPathAction().isMessageScoped());
+    MappedAction mapped = new MappedAction();
+    assertFalse(mapped.isMessageScoped());
+    mapped.setAction(new MetadataAction());
+    assertTrue(mapped.isMessageScoped());
+    mapped.setAction(new JsonPathAction());
+    assertFalse(mapped.isMessageScoped());
+  }
+
 }
@@ -0,0 +1,72 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.adaptris.util.TimeInterval;
+
+public class AdaptiveBatchSizeTest {
+
+  @Test
+  public void testInit_Clamped() throws Exception {
+    AdaptiveBatchSize adaptive = create();
+    assertEquals(100, adaptive.current());
+    adaptive.init(10000);
+    assertEquals(1000, adaptive.current());
+    adaptive.init(1);
+    assertEquals(100, adaptive.current());
+  }
+
+  @Test
+  public void testIncrease_FullBatch() throws Exception {
+    AdaptiveBatchSize adaptive = create();
+    adaptive.init(500);
+    adaptive.onResponse(500, 500, 10, 5, 0);
+    assertEquals(550, adaptive.current());
+    // Not a full batch, so no change.
+    adaptive.onResponse(550, 20, 10, 5, 0);
+    assertEquals(550, adaptive.current());
+    for (int i = 0; i < 100; i++) {
+      adaptive.onResponse(adaptive.current(), adaptive.current(), 10, 5, 0);
+    }
+    assertEquals(1000, adaptive.current());
+  }
+
+  @Test
+  public void testDecrease_Rejected() throws Exception {
+    AdaptiveBatchSize adaptive = create();
+    adaptive.init(800);
+    adaptive.onResponse(800, 800, 10, 5, 1);
+    assertEquals(400, adaptive.current());
+    // Built with the old batch size; already acted on.
+    adaptive.onResponse(800, 800, 10, 5, 10);
+    assertEquals(400, adaptive.current());
+    adaptive.onFailure(400);
+    assertEquals(200, adaptive.current());
+    adaptive.onFailure(200);
+    adaptive.onFailure(adaptive.current());
+    assertEquals(100, adaptive.current());
+  }
+
+  @Test
+  public void testDecrease_Latency() throws Exception {
+    AdaptiveBatchSize adaptive = create();
+    adaptive.init(800);
+    adaptive.onResponse(800, 800, 300, 5, 0);
+    assertEquals(400, adaptive.current());
+    adaptive.onResponse(400, 400, 10, 300, 0);
+    assertEquals(200, adaptive.current());
+  }
+
+  private static AdaptiveBatchSize create() {
+    AdaptiveBatchSize adaptive = new AdaptiveBatchSize();
+    adaptive.setMinBatchSize(100);
+    adaptive.setMaxBatchSize(1000);
+    adaptive.setIncreaseStep(50);
+    adaptive.setTargetLatency(new TimeInterval(200L, TimeUnit.MILLISECONDS));
+    return adaptive;
+  }
+}
@@ -0,0 +1,142 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adaptris.core.ProduceException;
+
+public class BulkCoalescerTest {
+
+  private TransportClient client;
+  private ScheduledExecutorService scheduler;
+  private List<BulkRequest> sent;
+
+  @Before
+  public void setUp() throws Exception {
+    // Only used to create BulkRequestBuilder instances, never connected.
+    client = new ElasticSearchConnection("myIndex").createClient();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    sent = new CopyOnWriteArrayList<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    scheduler.shutdownNow();
+    client.close();
+  }
+
+  @Test
+  public void testCoalesce_BatchWindow() throws Exception {
+    BulkCoalescer coalescer = createCoalescer(4, 0, null);
+    BulkCoalescer.Ticket t1 = coalescer.newTicket();
+    BulkCoalescer.Ticket t2 = coalescer.newTicket();
+    t1.add(request("1"));
+    t2.add(request("2"));
+    t1.add(request("3"));
+    assertEquals(0, sent.size());
+    t2.add(request("4"));
+    t1.await(1000);
+    t2.await(1000);
+    assertEquals(1, sent.size());
+    assertEquals(4, sent.get(0).numberOfActions());
+  }
+
+  @Test
+  public void testCoalesce_FlushInterval() throws Exception {
+    BulkCoalescer coalescer = createCoalescer(100, 20, null);
+    BulkCoalescer.Ticket t1 = coalescer.newTicket();
+    t1.add(request("1"));
+    t1.await(5000);
+    assertEquals(1, sent.size());
+    assertEquals(1, sent.get(0).numberOfActions());
+  }
+
+  @Test
+  public void testCoalesce_NoFlushInterval() throws Exception {
+    BulkCoalescer coalescer = createCoalescer(100, 0, null);
+    BulkCoalescer.Ticket t1 = coalescer.newTicket();
+    t1.add(request("1"));
+    t1.await(1000);
+    assertEquals(1, sent.size());
+    assertEquals(1, sent.get(0).numberOfActions());
+  }
+
+  @Test
+  public void testCoalesce_SpansBatches() throws Exception {
+    BulkCoalescer coalescer = createCoalescer(3, 0, "5");
+    BulkCoalescer.Ticket t1 = coalescer.newTicket();
+    BulkCoalescer.Ticket t2 = coalescer.newTicket();
+    t2.add(request("1"));
+    for (int i = 2; i <= 6; i++) {
+      t1.add(request(String.valueOf(i)));
+    }
+    coalescer.flush();
+    assertEquals(2, sent.size());
+    t2.await(1000);
+    try {
+      t1.await(1000);
+      fail();
+    }
+    catch (ProduceException expected) {
+      // 5 is the 4th document for t1
+      assertTrue(expected.getMessage().contains("[3]: index [myIndex], type [myType], id [5]"));
+    }
+  }
+
+  @Test
+  public void testCoalesce_FailureOnlyAffectsOwner() throws Exception {
+    BulkCoalescer coalescer = createCoalescer(4, 0, "3");
+    BulkCoalescer.Ticket t1 = coalescer.newTicket();
+    BulkCoalescer.Ticket t2 = coalescer.newTicket();
+    t1.add(request("1"));
+    t1.add(request("2"));
+    t2.add(request("3"));
+    t2.add(request("4"));
+    t1.await(1000);
+    try {
+      t2.await(1000);
+      fail();
+    }
+    catch (ProduceException expected) {
+
+    }
+  }
+
+  private BulkCoalescer createCoalescer(int maxActions, long lingerMs, String failId) {
+    return new BulkCoalescer(client::prepareBulk, (bulk, sentWith, listener) -> {
+      BulkRequest request = bulk.request();
+      sent.add(request);
+      BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+      for (int i = 0; i < items.length; i++) {
+        IndexRequest r = (IndexRequest) request.requests().get(i);
+        items[i] = r.id().equals(failId)
+            ? new BulkItemResponse(i, "index", new Failure(r.index(), r.type(), r.id(), new EsRejectedExecutionException("rejected")))
+            : new BulkItemResponse(i, "index", new IndexResponse(r.index(), r.type(), r.id(), 1, true));
+      }
+      scheduler.execute(() -> listener.onResponse(new BulkResponse(items, 1)));
+    }, () -> maxActions, 0, lingerMs, scheduler);
+  }
+
+  private static ActionRequest<?> request(String id) {
+    return new IndexRequest("myIndex", "myType", id).source("{\"key\":\"value\"}");
+  }
+}
@@ -0,0 +1,164 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ConfiguredProduceDestination;
+import com.adaptris.core.ProduceException;
+import com.adaptris.util.TimeInterval;
+
+public class BulkIndexDocumentsBatchTest {
+
+  private TransportClient client;
+  private List<Integer> batches;
+
+  @Before
+  public void setUp() throws Exception {
+    // Only used to create request builders, never connected.
+    client = new ElasticSearchConnection("myIndex").createClient();
+    batches = new CopyOnWriteArrayList<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+  }
+
+  @Test
+  public void testFlush_BatchWindow() throws Exception {
+    BulkIndexDocuments producer = createProducer(0);
+    producer.setBatchWindow(2);
+    produce(producer, 5);
+    assertEquals(Arrays.asList(2, 2, 1), batches);
+  }
+
+  @Test
+  public void testFlush_BatchSizeBytes() throws Exception {
+    BulkIndexDocuments producer = createProducer(0);
+    producer.setBatchWindow(1000);
+    // Each document is estimated at a little over 50 bytes.
+    producer.setBatchSizeBytes(100L);
+    produce(producer, 5);
+    assertEquals(Arrays.asList(2, 2, 1), batches);
+  }
+
+  @Test
+  public void testFlush_FlushInterval() throws Exception {
+    // The 3rd document arrives after the interval has expired.
+    BulkIndexDocuments producer = createProducer(2);
+    producer.setBatchWindow(1000);
+    producer.setFlushInterval(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    produce(producer, 4);
+    assertEquals(Arrays.asList(3, 1), batches);
+  }
+
+  @Test
+  public void testFlush_NoLimits() throws Exception {
+    BulkIndexDocuments producer = createProducer(2);
+    producer.setBatchWindow(1000);
+    produce(producer, 4);
+    assertEquals(Arrays.asList(4), batches);
+  }
+
+  @Test
+  public void testBuildFailure_DiscardsPendingBatch() throws Exception {
+    BulkIndexDocuments producer = createProducer(0, 3);
+    producer.setBatchWindow(2);
+    try {
+      produce(producer, 5);
+      fail();
+    }
+    catch (ProduceException expected) {
+
+    }
+    // The first batch was already sent, the pending batch with the 3rd document was discarded.
+    assertEquals(Arrays.asList(2), batches);
+  }
+
+  private void produce(BulkIndexDocuments producer, int count) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append("UID-").append(i).append(System.lineSeparator());
+    }
+    producer.doRequest(AdaptrisMessageFactory.getDefaultInstance().newMessage(sb.toString()),
+        new ConfiguredProduceDestination("myType"), 5000);
+  }
+
+  private BulkIndexDocuments createProducer(final int slowDocument) {
+    return createProducer(slowDocument, -1);
+  }
+
+  /**
+   * @param slowDocument the document that takes 300ms to build.
+   * @param badDocument the document that fails to build.
+   */
+  private BulkIndexDocuments createProducer(final int slowDocument, final int badDocument) {
+    BulkIndexDocuments producer = new BulkIndexDocuments() {
+      @Override
+      void execute(BulkRequestBuilder bulkRequest, int sentWith, ActionListener<BulkResponse> listener) {
+        batches.add(bulkRequest.numberOfActions());
+        BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+        for (int i = 0; i < items.length; i++) {
+          IndexRequest r = (IndexRequest) bulkRequest.request().requests().get(i);
+          items[i] = new BulkItemResponse(i, "index", new IndexResponse(r.index(), r.type(), r.id(), 1, true));
+        }
+        listener.onResponse(new BulkResponse(items, 1));
+      }
+    };
+    producer.registerConnection(new ElasticSearchConnection("myIndex"));
+    producer.transportClient = client;
+    // One document per line, the line is the id.
+    producer.setDocumentBuilder(msg -> {
+      List<String> ids = new ArrayList<>(Arrays.asList(msg.getContent().split(System.lineSeparator())));
+      return () -> new Iterator<DocumentWrapper>() {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return next < ids.size();
+        }
+
+        @Override
+        public DocumentWrapper next() {
+          try {
+            if (next == slowDocument && slowDocument > 0) {
+              Thread.sleep(300);
+            }
+            if (next == badDocument) {
+              throw new IllegalArgumentException("Failed to build document " + next);
+            }
+            String id = ids.get(next++);
+            return new DocumentWrapper(id, XContentFactory.jsonBuilder().startObject().field("id", id).endObject());
+          }
+          catch (RuntimeException e) {
+            throw e;
+          }
+          catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    });
+    return producer;
+  }
+}
@@ -0,0 +1,167 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.WriteConsistencyLevel;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+
+import com.adaptris.util.TimeInterval;
+
+public class BulkItemRetryTest {
+
+  @Test
+  public void testBackoff() {
+    BulkItemRetry retry = new BulkItemRetry();
+    retry.setInitialBackoff(new TimeInterval(100L, TimeUnit.MILLISECONDS));
+    retry.setMaxBackoff(new TimeInterval(1L, TimeUnit.SECONDS));
+    assertEquals(100, retry.backoff(0));
+    assertEquals(200, retry.backoff(1));
+    assertEquals(400, retry.backoff(2));
+    assertEquals(800, retry.backoff(3));
+    assertEquals(1000, retry.backoff(4));
+    assertEquals(1000, retry.backoff(100));
+  }
+
+  @Test
+  public void testMaxRetries() {
+    assertEquals(5, new BulkItemRetry().maxRetries());
+    assertEquals(10, new BulkItemRetry(10).maxRetries());
+  }
+
+  @Test
+  public void testIsRetryable() {
+    BulkItemResponse rejected = new BulkItemResponse(0, "index",
+        new Failure("myIndex", "myType", "1", new EsRejectedExecutionException("rejected")));
+    BulkItemResponse conflict = new BulkItemResponse(1, "index",
+        new Failure("myIndex", "myType", "2", new VersionConflictEngineException(new ShardId("myIndex", 0), "myType", "2", 1, 2)));
+    assertTrue(BulkItemRetry.isRetryable(rejected));
+    assertFalse(BulkItemRetry.isRetryable(conflict));
+  }
+
+  @Test
+  public void testExecute_RetriesRejectedItems() throws Exception {
+    BulkItemRetry retry = new BulkItemRetry();
+    retry.setInitialBackoff(new TimeInterval(1L, TimeUnit.MILLISECONDS));
+    BulkRequest request = new BulkRequest();
+    for (int i = 0; i < 4; i++) {
+      request.add(new IndexRequest("myIndex", "myType", String.valueOf(i)).source("{\"key\":\"value\"}"));
+    }
+    // Items 1 and 3 are rejected the first time around.
+    try (RejectingClient client = new RejectingClient("1", "3")) {
+      PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+      retry.execute(client, request, future);
+      BulkResponse response = future.actionGet(10000);
+      assertFalse(response.hasFailures());
+      assertEquals(4, response.getItems().length);
+      for (int i = 0; i < 4; i++) {
+        assertEquals(i, response.getItems()[i].getItemId());
+        assertEquals(String.valueOf(i), response.getItems()[i].getId());
+      }
+      assertEquals(2, client.attempts.get());
+    }
+  }
+
+  @Test
+  public void testExecute_FirstAttempt() throws Exception {
+    BulkItemRetry retry = new BulkItemRetry();
+    retry.setInitialBackoff(new TimeInterval(1L, TimeUnit.MILLISECONDS));
+    BulkRequest request = new BulkRequest();
+    for (int i = 0; i < 4; i++) {
+      request.add(new IndexRequest("myIndex", "myType", String.valueOf(i)).source("{\"key\":\"value\"}"));
+    }
+    try (RejectingClient client = new RejectingClient("1", "3")) {
+      PlainActionFuture<BulkResponse> first = PlainActionFuture.newFuture();
+      PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+      retry.execute(client, request, future, first);
+      assertFalse(future.actionGet(10000).hasFailures());
+      // The first attempt is reported before the rejected items are retried.
+      BulkResponse firstResponse = first.actionGet(10000);
+      assertEquals(4, firstResponse.getItems().length);
+      assertTrue(BulkItemRetry.isRetryable(firstResponse.getItems()[1]));
+      assertTrue(BulkItemRetry.isRetryable(firstResponse.getItems()[3]));
+      assertEquals(2, client.attempts.get());
+    }
+  }
+
+  @Test
+  public void testExecute_RetryKeepsRequestSettings() throws Exception {
+    BulkItemRetry retry = new BulkItemRetry();
+    retry.setInitialBackoff(new TimeInterval(1L, TimeUnit.MILLISECONDS));
+    BulkRequest request = new BulkRequest().timeout(TimeValue.timeValueSeconds(5)).refresh(true)
+        .consistencyLevel(WriteConsistencyLevel.ALL);
+    request.add(new IndexRequest("myIndex", "myType", "1").source("{\"key\":\"value\"}"));
+    try (RejectingClient client = new RejectingClient("1")) {
+      PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+      retry.execute(client, request, future);
+      assertFalse(future.actionGet(10000).hasFailures());
+      assertEquals(2, client.requests.size());
+      BulkRequest retried = client.requests.get(1);
+      assertEquals(TimeValue.timeValueSeconds(5), retried.timeout());
+      assertTrue(retried.refresh());
+      assertEquals(WriteConsistencyLevel.ALL, retried.consistencyLevel());
+    }
+  }
+
+  private static class RejectingClient extends AbstractClient {
+    private final Set<String> rejectOnce;
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final List<BulkRequest> requests = new CopyOnWriteArrayList<>();
+
+    RejectingClient(String... ids) {
+      super(Settings.EMPTY, new ThreadPool("test"), Headers.EMPTY);
+      rejectOnce = new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+        Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+      attempts.incrementAndGet();
+      BulkRequest bulk = (BulkRequest) request;
+      requests.add(bulk);
+      BulkItemResponse[] items = new BulkItemResponse[bulk.numberOfActions()];
+      for (int i = 0; i < items.length; i++) {
+        IndexRequest r = (IndexRequest) bulk.requests().get(i);
+        items[i] = rejectOnce.remove(r.id())
+            ? new BulkItemResponse(i, "index", new Failure(r.index(), r.type(), r.id(), new EsRejectedExecutionException("rejected")))
+            : new BulkItemResponse(i, "index", new IndexResponse(r.index(), r.type(), r.id(), 1, true));
+      }
+      listener.onResponse((Response) new BulkResponse(items, 1));
+    }
+
+    @Override
+    public void close() {
+      ThreadPool.terminate(threadPool(), 10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -1,6 +1,11 @@
 package com.adaptris.core.elastic;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
 import org.junit.Test;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
@@ -38,6 +43,78 @@ public abstract class CsvBuilderCase extends BuilderCase {
     assertEquals(5, count);
   }
 
+  @Test
+  public void testBuild_Parallel() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(CSV_INPUT);
+    CSVDocumentBuilderImpl documentBuilder = createBuilder();
+    documentBuilder.setParallelism(4);
+    documentBuilder.setChunkSize(2);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        ReadContext context = parse(doc.content().string());
+        assertEquals("UID-" + count, context.read(JSON_PRODUCTUNIQUEID));
+        assertEquals("UID-" + count, doc.uniqueId());
+      }
+    }
+    assertEquals(5, count);
+  }
+
+  @Test
+  public void testBuild_WithSchema() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(CSV_INPUT);
+    CSVDocumentBuilderImpl documentBuilder = createBuilder();
+    CsvColumn date = new CsvColumn("OperationDate", CsvColumnType.DATE);
+    date.setDateFormat("yyyyMMdd");
+    CsvSchema schema = new CsvSchema(new CsvColumn("applicationweek", CsvColumnType.LONG),
+        new CsvColumn("applicationrate", CsvColumnType.DOUBLE), new CsvColumn("iscanonical", CsvColumnType.BOOLEAN), date,
+        new CsvColumn("growthstagecode", CsvColumnType.LONG));
+    schema.setExcludeColumns("productname, recordid");
+    documentBuilder.setSchema(schema);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        ReadContext context = parse(doc.content().string());
+        assertEquals("UID-" + count, doc.uniqueId());
+        if (count == 1) {
+          assertEquals(Integer.valueOf(48), context.read("$.applicationweek"));
+          assertEquals(Double.valueOf(1.5), context.read("$.applicationrate"));
+          assertEquals(Boolean.FALSE, context.read("$.iscanonical"));
+          assertEquals(1132617600000L, ((Number) context.read("$.operationdate")).longValue());
+          assertNull(context.read("$.growthstagecode"));
+          assertEquals("", context.read("$.manufacturer"));
+          Map<String, Object> fields = context.read("$");
+          assertFalse(fields.containsKey("productname"));
+          assertFalse(fields.containsKey("recordid"));
+        }
+      }
+    }
+    assertEquals(5, count);
+  }
+
+  @Test
+  public void testBuild_WithSchema_IncludeAndOmitEmpty() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(CSV_INPUT);
+    CSVDocumentBuilderImpl documentBuilder = createBuilder();
+    CsvSchema schema = new CsvSchema();
+    schema.setIncludeColumns("productuniqueid,crop,manufacturer");
+    schema.setOmitEmptyValues(true);
+    documentBuilder.setSchema(schema);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        Map<String, Object> fields = parse(doc.content().string()).read("$");
+        assertEquals("UID-" + count, fields.get("productuniqueid"));
+        assertFalse(fields.containsKey("manufacturer"));
+        assertFalse(fields.containsKey("productname"));
+        assertEquals(count > 3, fields.containsKey("crop"));
+      }
+    }
+    assertEquals(5, count);
+  }
 
   protected abstract CSVDocumentBuilderImpl createBuilder();
 
@@ -1,5 +1,17 @@
 package com.adaptris.core.elastic;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.util.CloseableIterable;
+import com.jayway.jsonpath.ReadContext;
+
 public class CsvDocumentBuilderTest extends CsvBuilderCase {
 
   @Override
@@ -7,4 +19,52 @@ public class CsvDocumentBuilderTest extends CsvBuilderCase {
     return new CSVDocumentBuilder();
   }
 
+  @Test
+  public void testBuild_RoutingAndParent() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("id,tenant,order" + System.lineSeparator()
+        + "UID-1,acme,O-1" + System.lineSeparator() + "UID-2,,O-2" + System.lineSeparator());
+    CSVDocumentBuilder documentBuilder = createBuilder();
+    documentBuilder.setRoutingField(1);
+    documentBuilder.setParentField(2);
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      Iterator<DocumentWrapper> i = docs.iterator();
+      DocumentWrapper doc = i.next();
+      assertEquals("acme", doc.routing());
+      assertEquals("O-1", doc.parent());
+      doc = i.next();
+      assertNull(doc.routing());
+      assertEquals("O-2", doc.parent());
+    }
+  }
+
+  @Test
+  public void testBuild_NoHeaderRecord() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("UID-1,one" + System.lineSeparator() + "UID-2,two,2" + System.lineSeparator());
+    CSVDocumentBuilder documentBuilder = createBuilder();
+    documentBuilder.setUseHeaderRecord(false);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        ReadContext context = parse(doc.content().string());
+        assertEquals("UID-" + count, context.read("$.field_0"));
+      }
+      assertEquals(2, count);
+    }
+  }
+
+  @Test
+  public void testBuild_HeaderNamesUnchanged() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("productUniqueId,\"product \"\"name\"\"\"" + System.lineSeparator() + "UID-1,one" + System.lineSeparator());
+    CSVDocumentBuilder documentBuilder = createBuilder();
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        ReadContext context = parse(doc.content().string());
+        assertEquals("UID-1", context.read("$.productUniqueId"));
+        assertEquals("one", context.read("$['product_\"name\"']"));
+      }
+    }
+  }
 }
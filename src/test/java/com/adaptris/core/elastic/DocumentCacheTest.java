@@ -0,0 +1,72 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.adaptris.util.TimeInterval;
+
+public class DocumentCacheTest {
+
+  @Test
+  public void testDefaults() throws Exception {
+    DocumentCache cache = new DocumentCache();
+    assertEquals(10000, cache.maxEntries());
+    assertEquals(TimeUnit.MINUTES.toMillis(5), cache.timeToLive());
+  }
+
+  @Test
+  public void testGetPut() throws Exception {
+    DocumentCache cache = new DocumentCache(10, new TimeInterval(1L, TimeUnit.MINUTES));
+    cache.init();
+    assertNull(cache.get("index/type/1"));
+    cache.put("index/type/1", "{\"name\":\"alice\"}");
+    cache.put("index/type/2", null);
+    assertEquals("{\"name\":\"alice\"}", cache.get("index/type/1").source());
+    // Missing documents are cached too.
+    DocumentCache.Entry missing = cache.get("index/type/2");
+    assertNotNull(missing);
+    assertNull(missing.source());
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2.0 / 3, cache.getHitRatio(), 0.001);
+    cache.reset();
+    assertEquals(0, cache.getHitCount());
+    assertEquals(0, cache.getMissCount());
+    assertEquals(0.0, cache.getHitRatio(), 0.001);
+    assertEquals(2, cache.getSize());
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    DocumentCache cache = new DocumentCache(2, new TimeInterval(1L, TimeUnit.MINUTES));
+    cache.init();
+    cache.put("1", "{}");
+    cache.put("2", "{}");
+    cache.get("1");
+    cache.put("3", "{}");
+    assertEquals(2, cache.getSize());
+    assertEquals(1, cache.getEvictionCount());
+    assertNotNull(cache.get("1"));
+    assertNull(cache.get("2"));
+    assertNotNull(cache.get("3"));
+  }
+
+  @Test
+  public void testExpires() throws Exception {
+    DocumentCache cache = new DocumentCache(10, new TimeInterval(50L, TimeUnit.MILLISECONDS));
+    cache.init();
+    cache.put("1", "{}");
+    assertNotNull(cache.get("1"));
+    Thread.sleep(100);
+    assertNull(cache.get("1"));
+    assertEquals(1, cache.getExpiredCount());
+    assertEquals(0, cache.getSize());
+  }
+}
@@ -0,0 +1,167 @@
+package com.adaptris.core.elastic;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DuplicateIdCoalescerTest {
+
+  private List<DocumentAction> actions;
+  private List<DocumentWrapper> docs;
+
+  @Before
+  public void setUp() throws Exception {
+    actions = new ArrayList<>();
+    docs = new ArrayList<>();
+  }
+
+  @Test
+  public void testIndexThenUpdate() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc("1", "name", "alice", "city", "London"));
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc("2", "name", "bob"));
+    coalescer.add(DocumentAction.UPDATE, "index", "type", doc("1", "city", "Paris"));
+    coalescer.flush();
+    assertEquals(2, actions.size());
+    assertEquals(DocumentAction.INDEX, actions.get(0));
+    assertEquals("1", docs.get(0).uniqueId());
+    Map<String, Object> source = XContentHelper.convertToMap(docs.get(0).content().bytes(), true).v2();
+    assertEquals("alice", source.get("name"));
+    assertEquals("Paris", source.get("city"));
+    assertEquals("2", docs.get(1).uniqueId());
+  }
+
+  @Test
+  public void testIndexThenDelete() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc("1", "name", "alice"));
+    coalescer.add(DocumentAction.DELETE, "index", "type", doc("1"));
+    coalescer.flush();
+    assertEquals(1, actions.size());
+    assertEquals(DocumentAction.DELETE, actions.get(0));
+  }
+
+  @Test
+  public void testDeleteThenUpdate() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.DELETE, "index", "type", doc("1"));
+    coalescer.add(DocumentAction.UPDATE, "index", "type", doc("1", "name", "alice"));
+    coalescer.flush();
+    assertEquals(2, actions.size());
+    assertEquals(DocumentAction.DELETE, actions.get(0));
+    assertEquals(DocumentAction.UPDATE, actions.get(1));
+  }
+
+  @Test
+  public void testUpdateThenUpsert() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.UPDATE, "index", "type", doc("1", "name", "alice"));
+    coalescer.add(DocumentAction.UPSERT, "index", "type", doc("1", "city", "Paris"));
+    coalescer.add(DocumentAction.UPDATE, "index", "type", doc("1", "city", "London"));
+    coalescer.flush();
+    assertEquals(1, actions.size());
+    assertEquals(DocumentAction.UPSERT, actions.get(0));
+    Map<String, Object> source = XContentHelper.convertToMap(docs.get(0).content().bytes(), true).v2();
+    assertEquals("alice", source.get("name"));
+    assertEquals("London", source.get("city"));
+  }
+
+  @Test
+  public void testDeleteThenUpsert() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.DELETE, "index", "type", doc("1"));
+    coalescer.add(DocumentAction.UPSERT, "index", "type", doc("1", "name", "alice"));
+    coalescer.flush();
+    assertEquals(1, actions.size());
+    assertEquals(DocumentAction.INDEX, actions.get(0));
+    assertEquals("alice", XContentHelper.convertToMap(docs.get(0).content().bytes(), true).v2().get("name"));
+  }
+
+  @Test
+  public void testScriptedUpdate() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.SCRIPTED_UPDATE, "index", "type", doc("1", "count", "1"));
+    coalescer.add(DocumentAction.UPDATE, "index", "type", doc("1", "name", "alice"));
+    coalescer.add(DocumentAction.SCRIPTED_UPDATE, "index", "type", doc("1", "count", "2"));
+    coalescer.add(DocumentAction.UPSERT, "index", "type", doc("1", "name", "bob"));
+    coalescer.flush();
+    assertEquals(4, actions.size());
+    assertEquals(DocumentAction.SCRIPTED_UPDATE, actions.get(0));
+    assertEquals(DocumentAction.UPDATE, actions.get(1));
+    assertEquals(DocumentAction.SCRIPTED_UPDATE, actions.get(2));
+    assertEquals(DocumentAction.UPSERT, actions.get(3));
+  }
+
+  @Test
+  public void testWindow() throws Exception {
+    DuplicateIdCoalescer coalescer = create(2);
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc("1", "name", "alice"));
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc("2", "name", "bob"));
+    assertEquals(2, actions.size());
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc("1", "name", "carol"));
+    coalescer.flush();
+    assertEquals(3, actions.size());
+  }
+
+  @Test
+  public void testDifferentIndices() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.INDEX, "index-1", "type", doc("1", "name", "alice"));
+    coalescer.add(DocumentAction.INDEX, "index-2", "type", doc("1", "name", "bob"));
+    coalescer.add(DocumentAction.DELETE, "index-1", "type", doc("1"));
+    coalescer.flush();
+    assertEquals(2, actions.size());
+    assertEquals(DocumentAction.DELETE, actions.get(0));
+    assertEquals(DocumentAction.INDEX, actions.get(1));
+  }
+
+  @Test
+  public void testRouting() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.INDEX, "index", "type", routed(doc("1", "name", "alice"), "acme"));
+    coalescer.add(DocumentAction.UPDATE, "index", "type", routed(doc("1", "city", "Paris"), "acme"));
+    coalescer.add(DocumentAction.DELETE, "index", "type", routed(doc("1"), "other"));
+    coalescer.flush();
+    assertEquals(2, actions.size());
+    assertEquals(DocumentAction.INDEX, actions.get(0));
+    assertEquals("acme", docs.get(0).routing());
+    assertEquals("Paris", XContentHelper.convertToMap(docs.get(0).content().bytes(), true).v2().get("city"));
+    assertEquals(DocumentAction.DELETE, actions.get(1));
+    assertEquals("other", docs.get(1).routing());
+  }
+
+  @Test
+  public void testNoId() throws Exception {
+    DuplicateIdCoalescer coalescer = create(100);
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc(null, "name", "alice"));
+    coalescer.add(DocumentAction.INDEX, "index", "type", doc(null, "name", "bob"));
+    assertEquals(2, actions.size());
+  }
+
+  private DuplicateIdCoalescer create(int window) {
+    return new DuplicateIdCoalescer(window, (a, i, t, d) -> {
+      actions.add(a);
+      docs.add(d);
+    });
+  }
+
+  private static DocumentWrapper routed(DocumentWrapper doc, String routing) {
+    return doc.withDefaultRouting(routing, null);
+  }
+
+  private static DocumentWrapper doc(String id, String... fields) throws Exception {
+    XContentBuilder builder = jsonBuilder().startObject();
+    for (int i = 0; i < fields.length; i += 2) {
+      builder.field(fields[i], fields[i + 1]);
+    }
+    return new DocumentWrapper(id, builder.endObject());
+  }
+}
@@ -0,0 +1,160 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.transport.LocalTransportAddress;
+import org.junit.Test;
+
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+
+public class ElasticSearchConnectionTest {
+
+  @Test
+  public void testClientPoolSize() {
+    ElasticSearchConnection esc = new ElasticSearchConnection("myIndex");
+    assertEquals(1, esc.clientPoolSize());
+    esc.setClientPoolSize(0);
+    assertEquals(1, esc.clientPoolSize());
+    esc.setClientPoolSize(3);
+    assertEquals(3, esc.clientPoolSize());
+  }
+
+  @Test
+  public void testBorrowClient_Shared() throws Exception {
+    ElasticSearchConnection esc = createConnection();
+    try {
+      esc.initConnection();
+      TransportClient c1 = esc.borrowClient();
+      TransportClient c2 = esc.borrowClient();
+      assertSame(c1, c2);
+      esc.releaseClient(c1);
+      esc.releaseClient(c2);
+    }
+    finally {
+      esc.closeConnection();
+    }
+  }
+
+  @Test
+  public void testBorrowClient_Pooled() throws Exception {
+    ElasticSearchConnection esc = createConnection();
+    esc.setClientPoolSize(2);
+    try {
+      esc.initConnection();
+      TransportClient c1 = esc.borrowClient();
+      TransportClient c2 = esc.borrowClient();
+      TransportClient c3 = esc.borrowClient();
+      assertNotSame(c1, c2);
+      assertSame(c1, c3);
+      esc.releaseClient(c1);
+      esc.releaseClient(c2);
+      esc.releaseClient(c3);
+    }
+    finally {
+      esc.closeConnection();
+    }
+  }
+
+  @Test
+  public void testReleaseClient_AfterClose() throws Exception {
+    ElasticSearchConnection esc = createConnection();
+    esc.initConnection();
+    TransportClient c1 = esc.borrowClient();
+    esc.closeConnection();
+    // Still in use, so it shouldn't have been closed yet.
+    assertEquals(1, c1.listedNodes().size());
+    esc.releaseClient(c1);
+  }
+
+  @Test
+  public void testBorrowNodeClient_Shared() throws Exception {
+    RecordingConnection esc = new RecordingConnection();
+    DiscoveryNode node = new DiscoveryNode("node1", new LocalTransportAddress("1"), Version.CURRENT);
+    TransportClient c1 = null;
+    try {
+      esc.initConnection();
+      c1 = esc.borrowNodeClient(node);
+      TransportClient c2 = esc.borrowNodeClient(node);
+      assertSame(c1, c2);
+      esc.releaseNodeClient(c1);
+      esc.releaseNodeClient(c2);
+      assertTrue(esc.closed.isEmpty());
+    }
+    finally {
+      esc.closeConnection();
+    }
+    assertTrue(esc.closed.contains(c1));
+  }
+
+  @Test
+  public void testRetainNodeClients_ClosedWhenReleased() throws Exception {
+    RecordingConnection esc = new RecordingConnection();
+    DiscoveryNode node1 = new DiscoveryNode("node1", new LocalTransportAddress("1"), Version.CURRENT);
+    DiscoveryNode node2 = new DiscoveryNode("node2", new LocalTransportAddress("2"), Version.CURRENT);
+    try {
+      esc.initConnection();
+      TransportClient c1 = esc.borrowNodeClient(node1);
+      TransportClient c2 = esc.borrowNodeClient(node2);
+      esc.releaseNodeClient(c2);
+      esc.retainNodeClients(id -> false);
+      // node1 is still being used, node2 isn't.
+      assertEquals(1, esc.closed.size());
+      assertSame(c2, esc.closed.get(0));
+      esc.releaseNodeClient(c1);
+      assertEquals(2, esc.closed.size());
+      assertSame(c1, esc.closed.get(1));
+      assertNotSame(c1, esc.borrowNodeClient(node1));
+    }
+    finally {
+      esc.closeConnection();
+    }
+  }
+
+  @Test
+  public void testReleaseNodeClient_AfterClose() throws Exception {
+    RecordingConnection esc = new RecordingConnection();
+    DiscoveryNode node = new DiscoveryNode("node1", new LocalTransportAddress("1"), Version.CURRENT);
+    esc.initConnection();
+    TransportClient c1 = esc.borrowNodeClient(node);
+    esc.closeConnection();
+    assertFalse(esc.closed.contains(c1));
+    esc.releaseNodeClient(c1);
+    assertTrue(esc.closed.contains(c1));
+  }
+
+  private ElasticSearchConnection createConnection() {
+    KeyValuePairSet settings = new KeyValuePairSet();
+    settings.add(new KeyValuePair("cluster.name", "my-cluster"));
+    ElasticSearchConnection esc = new ElasticSearchConnection("myIndex");
+    esc.setSettings(settings);
+    esc.addTransportUrl("localhost:9300");
+    return esc;
+  }
+
+  private class RecordingConnection extends ElasticSearchConnection {
+    private final List<TransportClient> closed = new ArrayList<>();
+
+    RecordingConnection() {
+      super("myIndex");
+      setSettings(createConnection().getSettings());
+      addTransportUrl("localhost:9300");
+    }
+
+    @Override
+    protected void closeQuietly(TransportClient c) {
+      closed.add(c);
+      super.closeQuietly(c);
+    }
+  }
+}
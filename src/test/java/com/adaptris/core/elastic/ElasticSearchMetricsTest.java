@@ -0,0 +1,131 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.Test;
+
+import com.adaptris.core.util.JmxHelper;
+
+public class ElasticSearchMetricsTest {
+
+  @Test
+  public void testRecord_Response() throws Exception {
+    ElasticSearchMetrics parent = new ElasticSearchMetrics();
+    ElasticSearchMetrics metrics = new ElasticSearchMetrics(parent);
+    PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+    ActionListener<BulkResponse> listener = metrics.record(bulkRequest(3), future);
+    assertEquals(1, metrics.getInFlightRequests());
+    assertEquals(1, parent.getInFlightRequests());
+    listener.onResponse(new BulkResponse(new BulkItemResponse[] {success(0), success(1), rejected(2)}, 25));
+    assertTrue(future.isDone());
+    for (ElasticSearchMetrics m : new ElasticSearchMetrics[] {metrics, parent}) {
+      assertEquals(0, m.getInFlightRequests());
+      assertEquals(1, m.getRequestCount());
+      assertEquals(2, m.getDocumentCount());
+      assertEquals(3, m.getMaxRequestItems());
+      assertEquals(3.0, m.getAverageRequestItems(), 0.001);
+      assertTrue(m.getMaxRequestBytes() > 0);
+      assertEquals(25, m.getServerLatencyMax());
+      assertEquals(1, m.getFailedItemCount());
+      Map<String, Long> byStatus = m.getFailedItemsByStatus();
+      assertEquals(Long.valueOf(1), byStatus.get("429 TOO_MANY_REQUESTS"));
+      assertTrue(m.getDocumentsPerSecond() > 0);
+      assertTrue(m.getRequestsPerSecond() > 0);
+    }
+  }
+
+  @Test
+  public void testRecord_Failure() throws Exception {
+    ElasticSearchMetrics parent = new ElasticSearchMetrics();
+    ElasticSearchMetrics metrics = new ElasticSearchMetrics(parent);
+    PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+    metrics.record(bulkRequest(2), future).onFailure(new Exception());
+    assertTrue(future.isDone());
+    assertEquals(0, metrics.getInFlightRequests());
+    assertEquals(1, metrics.getFailedRequestCount());
+    assertEquals(1, parent.getFailedRequestCount());
+    assertEquals(0, metrics.getDocumentCount());
+  }
+
+  @Test
+  public void testReset() throws Exception {
+    ElasticSearchMetrics metrics = new ElasticSearchMetrics();
+    long started = metrics.requestStarted(1, 100);
+    metrics.requestCompleted(started, 1, -1);
+    metrics.requestStarted(1, 100);
+    metrics.reset();
+    assertEquals(0, metrics.getRequestCount());
+    assertEquals(0, metrics.getDocumentCount());
+    assertEquals(0, metrics.getMaxRequestBytes());
+    assertEquals(0.0, metrics.getDocumentsPerSecond(), 0.001);
+    assertEquals(0, metrics.getServerLatencyMax());
+    // Still outstanding
+    assertEquals(1, metrics.getInFlightRequests());
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    ElasticSearchMetrics metrics = new ElasticSearchMetrics();
+    metrics.register(ElasticSearchMetrics.PRODUCER_TYPE, null);
+    assertNull(metrics.registeredAs());
+    metrics.register(ElasticSearchMetrics.PRODUCER_TYPE, "testRegister");
+    ObjectName name = metrics.registeredAs();
+    assertEquals(new ObjectName("com.adaptris:type=ElasticSearchProducerMetrics,id=testRegister"), name);
+    assertTrue(JmxHelper.findMBeanServer().isRegistered(name));
+    assertEquals(0L, JmxHelper.findMBeanServer().getAttribute(name, "DocumentCount"));
+    metrics.unregister();
+    assertFalse(JmxHelper.findMBeanServer().isRegistered(name));
+  }
+
+  @Test
+  public void testRegister_SameUniqueId() throws Exception {
+    ElasticSearchMetrics first = new ElasticSearchMetrics();
+    ElasticSearchMetrics second = new ElasticSearchMetrics();
+    first.register(ElasticSearchMetrics.PRODUCER_TYPE, "testRegister_SameUniqueId");
+    second.register(ElasticSearchMetrics.PRODUCER_TYPE, "testRegister_SameUniqueId");
+    try {
+      assertEquals(new ObjectName("com.adaptris:type=ElasticSearchProducerMetrics,id=testRegister_SameUniqueId"),
+          first.registeredAs());
+      assertEquals(new ObjectName("com.adaptris:type=ElasticSearchProducerMetrics,id=testRegister_SameUniqueId,instance=1"),
+          second.registeredAs());
+      assertTrue(JmxHelper.findMBeanServer().isRegistered(second.registeredAs()));
+    }
+    finally {
+      first.unregister();
+      second.unregister();
+    }
+  }
+
+  private static BulkRequest bulkRequest(int count) {
+    BulkRequest request = new BulkRequest();
+    for (int i = 0; i < count; i++) {
+      request.add(new IndexRequest("myIndex", "myType", String.valueOf(i)).source("{\"key\":\"value\"}"));
+    }
+    return request;
+  }
+
+  private static BulkItemResponse success(int id) {
+    return new BulkItemResponse(id, "index", new IndexResponse("myIndex", "myType", String.valueOf(id), 1, true));
+  }
+
+  private static BulkItemResponse rejected(int id) {
+    return new BulkItemResponse(id, "index",
+        new Failure("myIndex", "myType", String.valueOf(id), new EsRejectedExecutionException("rejected")));
+  }
+}
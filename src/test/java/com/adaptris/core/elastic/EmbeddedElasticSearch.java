@@ -0,0 +1,99 @@
+package com.adaptris.core.elastic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+
+/**
+ * Runs a single ElasticSearch node inside the JVM, listening on a loopback port, so that the real {@code TransportClient} path can
+ * be exercised without a cluster.
+ */
+public class EmbeddedElasticSearch implements AutoCloseable {
+
+  private final String clusterName;
+  private final File home;
+  private final Node node;
+  private final String transportUrl;
+
+  public EmbeddedElasticSearch() throws IOException {
+    clusterName = "embedded-" + Long.toHexString(System.nanoTime());
+    home = Files.createTempDirectory("elasticsearch").toFile();
+    Settings settings = Settings.settingsBuilder()
+        .put("path.home", home.getCanonicalPath())
+        .put("cluster.name", clusterName)
+        .put("node.name", "embedded")
+        .put("network.host", "127.0.0.1")
+        .put("http.enabled", false)
+        .put("index.number_of_shards", 1)
+        .put("index.number_of_replicas", 0)
+        .build();
+    node = NodeBuilder.nodeBuilder().settings(settings).node();
+    client().admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+    NodeInfo info = client().admin().cluster().prepareNodesInfo().setTransport(true).get().getNodes()[0];
+    InetSocketTransportAddress address = (InetSocketTransportAddress) info.getTransport().getAddress().publishAddress();
+    transportUrl = address.getHost() + ":" + address.getPort();
+  }
+
+  /**
+   * Create a connection to this node for the specified index.
+   */
+  public ElasticSearchConnection createConnection(String index) {
+    KeyValuePairSet settings = new KeyValuePairSet();
+    settings.add(new KeyValuePair("cluster.name", clusterName));
+    ElasticSearchConnection esc = new ElasticSearchConnection(index);
+    esc.setSettings(settings);
+    esc.addTransportUrl(transportUrl);
+    return esc;
+  }
+
+  /**
+   * A client that talks directly to the node.
+   */
+  public Client client() {
+    return node.client();
+  }
+
+  /**
+   * Delete and recreate the index.
+   */
+  public void resetIndex(String index) {
+    resetIndex(index, 1);
+  }
+
+  /**
+   * Delete and recreate the index with the specified number of shards.
+   */
+  public void resetIndex(String index, int shards) {
+    if (client().admin().indices().prepareExists(index).get().isExists()) {
+      client().admin().indices().prepareDelete(index).get();
+    }
+    client().admin().indices().prepareCreate(index)
+        .setSettings(Settings.settingsBuilder().put("index.number_of_shards", shards).build()).get();
+    client().admin().cluster().prepareHealth(index).setWaitForYellowStatus().get();
+  }
+
+  /**
+   * Refresh the index and count the documents in it.
+   */
+  public long count(String index, String type) {
+    client().admin().indices().prepareRefresh(index).get();
+    return client().prepareSearch(index).setTypes(type).setSize(0).get().getHits().getTotalHits();
+  }
+
+  @Override
+  public void close() {
+    node.close();
+    FileUtils.deleteQuietly(home);
+  }
+}
@@ -0,0 +1,79 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.adaptris.util.TimeInterval;
+
+public class ExportDocumentsConsumerTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testPreferences() throws Exception {
+    assertEquals(Arrays.asList("_shards:0", "_shards:1", "_shards:2"), ExportDocumentsConsumer.preferences(3, 0));
+    assertEquals(Arrays.asList("_shards:0,2,4", "_shards:1,3"), ExportDocumentsConsumer.preferences(5, 2));
+    assertEquals(Arrays.asList("_shards:0", "_shards:1"), ExportDocumentsConsumer.preferences(2, 8));
+  }
+
+  @Test
+  public void testPreferences_NotPartitioned() throws Exception {
+    assertEquals(Collections.singletonList(null), ExportDocumentsConsumer.preferences(1, 0));
+    assertEquals(Collections.singletonList(null), ExportDocumentsConsumer.preferences(5, 1));
+    assertEquals(Collections.singletonList(null), ExportDocumentsConsumer.preferences(0, 4));
+  }
+
+  @Test
+  public void testDefaults() throws Exception {
+    ExportDocumentsConsumer consumer = new ExportDocumentsConsumer();
+    assertEquals(0, consumer.partitions());
+    assertEquals(1000, consumer.documentsPerMessage());
+    assertEquals(60000, consumer.scrollKeepAlive());
+    assertEquals(120000, consumer.pageTimeout());
+    assertNull(consumer.getCursorStore());
+  }
+
+  @Test
+  public void testPageTimeout() throws Exception {
+    ExportDocumentsConsumer consumer = new ExportDocumentsConsumer();
+    consumer.setPageTimeout(new TimeInterval(30L, TimeUnit.SECONDS));
+    assertEquals(30000, consumer.pageTimeout());
+  }
+
+  @Test
+  public void testInMemoryCursorStore() throws Exception {
+    assertCursors(new InMemoryExportCursorStore());
+  }
+
+  @Test
+  public void testFileCursorStore() throws Exception {
+    File file = new File(tmp.getRoot(), "cursors.properties");
+    assertCursors(new FileExportCursorStore(file.getCanonicalPath()));
+    FileExportCursorStore store = new FileExportCursorStore(file.getCanonicalPath());
+    store.save("index/_shards:0", "myType#1");
+    assertEquals("myType#1", new FileExportCursorStore(file.getCanonicalPath()).load("index/_shards:0"));
+  }
+
+  private static void assertCursors(ExportCursorStore store) throws Exception {
+    assertNull(store.load("index/_shards:0"));
+    store.save("index/_shards:0", "myType#1");
+    store.save("index/_shards:1", "myType#2");
+    store.save("index/_shards:0", "myType#3");
+    assertEquals("myType#3", store.load("index/_shards:0"));
+    assertEquals("myType#2", store.load("index/_shards:1"));
+    store.clear("index/_shards:0");
+    store.clear("index/_shards:2");
+    assertNull(store.load("index/_shards:0"));
+    assertEquals("myType#2", store.load("index/_shards:1"));
+  }
+}
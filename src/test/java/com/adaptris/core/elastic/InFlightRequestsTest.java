@@ -0,0 +1,292 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ConfiguredProduceDestination;
+import com.adaptris.core.ProduceException;
+
+public class InFlightRequestsTest {
+
+  private TransportClient client;
+  private ScheduledExecutorService scheduler;
+  private List<String> sent;
+  private List<String> completed;
+  private AtomicInteger inFlight;
+  private AtomicInteger maxInFlight;
+
+  @Before
+  public void setUp() throws Exception {
+    // Only used to create request builders, never connected.
+    client = new ElasticSearchConnection("myIndex").createClient();
+    scheduler = Executors.newScheduledThreadPool(4);
+    sent = new CopyOnWriteArrayList<>();
+    completed = new CopyOnWriteArrayList<>();
+    inFlight = new AtomicInteger();
+    maxInFlight = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    scheduler.shutdownNow();
+    client.close();
+  }
+
+  @Test
+  public void testSubmit_BoundedConcurrency() throws Exception {
+    InFlightRequests<BulkRequestBuilder, BulkResponse> requests = InFlightRequests.bulk(2, executor(10));
+    for (int i = 0; i < 10; i++) {
+      requests.submit(batch(String.valueOf(i)));
+    }
+    requests.await(5000);
+    assertEquals(10, completed.size());
+    assertTrue(maxInFlight.get() <= 2);
+    assertEquals(0, inFlight.get());
+  }
+
+  @Test
+  public void testAwait_Failure() throws Exception {
+    // Slow enough that batch 1 hasn't failed before the last one is submitted.
+    InFlightRequests<BulkRequestBuilder, BulkResponse> requests = InFlightRequests.bulk(4, executor(200, "1"));
+    for (int i = 0; i < 3; i++) {
+      requests.submit(batch(String.valueOf(i)));
+    }
+    try {
+      requests.await(5000);
+      fail();
+    }
+    catch (ProduceException expected) {
+      assertTrue(expected.getMessage().contains("failed [1]"));
+    }
+    assertEquals(3, completed.size());
+  }
+
+  @Test
+  public void testSubmit_AfterFailure() throws Exception {
+    // Batch 0 fails once batch 1 has been submitted, batch 1 only fails once the next submit has been rejected.
+    CountDownLatch submitted = new CountDownLatch(1);
+    CountDownLatch failed = new CountDownLatch(1);
+    InFlightRequests<BulkRequestBuilder, BulkResponse> requests = InFlightRequests.bulk(2, (bulk, listener) -> {
+      String id = ((IndexRequest) bulk.request().requests().get(0)).id();
+      if (!id.equals("0")) {
+        respond(bulk, listener, 200, "0", "1");
+        return;
+      }
+      scheduler.execute(() -> {
+        try {
+          submitted.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(bulk, new ActionListener<BulkResponse>() {
+          @Override
+          public void onResponse(BulkResponse response) {
+            listener.onResponse(response);
+            failed.countDown();
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            listener.onFailure(e);
+            failed.countDown();
+          }
+        }, 0, "0", "1");
+      });
+    });
+    requests.submit(batch("0"));
+    requests.submit(batch("1"));
+    submitted.countDown();
+    assertTrue(failed.await(5, TimeUnit.SECONDS));
+    ProduceException rejected = null;
+    try {
+      requests.submit(batch("2"));
+      fail();
+    }
+    catch (ProduceException expected) {
+      rejected = expected;
+      assertTrue(expected.getMessage().contains("failed [0]"));
+    }
+    requests.await(5000, rejected);
+    assertEquals(2, completed.size());
+    assertEquals(1, rejected.getSuppressed().length);
+    assertTrue(rejected.getSuppressed()[0].getMessage().contains("failed [1]"));
+    assertFalse(rejected.getSuppressed()[0].getMessage().contains("failed [0]"));
+  }
+
+  @Test
+  public void testSubmit_ExecutorThrows() throws Exception {
+    InFlightRequests<BulkRequestBuilder, BulkResponse> requests = InFlightRequests.bulk(1, (bulk, listener) -> {
+      throw new IllegalStateException("closed");
+    });
+    try {
+      requests.submit(batch("0"));
+      fail();
+    }
+    catch (IllegalStateException expected) {
+
+    }
+    // The permit has been released, so there is nothing to wait for.
+    requests.await(100);
+  }
+
+  @Test
+  public void testDoRequest_BuildFailureAwaitsOutstandingBatches() throws Exception {
+    BulkIndexDocuments producer = new BulkIndexDocuments() {
+      @Override
+      void execute(BulkRequestBuilder bulkRequest, int sentWith, ActionListener<BulkResponse> listener) {
+        String id = ((IndexRequest) bulkRequest.request().requests().get(0)).id();
+        respond(bulkRequest, listener, 100, "UID-1");
+        sent.add(id);
+      }
+    };
+    producer.registerConnection(new ElasticSearchConnection("myIndex"));
+    producer.transportClient = client;
+    producer.setBatchWindow(1);
+    producer.setConcurrentBulkRequests(4);
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    // The 4th document is not an object, so building fails after 3 batches have been submitted.
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"id\":\"UID-0\"}\n{\"id\":\"UID-1\"}\n{\"id\":\"UID-2\"}\n1");
+    try {
+      producer.doRequest(msg, new ConfiguredProduceDestination("myType"), 5000);
+      fail();
+    }
+    catch (ProduceException expected) {
+      Throwable cause = expected.getCause() != null ? expected.getCause() : expected;
+      assertEquals(1, cause.getSuppressed().length);
+      assertTrue(cause.getSuppressed()[0].getMessage().contains("UID-1"));
+    }
+    assertEquals(3, sent.size());
+    assertEquals(3, completed.size());
+  }
+
+  @Test
+  public void testIndex_BoundedConcurrency() throws Exception {
+    InFlightRequests<IndexRequestBuilder, IndexResponse> requests = InFlightRequests.index(2, indexExecutor(null));
+    for (int i = 0; i < 10; i++) {
+      requests.submit(client.prepareIndex("myIndex", "myType", String.valueOf(i)).setSource("{\"key\":\"value\"}"));
+    }
+    requests.await(5000);
+    assertEquals(10, completed.size());
+    assertTrue(maxInFlight.get() <= 2);
+    assertEquals(0, inFlight.get());
+  }
+
+  @Test
+  public void testIndex_Failure() throws Exception {
+    InFlightRequests<IndexRequestBuilder, IndexResponse> requests = InFlightRequests.index(4, indexExecutor("2"));
+    for (int i = 0; i < 3; i++) {
+      requests.submit(client.prepareIndex("myIndex", "myType", String.valueOf(i)).setSource("{\"key\":\"value\"}"));
+    }
+    try {
+      requests.await(5000);
+      fail();
+    }
+    catch (ProduceException expected) {
+      assertTrue(expected.getMessage().contains("id [2]"));
+    }
+  }
+
+  @Test
+  public void testIndexDocuments_BuildFailureAwaitsOutstandingRequests() throws Exception {
+    IndexDocuments producer = new IndexDocuments() {
+      @Override
+      void execute(IndexRequestBuilder request, ActionListener<IndexResponse> listener) {
+        sent.add(request.request().id());
+        indexExecutor("UID-1").execute(request, listener);
+      }
+    };
+    producer.registerConnection(new ElasticSearchConnection("myIndex"));
+    producer.transportClient = client;
+    producer.setConcurrentRequests(4);
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"id\":\"UID-0\"}\n{\"id\":\"UID-1\"}\n{\"id\":\"UID-2\"}\n1");
+    try {
+      producer.doRequest(msg, new ConfiguredProduceDestination("myType"), 5000);
+      fail();
+    }
+    catch (ProduceException expected) {
+      Throwable cause = expected.getCause() != null ? expected.getCause() : expected;
+      assertEquals(1, cause.getSuppressed().length);
+      assertTrue(cause.getSuppressed()[0].getMessage().contains("id [UID-1]"));
+    }
+    assertEquals(3, completed.size());
+  }
+
+  private InFlightRequests.Executor<IndexRequestBuilder, IndexResponse> indexExecutor(String failId) {
+    return (builder, listener) -> {
+      IndexRequest r = builder.request();
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      scheduler.schedule(() -> {
+        inFlight.decrementAndGet();
+        completed.add(r.id());
+        if (r.id().equals(failId)) {
+          listener.onFailure(new EsRejectedExecutionException("rejected"));
+        }
+        else {
+          listener.onResponse(new IndexResponse(r.index(), r.type(), r.id(), 1, true));
+        }
+      }, 10, TimeUnit.MILLISECONDS);
+    };
+  }
+
+  private BulkRequestBuilder batch(String id) {
+    return client.prepareBulk().add(new IndexRequest("myIndex", "myType", id).source("{\"key\":\"value\"}"));
+  }
+
+  private InFlightRequests.Executor<BulkRequestBuilder, BulkResponse> executor(long delay, String... failIds) {
+    return (bulk, listener) -> {
+      sent.add(((IndexRequest) bulk.request().requests().get(0)).id());
+      respond(bulk, listener, delay, failIds);
+    };
+  }
+
+  // Complete the request after the delay, failing any items with the specified ids.
+  private void respond(BulkRequestBuilder bulk, ActionListener<BulkResponse> listener, long delay, String... failIds) {
+    Set<String> failures = new HashSet<>(Arrays.asList(failIds));
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    scheduler.schedule(() -> {
+      BulkItemResponse[] items = new BulkItemResponse[bulk.numberOfActions()];
+      for (int i = 0; i < items.length; i++) {
+        IndexRequest r = (IndexRequest) bulk.request().requests().get(i);
+        items[i] = failures.contains(r.id())
+            ? new BulkItemResponse(i, "index",
+                new BulkItemResponse.Failure(r.index(), r.type(), r.id(), new IllegalArgumentException("failed [" + r.id() + "]")))
+            : new BulkItemResponse(i, "index", new IndexResponse(r.index(), r.type(), r.id(), 1, true));
+        completed.add(r.id());
+      }
+      inFlight.decrementAndGet();
+      listener.onResponse(new BulkResponse(items, 1));
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+}
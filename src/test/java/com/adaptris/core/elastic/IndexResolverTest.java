@@ -0,0 +1,125 @@
+package com.adaptris.core.elastic;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.Test;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ProduceException;
+
+public class IndexResolverTest {
+
+  @Test
+  public void testDocumentFields() throws Exception {
+    DocumentWrapper doc = new DocumentWrapper("1", jsonBuilder().startObject().field("name", "alice")
+        .startObject("skipped").field("index", "wrong").endObject().startArray("tags").value("a").endArray()
+        .startObject("event").field("index", "events").field("count", 3).endObject().endObject());
+    assertEquals("alice", DocumentFields.value(doc, "name"));
+    assertEquals("events", DocumentFields.value(doc, "event.index"));
+    assertEquals("3", DocumentFields.value(doc, "event.count"));
+    assertNull(DocumentFields.value(doc, "event"));
+    assertNull(DocumentFields.value(doc, "tags"));
+    assertNull(DocumentFields.value(doc, "index"));
+    assertNull(DocumentFields.value(doc, "name.first"));
+  }
+
+  @Test
+  public void testDocumentFieldIndexResolver() throws Exception {
+    DocumentFieldIndexResolver resolver = new DocumentFieldIndexResolver("tenant");
+    resolver.setTypeField("kind");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    DocumentWrapper doc = new DocumentWrapper("1",
+        jsonBuilder().startObject().field("tenant", "acme").field("kind", "order").endObject());
+    assertEquals("acme", resolver.resolveIndex(msg, doc));
+    assertEquals("order", resolver.resolveType(msg, doc));
+    DocumentWrapper missing = new DocumentWrapper("2", jsonBuilder().startObject().field("name", "alice").endObject());
+    assertNull(resolver.resolveIndex(msg, missing));
+    assertNull(resolver.resolveType(msg, missing));
+  }
+
+  @Test
+  public void testMetadataIndexResolver() throws Exception {
+    MetadataIndexResolver resolver = new MetadataIndexResolver("index");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    DocumentWrapper doc = new DocumentWrapper("1", jsonBuilder().startObject().endObject());
+    assertNull(resolver.resolveIndex(msg, doc));
+    msg.addMetadata("index", "acme");
+    assertEquals("acme", resolver.resolveIndex(msg, doc));
+    assertNull(resolver.resolveType(msg, doc));
+  }
+
+  @Test
+  public void testDatePattern_FormatterPattern() throws Exception {
+    assertEquals("'logs-'yyyy.MM.dd", DatePatternIndexResolver.toFormatterPattern("logs-{yyyy.MM.dd}"));
+    assertEquals("'it''s-'yyyy'-'MM", DatePatternIndexResolver.toFormatterPattern("it's-{yyyy}-{MM}"));
+    assertEquals(ChronoUnit.DAYS, DatePatternIndexResolver.period("logs-{yyyy.MM.dd}"));
+    assertEquals(ChronoUnit.HOURS, DatePatternIndexResolver.period("logs-{yyyy.MM.dd.HH}"));
+    assertEquals(ChronoUnit.MINUTES, DatePatternIndexResolver.period("logs-{yyyy.MM.dd.HH.mm}"));
+    assertEquals(ChronoUnit.DAYS, DatePatternIndexResolver.period("ssss-{yyyy.MM}"));
+    assertNull(DatePatternIndexResolver.period("logs-{yyyy.MM.dd.HH.mm.ss.SSS}"));
+    try {
+      DatePatternIndexResolver.toFormatterPattern("logs-{yyyy");
+      fail();
+    }
+    catch (IllegalArgumentException expected) {
+
+    }
+  }
+
+  @Test
+  public void testDatePattern_Timestamps() throws Exception {
+    DatePatternIndexResolver resolver = new DatePatternIndexResolver("logs-{yyyy.MM.dd}", "event.timestamp");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    assertEquals("logs-2016.03.01", resolver.resolveIndex(msg, timestamped("2016-03-01T23:59:59Z")));
+    assertEquals("logs-2016.03.02", resolver.resolveIndex(msg, timestamped("2016-03-01T23:59:59-01:00")));
+    assertEquals("logs-2016.03.01", resolver.resolveIndex(msg, timestamped("2016-03-01T12:00:00")));
+    assertEquals("logs-2016.03.01", resolver.resolveIndex(msg, timestamped("2016-03-01")));
+    assertEquals("logs-2016.03.01",
+        resolver.resolveIndex(msg, timestamped(String.valueOf(ZonedDateTime.parse("2016-03-01T00:00:00Z").toInstant().toEpochMilli()))));
+    resolver.setTimestampFormat("dd/MM/yyyy HH:mm");
+    assertEquals("logs-2016.03.04", resolver.resolveIndex(msg, timestamped("04/03/2016 10:15")));
+    try {
+      resolver.resolveIndex(msg, new DocumentWrapper("1", jsonBuilder().startObject().endObject()));
+      fail();
+    }
+    catch (ProduceException expected) {
+
+    }
+  }
+
+  @Test
+  public void testDatePattern_Timezone() throws Exception {
+    DatePatternIndexResolver resolver = new DatePatternIndexResolver("logs-{yyyy.MM.dd.HH}", "event.timestamp");
+    resolver.setTimezone("Europe/London");
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    assertEquals("logs-2016.07.01.01", resolver.resolveIndex(msg, timestamped("2016-07-01T00:30:00Z")));
+    assertEquals("logs-2016.07.01.00", resolver.resolveIndex(msg, timestamped("2016-07-01T00:30:00")));
+  }
+
+  @Test
+  public void testDatePattern_Period() throws Exception {
+    DatePatternIndexResolver resolver = new DatePatternIndexResolver("logs-{yyyy.MM.dd}", null);
+    long start = ZonedDateTime.parse("2016-03-01T00:00:00Z").toInstant().toEpochMilli();
+    long day = ChronoUnit.DAYS.getDuration().toMillis();
+    assertEquals("logs-2016.03.01", resolver.format(start + 1000));
+    assertEquals("logs-2016.03.01", resolver.format(start));
+    assertEquals("logs-2016.03.01", resolver.format(start + day - 1));
+    assertEquals("logs-2016.03.02", resolver.format(start + day));
+    assertEquals("logs-2016.02.29", resolver.format(start - 1));
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    DocumentWrapper doc = new DocumentWrapper("1", jsonBuilder().startObject().endObject());
+    assertEquals(resolver.format(System.currentTimeMillis()), resolver.resolveIndex(msg, doc));
+  }
+
+  private static DocumentWrapper timestamped(String timestamp) throws Exception {
+    return new DocumentWrapper("1",
+        jsonBuilder().startObject().startObject("event").field("timestamp", timestamp).endObject().endObject());
+  }
+}
@@ -0,0 +1,98 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsAction;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+
+public class KnownIndicesTest {
+
+  @Test
+  public void testEnsureExists_Missing_Remembered() throws Exception {
+    KnownIndices known = new KnownIndices(false, TimeUnit.MINUTES.toMillis(5));
+    try (CountingClient client = new CountingClient()) {
+      known.ensureExists(client, "missing");
+      known.ensureExists(client, "missing");
+      assertEquals(1, client.exists.get());
+      assertEquals(0, client.creates.get());
+    }
+  }
+
+  @Test
+  public void testEnsureExists_Create_Remembered() throws Exception {
+    KnownIndices known = new KnownIndices(true, TimeUnit.MINUTES.toMillis(5));
+    try (CountingClient client = new CountingClient()) {
+      known.ensureExists(client, "missing");
+      known.ensureExists(client, "missing");
+      assertEquals(1, client.exists.get());
+      assertEquals(1, client.creates.get());
+    }
+  }
+
+  @Test
+  public void testEnsureExists_Expired() throws Exception {
+    KnownIndices known = new KnownIndices(false, 0);
+    try (CountingClient client = new CountingClient()) {
+      known.ensureExists(client, "missing");
+      known.ensureExists(client, "missing");
+      assertEquals(2, client.exists.get());
+    }
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    KnownIndices known = new KnownIndices(false, TimeUnit.MINUTES.toMillis(5));
+    try (CountingClient client = new CountingClient()) {
+      known.ensureExists(client, "missing");
+      known.clear();
+      known.ensureExists(client, "missing");
+      assertEquals(2, client.exists.get());
+    }
+  }
+
+  /**
+   * No index exists; creating one fails as though someone else had just created it.
+   */
+  private static class CountingClient extends AbstractClient {
+    private final AtomicInteger exists = new AtomicInteger();
+    private final AtomicInteger creates = new AtomicInteger();
+
+    CountingClient() {
+      super(Settings.EMPTY, new ThreadPool("test"), Headers.EMPTY);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+        Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+      if (action == IndicesExistsAction.INSTANCE) {
+        exists.incrementAndGet();
+        listener.onResponse((Response) new IndicesExistsResponse(false));
+      }
+      else {
+        creates.incrementAndGet();
+        listener.onFailure(new IndexAlreadyExistsException(new Index("missing")));
+      }
+    }
+
+    @Override
+    public void close() {
+      ThreadPool.terminate(threadPool(), 10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,453 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.ConfiguredConsumeDestination;
+import com.adaptris.core.ConfiguredProduceDestination;
+import com.adaptris.core.QuartzCronPoller;
+import com.adaptris.core.StandaloneConsumer;
+import com.adaptris.core.StandaloneProducer;
+import com.adaptris.core.stubs.MockMessageListener;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.TimeInterval;
+
+/**
+ * Produces, consumes and looks up documents in an {@link EmbeddedElasticSearch} node, via the real {@code TransportClient}.
+ * <p>
+ * Excluded from {@code gradle test}; run it with {@code gradle integrationTest}.
+ * </p>
+ */
+public class LocalNodeIntegrationTest {
+
+  private static final String INDEX = "integration";
+  private static final String TYPE = "myType";
+
+  private static EmbeddedElasticSearch elastic;
+
+  @BeforeClass
+  public static void startNode() throws Exception {
+    elastic = new EmbeddedElasticSearch();
+  }
+
+  @AfterClass
+  public static void stopNode() throws Exception {
+    if (elastic != null) {
+      elastic.close();
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    elastic.resetIndex(INDEX);
+  }
+
+  @Test
+  public void testIndexDocuments_SimpleDocumentBuilder() throws Exception {
+    IndexDocuments producer = new IndexDocuments();
+    produce(producer, 10, () -> AdaptrisMessageFactory.getDefaultInstance().newMessage("Hello World"));
+    assertEquals(10, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testIndexDocuments_ConcurrentRequests() throws Exception {
+    IndexDocuments producer = new IndexDocuments();
+    producer.setDocumentBuilder(new CSVDocumentBuilder());
+    producer.setConcurrentRequests(4);
+    produce(producer, 1, () -> csv(0, 100));
+    assertEquals(100, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testBulkIndexDocuments_Csv() throws Exception {
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    producer.setDocumentBuilder(new CSVDocumentBuilder());
+    producer.setBatchWindow(100);
+    produce(producer, 1, () -> csv(0, 550));
+    assertEquals(550, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testBulkIndexDocuments_AdaptiveBatchSize() throws Exception {
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    producer.setDocumentBuilder(new CSVDocumentBuilder());
+    AdaptiveBatchSize adaptive = new AdaptiveBatchSize();
+    adaptive.setMinBatchSize(50);
+    adaptive.setMaxBatchSize(200);
+    adaptive.setIncreaseStep(50);
+    adaptive.setTargetLatency(new TimeInterval(30L, TimeUnit.SECONDS));
+    producer.setBatchWindow(50);
+    producer.setAdaptiveBatchSize(adaptive);
+    produce(producer, 1, () -> csv(0, 1000));
+    assertEquals(1000, elastic.count(INDEX, TYPE));
+    assertEquals(200, adaptive.current());
+  }
+
+  @Test
+  public void testBulkIndexDocuments_StreamingJson_ConcurrentBulkRequests() throws Exception {
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    producer.setBatchWindow(50);
+    producer.setConcurrentBulkRequests(3);
+    produce(producer, 1, () -> ndjson(0, 500));
+    assertEquals(500, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testBulkIndexDocuments_DuplicateIds() throws Exception {
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    producer.setCoalesceDuplicateIds(true);
+    produce(producer, 1, () -> AdaptrisMessageFactory.getDefaultInstance().newMessage(ndjson(0, 100).getContent()
+        + ndjson(50, 100).getContent()));
+    assertEquals(150, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testShardAwareBulkIndexDocuments() throws Exception {
+    ShardAwareBulkIndexDocuments producer = new ShardAwareBulkIndexDocuments();
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    producer.setBatchWindow(100);
+    produce(producer, 2, new Counter(300)::ndjson);
+    assertEquals(600, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testCoalescingBulkIndexDocuments() throws Exception {
+    CoalescingBulkIndexDocuments producer = new CoalescingBulkIndexDocuments();
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    producer.setFlushInterval(new TimeInterval(10L, TimeUnit.MILLISECONDS));
+    produce(producer, 5, new Counter(20)::ndjson);
+    assertEquals(100, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testBulkIndexDocuments_Upsert() throws Exception {
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    produce(producer, 1, () -> ndjson(0, 10));
+    ConfiguredAction upsert = new ConfiguredAction();
+    upsert.setAction(DocumentAction.UPSERT);
+    producer.setAction(upsert);
+    produce(producer, 1, () -> {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 5; i < 15; i++) {
+        sb.append("{\"id\":\"UID-").append(i).append("\",\"status\":\"active\"}\n");
+      }
+      return AdaptrisMessageFactory.getDefaultInstance().newMessage(sb.toString());
+    });
+    assertEquals(15, elastic.count(INDEX, TYPE));
+    Map<String, Object> updated = elastic.client().prepareGet(INDEX, TYPE, "UID-7").get().getSourceAsMap();
+    assertEquals("name-7", updated.get("name"));
+    assertEquals("active", updated.get("status"));
+    Map<String, Object> created = elastic.client().prepareGet(INDEX, TYPE, "UID-12").get().getSourceAsMap();
+    assertEquals("active", created.get("status"));
+    assertFalse(created.containsKey("name"));
+  }
+
+  @Test
+  public void testBulkIndexDocuments_DatePatternIndexResolver() throws Exception {
+    for (String index : new String[] {"logs-2016.03.01", "logs-2016.03.02"}) {
+      if (elastic.client().admin().indices().prepareExists(index).get().isExists()) {
+        elastic.client().admin().indices().prepareDelete(index).get();
+      }
+    }
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    producer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    producer.setIndexResolver(new DatePatternIndexResolver("logs-{yyyy.MM.dd}", "timestamp"));
+    producer.setCreateMissingIndices(true);
+    produce(producer, 1, () -> {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 30; i++) {
+        sb.append("{\"id\":\"UID-").append(i).append("\",\"timestamp\":\"2016-03-0").append(i < 20 ? 1 : 2)
+            .append("T12:00:00Z\"}\n");
+      }
+      return AdaptrisMessageFactory.getDefaultInstance().newMessage(sb.toString());
+    });
+    assertEquals(20, elastic.count("logs-2016.03.01", TYPE));
+    assertEquals(10, elastic.count("logs-2016.03.02", TYPE));
+    assertEquals(0, elastic.count(INDEX, TYPE));
+  }
+
+  @Test
+  public void testBulkIndexDocuments_Routing() throws Exception {
+    elastic.resetIndex(INDEX, 3);
+    BulkIndexDocuments producer = new BulkIndexDocuments();
+    StreamingJsonDocumentBuilder builder = new StreamingJsonDocumentBuilder("/id");
+    builder.setRoutingPointer("/tenant");
+    producer.setDocumentBuilder(builder);
+    produce(producer, 1, () -> {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 30; i++) {
+        sb.append("{\"id\":\"UID-").append(i).append("\",\"tenant\":\"tenant-").append(i % 2).append("\"}\n");
+      }
+      return AdaptrisMessageFactory.getDefaultInstance().newMessage(sb.toString());
+    });
+    assertEquals(30, elastic.count(INDEX, TYPE));
+    for (String tenant : new String[] {"tenant-0", "tenant-1"}) {
+      SearchHit[] hits = elastic.client().prepareSearch(INDEX).setRouting(tenant)
+          .setQuery(QueryBuilders.matchPhraseQuery("tenant", tenant)).setSize(100).get().getHits().getHits();
+      assertEquals(15, hits.length);
+      for (SearchHit hit : hits) {
+        assertEquals(hits[0].getShard().getShardId(), hit.getShard().getShardId());
+      }
+    }
+
+    IndexDocuments single = new IndexDocuments();
+    single.setRoutingMetadataKey("tenant");
+    produce(single, 1, () -> {
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("Hello World");
+      msg.addMetadata("tenant", "tenant-2");
+      return msg;
+    });
+    assertEquals(31, elastic.count(INDEX, TYPE));
+    SearchHit hit = elastic.client().prepareSearch(INDEX).setQuery(QueryBuilders.matchQuery("content", "Hello")).get().getHits()
+        .getAt(0);
+    assertTrue(elastic.client().prepareGet(INDEX, TYPE, hit.getId()).setRouting("tenant-2").get().isExists());
+  }
+
+  @Test
+  public void testSearchDocuments() throws Exception {
+    BulkIndexDocuments indexer = new BulkIndexDocuments();
+    indexer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    produce(indexer, 1, () -> ndjson(0, 250));
+    elastic.count(INDEX, TYPE);
+
+    SearchDocuments search = new SearchDocuments();
+    search.setPageSize(100);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"query\":{\"match_all\":{}}}");
+    produce(search, msg);
+    assertEquals(250, msg.getContent().split("\n").length);
+
+    CsvResultWriter csv = new CsvResultWriter();
+    csv.setColumns(Arrays.asList("_id", "name"));
+    search.setResultWriter(csv);
+    search.setQuery("{\"query\":{\"term\":{\"amount\":%message{amount}}}}");
+    msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    msg.addMetadata("amount", "100");
+    produce(search, msg);
+    assertEquals("_id,name\r\nUID-10,name-10\r\n", msg.getContent());
+  }
+
+  @Test
+  public void testExportDocumentsConsumer() throws Exception {
+    elastic.resetIndex(INDEX, 3);
+    BulkIndexDocuments indexer = new BulkIndexDocuments();
+    indexer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    produce(indexer, 1, () -> ndjson(0, 250));
+    elastic.count(INDEX, TYPE);
+
+    ExportDocumentsConsumer consumer = new ExportDocumentsConsumer();
+    consumer.setDocumentsPerMessage(40);
+    MockMessageListener listener = new MockMessageListener();
+    consume(consumer, listener, 1);
+    Set<String> partitions = new HashSet<>();
+    for (AdaptrisMessage msg : listener.getMessages()) {
+      partitions.add(msg.getMetadataValue(ExportDocumentsConsumer.PARTITION_METADATA_KEY));
+    }
+    assertEquals(new HashSet<>(Arrays.asList("_shards:0", "_shards:1", "_shards:2")), partitions);
+    assertEquals(250, exportedIds(listener.getMessages()).size());
+  }
+
+  @Test
+  public void testExportDocumentsConsumer_Resume() throws Exception {
+    BulkIndexDocuments indexer = new BulkIndexDocuments();
+    indexer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    produce(indexer, 1, () -> ndjson(0, 250));
+    elastic.count(INDEX, TYPE);
+
+    ExportDocumentsConsumer consumer = new ExportDocumentsConsumer();
+    consumer.setDocumentsPerMessage(100);
+    consumer.setCursorStore(new InMemoryExportCursorStore());
+    // Fail the second message, so the first poll only delivers the first 100 documents.
+    MockMessageListener listener = new MockMessageListener() {
+      private int received = 0;
+
+      @Override
+      public void onAdaptrisMessage(AdaptrisMessage msg) {
+        if (++received == 2) {
+          throw new RuntimeException("Failed to process message");
+        }
+        super.onAdaptrisMessage(msg);
+      }
+    };
+    consume(consumer, listener, 2);
+    assertEquals(3, listener.getMessages().size());
+    assertEquals(250, exportedIds(listener.getMessages()).size());
+  }
+
+  @Test
+  public void testGetDocumentsService() throws Exception {
+    BulkIndexDocuments indexer = new BulkIndexDocuments();
+    indexer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    produce(indexer, 1, () -> ndjson(0, 10));
+    elastic.count(INDEX, TYPE);
+
+    GetDocumentsService service = new GetDocumentsService();
+    service.setConnection(elastic.createConnection(INDEX));
+    service.setType(TYPE);
+    service.setCache(new DocumentCache());
+    try {
+      LifecycleHelper.initAndStart(service);
+      AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("UID-1, UID-2,missing\nUID-1");
+      service.doService(msg);
+      assertEquals("{\"UID-1\":{\"id\":\"UID-1\",\"name\":\"name-1\",\"amount\":10},"
+          + "\"UID-2\":{\"id\":\"UID-2\",\"name\":\"name-2\",\"amount\":20}}", msg.getContent());
+      assertEquals(0, service.getCache().getHitCount());
+      assertEquals(3, service.getCache().getMissCount());
+
+      msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("missing,UID-2");
+      service.doService(msg);
+      assertEquals("{\"UID-2\":{\"id\":\"UID-2\",\"name\":\"name-2\",\"amount\":20}}", msg.getContent());
+      assertEquals(2, service.getCache().getHitCount());
+    }
+    finally {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  @Test
+  public void testGetDocumentsService_SharedRequests() throws Exception {
+    BulkIndexDocuments indexer = new BulkIndexDocuments();
+    indexer.setDocumentBuilder(new StreamingJsonDocumentBuilder("/id"));
+    produce(indexer, 1, () -> ndjson(0, 100));
+    elastic.count(INDEX, TYPE);
+
+    GetDocumentsService service = new GetDocumentsService();
+    service.setConnection(elastic.createConnection(INDEX));
+    service.setLingerInterval(new TimeInterval(20L, TimeUnit.MILLISECONDS));
+    service.setMaxIdsPerRequest(25);
+    ExecutorService executor = Executors.newFixedThreadPool(10);
+    try {
+      LifecycleHelper.initAndStart(service);
+      List<Future<AdaptrisMessage>> results = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        final int id = i;
+        results.add(executor.submit(() -> {
+          AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("UID-" + id + ",UID-" + (id + 50));
+          service.doService(msg);
+          return msg;
+        }));
+      }
+      for (int i = 0; i < 50; i++) {
+        String content = results.get(i).get().getContent();
+        assertTrue(content, content.contains("\"name\":\"name-" + i + "\""));
+        assertTrue(content, content.contains("\"name\":\"name-" + (i + 50) + "\""));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  private static void consume(ExportDocumentsConsumer consumer, MockMessageListener listener, int polls) throws Exception {
+    consumer.setDestination(new ConfiguredConsumeDestination(TYPE));
+    consumer.setPoller(new QuartzCronPoller("0 0 0 1 1 ? 2099"));
+    StandaloneConsumer standalone = new StandaloneConsumer(elastic.createConnection(INDEX), consumer);
+    standalone.registerAdaptrisMessageListener(listener);
+    try {
+      LifecycleHelper.initAndStart(standalone);
+      for (int i = 0; i < polls; i++) {
+        consumer.processMessages();
+      }
+    }
+    finally {
+      LifecycleHelper.stopAndClose(standalone);
+    }
+  }
+
+  private static Set<String> exportedIds(List<AdaptrisMessage> messages) {
+    Set<String> ids = new HashSet<>();
+    for (AdaptrisMessage msg : messages) {
+      for (String line : msg.getContent().split("\n")) {
+        assertTrue("Duplicate " + line, ids.add(line));
+      }
+    }
+    return ids;
+  }
+
+  private static void produce(ElasticSearchProducer producer, AdaptrisMessage msg) throws Exception {
+    StandaloneProducer standalone = new StandaloneProducer(elastic.createConnection(INDEX), producer);
+    try {
+      LifecycleHelper.initAndStart(standalone);
+      standalone.doService(msg);
+    }
+    finally {
+      LifecycleHelper.stopAndClose(standalone);
+    }
+  }
+
+  private static void produce(IndexDocuments producer, int messages, MessageSupplier supplier) throws Exception {
+    producer.setDestination(new ConfiguredProduceDestination(TYPE));
+    StandaloneProducer standalone = new StandaloneProducer(elastic.createConnection(INDEX), producer);
+    try {
+      LifecycleHelper.initAndStart(standalone);
+      for (int i = 0; i < messages; i++) {
+        standalone.doService(supplier.create());
+      }
+    }
+    finally {
+      LifecycleHelper.stopAndClose(standalone);
+    }
+  }
+
+  static AdaptrisMessage csv(int first, int rows) {
+    StringBuilder sb = new StringBuilder("id,name,amount\n");
+    for (int i = first; i < first + rows; i++) {
+      sb.append("UID-").append(i).append(",name-").append(i).append(',').append(i * 10).append('\n');
+    }
+    return AdaptrisMessageFactory.getDefaultInstance().newMessage(sb.toString());
+  }
+
+  static AdaptrisMessage ndjson(int first, int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = first; i < first + rows; i++) {
+      sb.append("{\"id\":\"UID-").append(i).append("\",\"name\":\"name-").append(i).append("\",\"amount\":").append(i * 10)
+          .append("}\n");
+    }
+    return AdaptrisMessageFactory.getDefaultInstance().newMessage(sb.toString());
+  }
+
+  @FunctionalInterface
+  private interface MessageSupplier {
+    AdaptrisMessage create() throws Exception;
+  }
+
+  // Successive messages with distinct ids.
+  private static class Counter {
+    private final int rows;
+    private int next = 0;
+
+    Counter(int rows) {
+      this.rows = rows;
+    }
+
+    AdaptrisMessage ndjson() {
+      AdaptrisMessage result = LocalNodeIntegrationTest.ndjson(next, rows);
+      next += rows;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.junit.Test;
+
+public class SearchResultWriterTest {
+
+  @Test
+  public void testNdjson() throws Exception {
+    String output = write(new NdjsonResultWriter(), hit("1", "{\"name\":\"alice\"}"), hit("2", "{\n  \"name\" : \"bob\"\n}"));
+    assertEquals("{\"name\":\"alice\"}\n{\"name\":\"bob\"}\n", output);
+  }
+
+  @Test
+  public void testNdjson_IncludeMetadata() throws Exception {
+    NdjsonResultWriter writer = new NdjsonResultWriter();
+    writer.setIncludeMetadata(true);
+    String output = write(writer, hit("1\"", "{\"name\":\"alice\"}"));
+    assertEquals("{\"_index\":\"myIndex\",\"_type\":\"myType\",\"_id\":\"1\\\"\",\"_source\":{\"name\":\"alice\"}}\n", output);
+  }
+
+  @Test
+  public void testCsv_Columns() throws Exception {
+    CsvResultWriter writer = new CsvResultWriter();
+    writer.setColumns(Arrays.asList("_id", "name", "address.city", "missing"));
+    String output = write(writer, hit("1", "{\"name\":\"alice\",\"address\":{\"city\":\"London\"}}"),
+        hit("2", "{\"name\":\"bob, jr\"}"));
+    assertEquals("_id,name,address.city,missing\r\n1,alice,London,\r\n2,\"bob, jr\",,\r\n", output);
+  }
+
+  @Test
+  public void testCsv_NoColumns_NoHeader() throws Exception {
+    CsvResultWriter writer = new CsvResultWriter();
+    writer.setIncludeHeader(false);
+    String output = write(writer, hit("1", "{\"name\":\"alice\",\"age\":30}"), hit("2", "{\"age\":40,\"name\":\"bob\"}"));
+    assertEquals("alice,30\r\nbob,40\r\n", output);
+  }
+
+  @Test
+  public void testCsv_NoHits() throws Exception {
+    CsvResultWriter writer = new CsvResultWriter();
+    assertEquals("", write(writer));
+    writer.setColumns(Collections.singletonList("name"));
+    assertEquals("name\r\n", write(writer));
+  }
+
+  private static String write(SearchResultWriter writer, SearchHit... hits) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (SearchResultWriter.Results results = writer.start(out)) {
+      for (SearchHit hit : hits) {
+        results.write(hit);
+      }
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static SearchHit hit(String id, String source) {
+    InternalSearchHit hit = new InternalSearchHit(0, id, new Text("myType"), null);
+    hit.shard(new SearchShardTarget("node", "myIndex", 0));
+    return hit.sourceRef(new BytesArray(source));
+  }
+}
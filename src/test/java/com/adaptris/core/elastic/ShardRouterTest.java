@@ -0,0 +1,60 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.routing.Murmur3HashFunction;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.common.math.MathUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+
+public class ShardRouterTest {
+
+  private static final int SHARDS = 5;
+
+  @Test
+  public void testShardId_MatchesMurmur3() throws Exception {
+    ShardRouter router = new ShardRouter(createState(), "myIndex");
+    Murmur3HashFunction hash = new Murmur3HashFunction();
+    for (int i = 0; i < 100; i++) {
+      String id = "doc-" + i;
+      assertEquals(MathUtils.mod(hash.hash(id), SHARDS), router.shardId("myType", id, null));
+    }
+    // routing takes precedence over the id.
+    assertEquals(MathUtils.mod(hash.hash("abc"), SHARDS), router.shardId("myType", "doc-1", "abc"));
+  }
+
+  @Test
+  public void testPrimaryNode_Unassigned() throws Exception {
+    ShardRouter router = new ShardRouter(createState(), "myIndex");
+    assertNull(router.primaryNode(new IndexRequest("myIndex", "myType", "1")));
+    assertNull(router.primaryNode(new IndexRequest("myIndex", "myType")));
+    assertNull(router.primaryNode(new IndexRequest("anotherIndex", "myType", "1")));
+    assertEquals(0, router.dataNodes());
+  }
+
+  @Test
+  public void testIsStale() throws Exception {
+    ShardRouter router = new ShardRouter(createState(), "myIndex");
+    assertFalse(router.isStale(60000));
+    assertTrue(router.isStale(0));
+  }
+
+  private static ClusterState createState() {
+    IndexMetaData index = IndexMetaData.builder("myIndex")
+        .settings(Settings.settingsBuilder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT))
+        .numberOfShards(SHARDS).numberOfReplicas(0).build();
+    MetaData metaData = MetaData.builder().put(index, false).build();
+    RoutingTable routingTable = RoutingTable.builder().addAsNew(index).build();
+    return ClusterState.builder(ClusterName.DEFAULT).metaData(metaData).routingTable(routingTable).build();
+  }
+}
@@ -1,8 +1,12 @@
 package com.adaptris.core.elastic;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import org.elasticsearch.common.xcontent.XContentHelper;
 import org.junit.Test;
 import com.adaptris.core.AdaptrisMessage;
 import com.adaptris.core.AdaptrisMessageFactory;
@@ -32,4 +36,75 @@ public class SimpleJsonDocumentBuilderTest extends BuilderCase {
     assertEquals(1, count);
   }
 
+  @Test
+  public void testBuild_StreamContent() throws Exception {
+    String payload = "Hello \"World\"\r\n\t\\ \u00e9\u20ac\ud83d\ude00 \u0001";
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(payload);
+    msg.addMetadata(testName.getMethodName(), testName.getMethodName());
+    SimpleDocumentBuilder documentBuilder = new SimpleDocumentBuilder();
+    documentBuilder.setStreamContent(true);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        assertEquals(msg.getUniqueId(), doc.uniqueId());
+        ReadContext context = parse(doc.content().string());
+        assertEquals(payload, context.read("$.content"));
+        LinkedHashMap metadata = context.read("$.metadata");
+        assertEquals(testName.getMethodName(), metadata.get(testName.getMethodName()));
+      }
+    }
+    assertEquals(1, count);
+  }
+
+  @Test
+  public void testBuild_ContentIsJson() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("{\"hello\" : [\"world\"]}");
+    SimpleDocumentBuilder documentBuilder = new SimpleDocumentBuilder();
+    documentBuilder.setContentIsJson(true);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        ReadContext context = parse(doc.content().string());
+        assertEquals("world", context.read("$.content.hello[0]"));
+      }
+    }
+    assertEquals(1, count);
+  }
+
+  @Test
+  public void testBuild_ContentIsJson_Encoding() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance()
+        .newMessage("{\"hello\" : [\"w\u00f6rld\"]}".getBytes(StandardCharsets.ISO_8859_1));
+    msg.setContentEncoding("ISO-8859-1");
+    SimpleDocumentBuilder documentBuilder = new SimpleDocumentBuilder();
+    documentBuilder.setContentIsJson(true);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        ReadContext context = parse(doc.content().string());
+        assertEquals("w\u00f6rld", context.read("$.content.hello[0]"));
+      }
+    }
+    assertEquals(1, count);
+  }
+
+  @Test
+  public void testBuild_ContentIsJson_Empty() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage();
+    SimpleDocumentBuilder documentBuilder = new SimpleDocumentBuilder();
+    documentBuilder.setContentIsJson(true);
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        Map<String, Object> content = XContentHelper.convertToMap(doc.content().bytes(), false).v2();
+        assertTrue(content.containsKey("content"));
+        assertNull(content.get("content"));
+      }
+    }
+    assertEquals(1, count);
+  }
 }
@@ -0,0 +1,177 @@
+package com.adaptris.core.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.util.CloseableIterable;
+import com.jayway.jsonpath.ReadContext;
+
+public class StreamingJsonDocumentBuilderTest extends BuilderCase {
+
+  public static final String JSON_ARRAY = "[" + System.lineSeparator()
+      + "{\"id\" : \"UID-1\", \"name\" : \"}{ \\\" ][\", \"nested\" : { \"values\" : [1, 2, {}]}},"
+      + System.lineSeparator() + "  {\"id\" : \"UID-2\", \"name\" : \"two\", \"customer\" : { \"id\" : \"C2\"}}"
+      + System.lineSeparator() + ",{\"id\" : \"UID-3\", \"name\" : \"three\"}" + System.lineSeparator() + "]";
+
+  public static final String NDJSON = "{\"id\" : \"UID-1\", \"name\" : \"}{ \\\" ][\"}" + System.lineSeparator()
+      + "{\"id\" : \"UID-2\", \"name\" : \"two\", \"customer\" : { \"id\" : \"C2\"}}" + System.lineSeparator()
+      + System.lineSeparator() + "{\"id\" : \"UID-3\", \"name\" : \"three\"}" + System.lineSeparator();
+
+  @Test
+  public void testPointerAsPath() {
+    assertEquals(0, StreamingJsonDocumentBuilder.pointerAsPath(null).size());
+    assertEquals(0, StreamingJsonDocumentBuilder.pointerAsPath("/").size());
+    assertEquals(Arrays.asList("id"), StreamingJsonDocumentBuilder.pointerAsPath("/id"));
+    assertEquals(Arrays.asList("a/b", "c~d"), StreamingJsonDocumentBuilder.pointerAsPath("/a~1b/c~0d"));
+  }
+
+  @Test
+  public void testBuild_Array() throws Exception {
+    assertDocuments(JSON_ARRAY);
+  }
+
+  @Test
+  public void testBuild_NDJSON() throws Exception {
+    assertDocuments(NDJSON);
+  }
+
+  @Test
+  public void testBuild_ByteOrderMark() throws Exception {
+    byte[] json = NDJSON.getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[json.length + 3];
+    bytes[0] = (byte) 0xEF;
+    bytes[1] = (byte) 0xBB;
+    bytes[2] = (byte) 0xBF;
+    System.arraycopy(json, 0, bytes, 3, json.length);
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(bytes);
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/id");
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        assertEquals("UID-" + count, doc.uniqueId());
+        assertEquals("UID-" + count, parse(doc.content().string()).read("$.id"));
+      }
+    }
+    assertEquals(3, count);
+  }
+
+  @Test
+  public void testBuild_EmptyArray() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(" [ ] ");
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/id");
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+      }
+    }
+    assertEquals(0, count);
+  }
+
+  @Test
+  public void testBuild_NestedPointer() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(NDJSON);
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/customer/id");
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      int count = 0;
+      for (DocumentWrapper doc : docs) {
+        count++;
+        if (count == 2) {
+          assertEquals("C2", doc.uniqueId());
+        }
+        else {
+          assertNull(doc.uniqueId());
+        }
+      }
+      assertEquals(3, count);
+    }
+  }
+
+  @Test
+  public void testBuild_RoutingAndParent() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(NDJSON);
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/id");
+    documentBuilder.setRoutingPointer("/customer/id");
+    documentBuilder.setParentPointer("/name");
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      int count = 0;
+      for (DocumentWrapper doc : docs) {
+        count++;
+        assertEquals("UID-" + count, doc.uniqueId());
+        if (count == 2) {
+          assertEquals("C2", doc.routing());
+          assertEquals("two", doc.parent());
+        }
+        else {
+          assertNull(doc.routing());
+        }
+      }
+      assertEquals(3, count);
+    }
+  }
+
+  @Test
+  public void testBuild_PointerToNonScalar() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(
+        "{\"id\" : 12, \"customer\" : { \"id\" : [\"C1\"]}, \"tenant\" : { \"id\" : \"T1\"}, \"big\" : 123456789012345678901234567890}");
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/id");
+    documentBuilder.setRoutingPointer("/customer/id");
+    documentBuilder.setParentPointer("/tenant");
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      int count = 0;
+      for (DocumentWrapper doc : docs) {
+        count++;
+        assertEquals("12", doc.uniqueId());
+        assertNull(doc.routing());
+        assertNull(doc.parent());
+        ReadContext context = parse(doc.content().string());
+        assertEquals("C1", context.read("$.customer.id[0]"));
+        assertEquals("T1", context.read("$.tenant.id"));
+        assertEquals("123456789012345678901234567890", context.read("$.big").toString());
+      }
+      assertEquals(1, count);
+    }
+  }
+
+  @Test
+  public void testBuild_NotObjects() throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage("[1, 2, 3]");
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/id");
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        fail();
+      }
+      fail();
+    }
+    catch (RuntimeException expected) {
+
+    }
+  }
+
+  private void assertDocuments(String input) throws Exception {
+    AdaptrisMessage msg = AdaptrisMessageFactory.getDefaultInstance().newMessage(input);
+    StreamingJsonDocumentBuilder documentBuilder = new StreamingJsonDocumentBuilder("/id");
+    int count = 0;
+    try (CloseableIterable<DocumentWrapper> docs = ElasticSearchProducer.ensureCloseable(documentBuilder.build(msg))) {
+      for (DocumentWrapper doc : docs) {
+        count++;
+        assertEquals("UID-" + count, doc.uniqueId());
+        ReadContext context = parse(doc.content().string());
+        assertEquals("UID-" + count, context.read("$.id"));
+        if (count == 1) {
+          assertEquals("}{ \" ][", context.read("$.name"));
+        }
+      }
+    }
+    assertEquals(3, count);
+  }
+}
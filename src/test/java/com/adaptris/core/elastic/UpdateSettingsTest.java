@@ -0,0 +1,96 @@
+package com.adaptris.core.elastic;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.script.ScriptService.ScriptType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adaptris.core.ProduceException;
+
+public class UpdateSettingsTest {
+
+  private TransportClient client;
+  private BulkIndexDocuments producer;
+
+  @Before
+  public void setUp() throws Exception {
+    // Only used to create requests, never connected.
+    client = new ElasticSearchConnection("myIndex").createClient();
+    producer = new BulkIndexDocuments();
+    producer.transportClient = client;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+  }
+
+  @Test
+  public void testDefaults() throws Exception {
+    UpdateSettings settings = new UpdateSettings();
+    assertEquals(0, settings.retryOnConflict());
+    assertTrue(settings.detectNoop());
+    assertEquals(ScriptType.INLINE, settings.scriptType());
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    UpdateRequest request = (UpdateRequest) producer.buildRequest(DocumentAction.UPDATE, "myIndex", "myType", doc());
+    assertFalse(request.docAsUpsert());
+    assertTrue(request.detectNoop());
+    assertEquals(0, request.retryOnConflict());
+    assertEquals("alice", request.doc().sourceAsMap().get("name"));
+  }
+
+  @Test
+  public void testUpsert() throws Exception {
+    UpdateSettings settings = new UpdateSettings();
+    settings.setRetryOnConflict(3);
+    settings.setDetectNoop(false);
+    producer.setUpdateSettings(settings);
+    UpdateRequest request = (UpdateRequest) producer.buildRequest(DocumentAction.UPSERT, "myIndex", "myType", doc());
+    assertTrue(request.docAsUpsert());
+    assertFalse(request.detectNoop());
+    assertEquals(3, request.retryOnConflict());
+    assertEquals("1", request.id());
+    assertEquals("alice", request.doc().sourceAsMap().get("name"));
+  }
+
+  @Test
+  public void testScriptedUpdate() throws Exception {
+    UpdateSettings settings = new UpdateSettings();
+    settings.setScript("ctx._source.name = name");
+    settings.setScriptLanguage("groovy");
+    producer.setUpdateSettings(settings);
+    UpdateRequest request = (UpdateRequest) producer.buildRequest(DocumentAction.SCRIPTED_UPDATE, "myIndex", "myType", doc());
+    assertNull(request.doc());
+    assertEquals("ctx._source.name = name", request.script().getScript());
+    assertEquals("groovy", request.script().getLang());
+    assertEquals("alice", request.script().getParams().get("name"));
+    assertEquals("alice", request.upsertRequest().sourceAsMap().get("name"));
+  }
+
+  @Test
+  public void testScriptedUpdate_NoScript() throws Exception {
+    try {
+      producer.buildRequest(DocumentAction.SCRIPTED_UPDATE, "myIndex", "myType", doc());
+      fail();
+    }
+    catch (ProduceException expected) {
+
+    }
+  }
+
+  private static DocumentWrapper doc() throws Exception {
+    return new DocumentWrapper("1", jsonBuilder().startObject().field("name", "alice").endObject());
+  }
+}